@@ -9,6 +9,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import de.ids_mannheim.korap.cache.VirtualCorpusCache;
+import de.ids_mannheim.korap.index.Deadline;
 import de.ids_mannheim.korap.query.wrap.SpanQueryWrapper;
 import de.ids_mannheim.korap.response.Response;
 import de.ids_mannheim.korap.response.Result;
@@ -63,6 +64,10 @@ public class Krill extends Response {
     private int maxTokenMatchSize;
     private final ObjectMapper mapper = new ObjectMapper();
 
+    // Deadline of the running request
+    private volatile Deadline deadline;
+    private volatile boolean cancelled = false;
+
     /**
      * Construct a new Krill object.
      */
@@ -275,6 +280,44 @@ public class Krill extends Response {
     };
 
 
+    /**
+     * Cancel the request, e.g. in case the client disconnected.
+     * A running search will stop as soon as possible
+     * and return the matches found so far.
+     * 
+     * @return The {@link Krill} object for chaining.
+     */
+    public Krill cancel () {
+        this.cancelled = true;
+        final Deadline deadline = this.deadline;
+        if (deadline != null)
+            deadline.cancel();
+        return this;
+    };
+
+
+    /**
+     * Check if the request was cancelled.
+     * 
+     * @return <tt>true</tt> in case the request was cancelled.
+     */
+    public boolean isCancelled () {
+        return this.cancelled;
+    };
+
+
+    // Start the deadline of the request based on the time out
+    Deadline startDeadline () {
+        final Deadline deadline = new Deadline(this.getMeta().getTimeOut());
+        this.deadline = deadline;
+
+        // The request may have been cancelled before it was started
+        if (this.cancelled)
+            deadline.cancel();
+        return deadline;
+    };
+
+
     /**
      * Apply the KoralQuery to an index.
      * This may invoke different actions depending
@@ -301,6 +344,13 @@ public class Krill extends Response {
      * @return The result as a {@link Result} object.
      */
     public Result apply () {
+        return this.apply(this.index, false);
+    };
+
+
+    // Apply the KoralQuery to an index without associating it,
+    // optionally only counting matches and documents
+    Result apply (KrillIndex index, boolean countOnly) {
 
         // Create new Result object to return
         Result kr = new Result();
@@ -311,14 +361,14 @@ public class Krill extends Response {
         }
 
         // There was no index
-        else if (this.index == null) {
+        else if (index == null) {
             kr.addError(601, "Unable to find index");
         }
 
         // Apply search
         else {
             // This contains meta and matches
-            kr = this.index.search(this);
+            kr = index.search(this, countOnly);
             // this.getCollection().setIndex(this.index);
             kr.copyNotificationsFrom(this);
         };
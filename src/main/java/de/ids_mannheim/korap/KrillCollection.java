@@ -64,7 +64,8 @@ public final class KrillCollection extends Notifications implements IndexInfo {
 
     private ObjectMapper mapper = new ObjectMapper();
     
-	private Filter prefiltered = null;
+	// Shared by the leaf tasks of parallel searches
+	private volatile Filter prefiltered = null;
     // private static ByteBuffer bb = ByteBuffer.allocate(4);
 
     // Logger
@@ -543,11 +544,16 @@ public final class KrillCollection extends Notifications implements IndexInfo {
         if (this.cbi == null)
 			return null;
 	
-		if (this.prefiltered != null)
+		Filter filter = this.prefiltered;
+		if (filter != null)
+			return filter;
+
+		// Build the filter only once, even if requested concurrently
+		synchronized (this) {
+			if (this.prefiltered == null)
+				this.prefiltered = this.cbi.toFilter();
 			return this.prefiltered;
-		
-		this.prefiltered = this.cbi.toFilter();
-		return this.prefiltered;
+		}
     };
 
 
@@ -607,11 +613,69 @@ public final class KrillCollection extends Notifications implements IndexInfo {
      * @param The
      *            {@link LeafReaderContext} to search in.
      * @return A bit vector representing the live documents of the
-     *         virtual collection.
+     *         virtual collection. The bit vector may be shared
+     *         between requests and must not be modified.
      * @throws IOException
      */
     public FixedBitSet bits (LeafReaderContext atomic) throws IOException, QueryException {
 
+        // Bit vectors are cached per leaf and collection.
+        // Collections referring to named VCs are not cached, as the
+        // VC may be redefined or deleted without changing the key
+        final String key = this.index != null ? this._cacheKey() : null;
+        if (key != null && !this.refersToNamedVC()) {
+            try {
+                return this.index.collectionBits(key, atomic, ck -> {
+                    try {
+                        return this._createBits(atomic);
+                    }
+                    catch (IOException | QueryException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+            catch (RuntimeException e) {
+                Throwable t = e.getCause();
+                if (t instanceof IOException) {
+                    throw (IOException) t;
+                }
+                else if (t instanceof QueryException) {
+                    throw (QueryException) t;
+                }
+                throw e;
+            }
+        };
+
+        return this._createBits(atomic);
+    };
+
+
+    /**
+     * Check, if the collection refers to a named virtual corpus.
+     * Named virtual corpora may be redefined or deleted without
+     * changing the collection, so results based on them
+     * must not be cached.
+     * 
+     * @return <tt>true</tt> in case the collection refers to
+     *         a named virtual corpus, otherwise <tt>false</tt>.
+     */
+    public boolean refersToNamedVC () {
+        return this.cbi != null && this.cbi.refersToNamedVC();
+    };
+
+
+    // Normalized representation of the collection for caching
+    private String _cacheKey () throws QueryException {
+        if (this.cbi == null)
+            return "*";
+        final Filter filter = this.toFilter();
+        return (this.isNegative() ? "-" : "") + String.valueOf(filter);
+    };
+
+
+    // Create a bit vector representing the live documents
+    private FixedBitSet _createBits (LeafReaderContext atomic) throws IOException, QueryException {
+
         // EM: really need a fixedBitset? 
         // maybe better use org.apache.lucene.util.BitDocIdSet.Builder
         // for automatic sparse bitset support
@@ -873,8 +937,6 @@ public final class KrillCollection extends Notifications implements IndexInfo {
         // No index defined
         if (this.index == null) return (long) 0;
 
-        // TODO: Caching!
-
         long docCount = 0;
         try {
             FixedBitSet bitset;
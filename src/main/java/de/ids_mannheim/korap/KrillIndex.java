@@ -1,5 +1,7 @@
 package de.ids_mannheim.korap;
 
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -8,12 +10,20 @@ import java.time.LocalDate;
 // Java core classes
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 
@@ -24,16 +34,23 @@ import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.DocsEnum;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
+import org.apache.lucene.index.LogDocMergePolicy;
+import org.apache.lucene.index.LogMergePolicy;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.index.TieredMergePolicy;
 // Lucene classes
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
@@ -62,13 +79,18 @@ import com.github.benmanes.caffeine.cache.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 // Krill classes
+import de.ids_mannheim.korap.cache.LeafCountCache;
+import de.ids_mannheim.korap.cache.VirtualCorpusCache;
 import de.ids_mannheim.korap.index.FieldDocument;
 import de.ids_mannheim.korap.index.KeywordAnalyzer;
+import de.ids_mannheim.korap.index.MarkerLoader;
+import de.ids_mannheim.korap.index.Deadline;
+import de.ids_mannheim.korap.index.SearchCursor;
 import de.ids_mannheim.korap.index.PositionsToOffset;
+import de.ids_mannheim.korap.index.PrimaryData;
 import de.ids_mannheim.korap.index.SpanInfo;
 import de.ids_mannheim.korap.index.TermInfo;
 import de.ids_mannheim.korap.index.TextAnalyzer;
-import de.ids_mannheim.korap.index.TimeOutThread;
 import de.ids_mannheim.korap.response.Match;
 import de.ids_mannheim.korap.response.MatchCollector;
 import de.ids_mannheim.korap.response.MetaFields;
@@ -79,6 +101,8 @@ import de.ids_mannheim.korap.util.Fingerprinter;
 import de.ids_mannheim.korap.util.KrillDate;
 import de.ids_mannheim.korap.util.KrillProperties;
 import de.ids_mannheim.korap.util.QueryException;
+import de.ids_mannheim.korap.util.StatusCodes;
+import de.ids_mannheim.korap.util.TimeExceededException;
 
 import static com.fasterxml.jackson.core.StreamReadConstraints.DEFAULT_MAX_STRING_LEN;
 
@@ -161,24 +185,32 @@ public final class KrillIndex implements IndexInfo {
     // Keep in mind - upsert requires 2 commits
     // and isn't atomic
     private int autoCommit = 10000;
+
+    // Number of threads adding documents concurrently,
+    // defaults to krill.index.threads
+    private int indexThreads = -1;
     private String version = "Unknown";
     private String name = "Unknown";
 
     private String indexRevision;
     
     // Temp:
-    private IndexReader reader;
+    private volatile IndexReader reader;
+
+    // Guards opening and closing of the reader,
+    // so searches don't contend with the writer
+    private final Object readerLock = new Object();
 
     private IndexWriter writer;
-    private boolean readerOpen = false;
+    private volatile boolean readerOpen = false;
     private boolean writerOpen = false;
     private Directory directory;
 
     // The commit counter is only there for
-    // counting unstaged changes per thread (for bulk insertions)
+    // counting unstaged changes (for bulk insertions)
     // It does not represent real unstaged documents.
-    private int commitCounter = 0;
-    private HashMap termContexts;
+    private final AtomicInteger commitCounter = new AtomicInteger();
+    private HashMap<Term, TermContext> termContexts;
     private ObjectMapper mapper = new ObjectMapper();
 
     // Prelim CacheKey
@@ -191,6 +223,34 @@ public final class KrillIndex implements IndexInfo {
     record SearchCacheValue(long matchCount, long matchDocCount) {}
 
     Cache<SearchCacheKey, SearchCacheValue> searchCache;
+
+    // CacheKey for collection bit vectors of a leaf. Deletions
+    // are only ever added to a segment core, so the number of
+    // deleted documents identifies the live documents
+    record CollectionCacheKey(String collection, Object coreKey, int numDeleted) {}
+
+    // Bit vectors of collections per leaf
+    private Cache<CollectionCacheKey, FixedBitSet> collectionCache;
+
+    // Segment cores with a listener to invalidate the collection cache
+    private final Set<Object> collectionCacheCores = ConcurrentHashMap.newKeySet();
+
+    // Lightweight representation of a hit in a leaf
+    record LeafHit(int localDocID, int start, int end, List<byte[]> payload) {}
+
+    // Hits and counts of a single leaf, collected by a parallel search task
+    record LeafResult(List<LeafHit> hits, long matchCount, long matchDocCount,
+                      boolean timeExceeded) {}
+
+    // Hits of a leaf that are part of the requested page
+    record LeafPage(LeafReaderContext atomic, List<LeafHit> hits) {}
+
+    // Counts of queries per leaf, that may be persisted
+    private LeafCountCache countCache;
+
+    // Executor for searching leaves in parallel
+    private ExecutorService searchExecutor;
+    private boolean searchExecutorOwned = false;
     
     // private ByteBuffer bbTerm;
 
@@ -207,10 +267,14 @@ public final class KrillIndex implements IndexInfo {
         // Check for auto commit value
         String autoCommitStr = null;
         String cacheSizeStr = null;
+        String collectionCacheSizeStr = null;
         int cacheSize = (64 * 1024 * 1024); // 64 MB 
+        long collectionCacheSize = (64 * 1024 * 1024); // 64 MB
         if (prop != null) {
             autoCommitStr = prop.getProperty("krill.index.commit.auto");
             cacheSizeStr = prop.getProperty("krill.cache.size");
+            collectionCacheSizeStr = prop
+                    .getProperty("krill.cache.collection.size");
         }
         
         if (autoCommitStr != null) {
@@ -232,10 +296,29 @@ public final class KrillIndex implements IndexInfo {
             }
         };
 
+        if (collectionCacheSizeStr != null) {
+            try {
+                collectionCacheSize = Long.parseLong(collectionCacheSizeStr);
+            } catch (NumberFormatException e) {
+                log.warn("krill.cache.collection.size expected to be a numerical value");
+            }
+        };
+
+        countCache = new LeafCountCache(
+                KrillProperties.countCacheDir.isEmpty() ? null
+                        : new File(KrillProperties.countCacheDir),
+                KrillProperties.countCacheSize);
+
         searchCache = Caffeine.newBuilder()
             .maximumWeight(cacheSize)
             .weigher((SearchCacheKey key, SearchCacheValue value) -> 80) // estimate per-entry size
             .build();
+
+        collectionCache = Caffeine.newBuilder()
+            .maximumWeight(collectionCacheSize)
+            .weigher((CollectionCacheKey key, FixedBitSet value) ->
+                     (int) Math.min(value.ramBytesUsed() + 64, Integer.MAX_VALUE))
+            .build();
     };
 
 
@@ -301,6 +384,19 @@ public final class KrillIndex implements IndexInfo {
         log.info("Maximum string length set to {}.", maxStringLength);
     }
 
+
+    /**
+     * Set the number of threads adding documents concurrently,
+     * overriding <tt>krill.index.threads</tt>.
+     * This needs to be set before the index writer is opened.
+     * 
+     * @param threads
+     *            The number of indexing threads.
+     */
+    public void setIndexThreads (int threads) {
+        this.indexThreads = threads;
+    };
+
     /**
      * Get the name of the index.
      * 
@@ -319,13 +415,16 @@ public final class KrillIndex implements IndexInfo {
      * @return The {@link IndexReader} object.
      */
     public IndexReader reader () {
-        // Todo: Maybe use DirectoryReader.openIfChanged(DirectoryReader)       
-        if (!readerOpen)
-            this.openReader();
-        if (!readerOpen)
-            return null;
-
-        return this.reader;
+        // Todo: Maybe use DirectoryReader.openIfChanged(DirectoryReader)
+        final IndexReader reader = this.reader;
+        if (reader != null)
+            return reader;
+
+        synchronized (this.readerLock) {
+            if (!readerOpen)
+                this.openReader();
+            return this.reader;
+        }
     };
 
 
@@ -337,7 +436,7 @@ public final class KrillIndex implements IndexInfo {
      * @return The {@link IndexWriter} object.
      * @throws IOException
      */
-    public IndexWriter writer () throws IOException {
+    public synchronized IndexWriter writer () throws IOException {
         // Open writer if not already opened
         if (!writerOpen)
             this.openWriter();
@@ -365,7 +464,17 @@ public final class KrillIndex implements IndexInfo {
                 new TextAnalyzer(), analyzerPerField);
 
             // Create configuration with base analyzer
-            this.writer = new IndexWriter(this.directory, new IndexWriterConfig(analyzer));
+            IndexWriterConfig config = new IndexWriterConfig(analyzer);
+            config.setRAMBufferSizeMB(KrillProperties.indexRamBufferSize);
+            config.setMergePolicy(this._mergePolicy());
+
+            // Allow all indexing threads to write concurrently
+            final int threads = this.indexThreads > 0 ? this.indexThreads
+                    : KrillProperties.indexThreads;
+            if (threads > config.getMaxThreadStates())
+                config.setMaxThreadStates(threads);
+
+            this.writer = new IndexWriter(this.directory, config);
             writerOpen = true;
         }
 
@@ -377,6 +486,35 @@ public final class KrillIndex implements IndexInfo {
     };
 
 
+    // Create the merge policy based on the configuration
+    private MergePolicy _mergePolicy () {
+        final int mergeFactor = KrillProperties.indexMergeFactor;
+
+        switch (KrillProperties.indexMergePolicy) {
+            case "logbytesize":
+            case "logdoc":
+                LogMergePolicy lmp = KrillProperties.indexMergePolicy
+                        .equals("logdoc") ? new LogDocMergePolicy()
+                                : new LogByteSizeMergePolicy();
+                if (mergeFactor > 1)
+                    lmp.setMergeFactor(mergeFactor);
+                return lmp;
+
+            case "tiered":
+                break;
+
+            default:
+                log.warn("Unknown merge policy {} - fall back to tiered",
+                        KrillProperties.indexMergePolicy);
+        };
+
+        TieredMergePolicy tmp = new TieredMergePolicy();
+        if (mergeFactor > 1)
+            tmp.setSegmentsPerTier(mergeFactor);
+        return tmp;
+    };
+
+
     // Open index reader
     private void openReader () {
         if (readerOpen) {
@@ -385,7 +523,17 @@ public final class KrillIndex implements IndexInfo {
 
         try {
             // open reader
-            this.reader = DirectoryReader.open(this.directory);
+            final IndexReader reader = DirectoryReader.open(this.directory);
+
+            // Update cached VCs to the new leaves
+            VirtualCorpusCache.refresh(reader);
+
+            // Remove counts of leaves that are gone
+            if (this.countCache != null)
+                this.countCache.refresh(reader);
+
+            // Publish the reader
+            this.reader = reader;
             readerOpen = true;
         }
 
@@ -400,18 +548,34 @@ public final class KrillIndex implements IndexInfo {
     };
 
 
+    // Get the current reader and increment its reference count,
+    // so it is not closed while in use - needs to be released
+    // using decRef()
+    private IndexReader _acquireReader () {
+        synchronized (this.readerLock) {
+            final IndexReader reader = this.reader();
+            if (reader != null)
+                reader.incRef();
+            return reader;
+        }
+    };
+
+
     // Close index reader
     public void closeReader () throws IOException {
-        if (readerOpen || this.reader != null) {
-            this.reader.close();
-            this.reader = null;
-            readerOpen = false;
-        };
+        synchronized (this.readerLock) {
+            final IndexReader reader = this.reader;
+            if (readerOpen || reader != null) {
+                this.reader = null;
+                readerOpen = false;
+                reader.close();
+            };
+        }
     };
 
 
     // Close index writer
-    public void closeWriter () throws IOException {
+    public synchronized void closeWriter () throws IOException {
         if (writerOpen || this.writer != null) {
             this.writer.close();
             this.writer = null;
@@ -430,6 +594,80 @@ public final class KrillIndex implements IndexInfo {
     public void close () throws IOException {
         this.closeWriter();
         this.closeReader();
+
+        if (this.searchExecutorOwned && this.searchExecutor != null) {
+            this.searchExecutor.shutdown();
+            this.searchExecutor = null;
+            this.searchExecutorOwned = false;
+        };
+    };
+
+
+    /**
+     * Set the {@link ExecutorService} used to search the leaves
+     * of the index in parallel.
+     * Passing <code>null</code> disables parallel search,
+     * unless <tt>krill.search.threads</tt> is configured.
+     * The executor is not shut down when the index is closed.
+     * 
+     * @param executor
+     *            The {@link ExecutorService} for leaf searches.
+     */
+    public void setSearchExecutor (ExecutorService executor) {
+        if (this.searchExecutorOwned && this.searchExecutor != null)
+            this.searchExecutor.shutdown();
+        this.searchExecutor = executor;
+        this.searchExecutorOwned = false;
+    };
+
+
+    /**
+     * Get the {@link ExecutorService} used to search the leaves
+     * of the index in parallel.
+     * In case no executor was set, a thread pool is created
+     * based on the <tt>krill.search.threads</tt> property.
+     * 
+     * @return The {@link ExecutorService} or <code>null</code>,
+     *         in case parallel search is disabled.
+     */
+    public synchronized ExecutorService getSearchExecutor () {
+        if (this.searchExecutor == null && KrillProperties.searchThreads > 1) {
+            final AtomicInteger threadNr = new AtomicInteger();
+            this.searchExecutor = Executors.newFixedThreadPool(
+                KrillProperties.searchThreads,
+                r -> {
+                    Thread t = new Thread(r, "KrillSearch-" + threadNr.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+            this.searchExecutorOwned = true;
+        };
+        return this.searchExecutor;
+    };
+
+
+    /**
+     * Set the cache for the number of matches and documents
+     * of queries per leaf, e.g. to persist counts in a
+     * specific directory.
+     * 
+     * @param countCache
+     *            The {@link LeafCountCache} or <tt>null</tt>
+     *            to disable the cache.
+     */
+    public void setCountCache (LeafCountCache countCache) {
+        this.countCache = countCache;
+    };
+
+
+    /**
+     * Get the cache for the number of matches and documents
+     * of queries per leaf.
+     * 
+     * @return The {@link LeafCountCache}.
+     */
+    public LeafCountCache getCountCache () {
+        return this.countCache;
     };
 
 
@@ -444,7 +682,7 @@ public final class KrillIndex implements IndexInfo {
      */
     public void commit (boolean force) throws IOException {
         // There is something to commit
-        if (commitCounter > 0 || force)
+        if (commitCounter.get() > 0 || force)
             this.commit();
     };
 
@@ -457,7 +695,7 @@ public final class KrillIndex implements IndexInfo {
     public void commit () throws IOException {
         log.info("Internal committing index ... ");
         this.writer().commit();
-        commitCounter = 0;
+        commitCounter.set(0);
         this.closeReader();
     };
 
@@ -505,100 +743,111 @@ public final class KrillIndex implements IndexInfo {
             return doc;
         }
 
-        // Create a filter based on the corpusID and the docID
         String textSigle = doc.getTextSigle();
         KrillDate current = new KrillDate(LocalDate.now());
         KrillDate indexCreationDate = current;
         KrillDate indexLastModified = current;
-               
-        // Delete the document if exists
-        if (textSigle != null) {
 
-            // First find the document
-            Filter filter = (Filter) new QueryWrapperFilter(
-                new TermQuery(new Term("textSigle", textSigle))
+        if (textSigle == null) {
+            doc.addDate("indexCreationDate", indexCreationDate.toDisplay());
+            doc.addDate("indexLastModified", indexLastModified.toDisplay());
+            return this.addDoc(doc);
+        };
+
+        try {
+            // Keep the creation date of an existing document
+            KrillDate created = this._indexCreationDate(textSigle);
+            if (created != null)
+                indexCreationDate = created;
+
+            doc.addDate("indexCreationDate", indexCreationDate.toDisplay());
+            doc.addDate("indexLastModified", indexLastModified.toDisplay());
+
+            // Atomically delete the old document and add the new one
+            this.writer().updateDocument(
+                new Term("textSigle", textSigle),
+                doc.compile()
                 );
-            
-            try {
-                // Iterate over all atomic indices and find the matching document
+            if (commitCounter.incrementAndGet() > autoCommit) {
+                this.commit();
+            };
+            this.indexRevision = null;
+        }
 
-            UPSERT:
-                while (true) {
+        catch (IOException e) {
+            log.error("Unable to upsert document");
+        };
 
-                    if (this.reader() != null) {
-                
-                        for (LeafReaderContext atomic : this.reader().leaves()) {
-                        
-                            // The reader is closed
-                            /*
-                            if (this.reader.getRefCount() == 0) {
+        return doc;
+    };
 
-                                // Retry update
-                                break;
-                            };
-                            */
-                        
-                            // Retrieve the single document of interest
-                            DocIdSet filterSet = filter.getDocIdSet(
-                                atomic,
-                                atomic.reader().getLiveDocs());
-                        
-                            DocIdSetIterator filterIterator = filterSet.iterator();
 
-                            if (filterIterator == null) {
-                                continue;
-                            };
-                    
-                            // Go to the matching doc - and remember its ID
-                            int localDocID = filterIterator.nextDoc();
+    // Get the index creation date of a document by its textSigle,
+    // preferably from DocValues, so no stored fields need to be loaded
+    private KrillDate _indexCreationDate (String textSigle)
+            throws IOException {
 
-                            if (localDocID == DocIdSetIterator.NO_MORE_DOCS) {
-                                continue;
-                            };
+        // Keep the reader open, even if other threads commit
+        final IndexReader reader = this._acquireReader();
 
-                            // We've found the correct document! Hurray!
-                            if (DEBUG)
-                                log.trace("We've found a matching document");
-                            
-                            // TODO: Probably use
-                            // document(int docID, StoredFieldVisitor visitor)
-                            Document storedDoc = atomic.reader().document(localDocID);
-
-                            // Document is loadable
-                            if (storedDoc != null) {
-                                IndexableField indexCreationField =
-                                    storedDoc.getField("indexCreationDate");
-                        
-                                if (indexCreationField == null) {
-                                    indexCreationDate = current;
-                                }
-                                else {
-                                    indexCreationDate = new KrillDate(
-                                        indexCreationField.numericValue().toString()
-                                        );
-                                };
-                            };
+        if (reader == null)
+            return null;
 
-                            this.delDocs("textSigle", textSigle);
-                            break UPSERT;
-                        };
-                    }
-                    else {
-                        log.warn("Reader is null");
-                    };
-                    break;
+        final BytesRef term = new BytesRef(textSigle);
+        TermsEnum termsEnum = null;
+        DocsEnum docs = null;
+
+        try {
+            for (LeafReaderContext atomic : reader.leaves()) {
+                final LeafReader lreader = atomic.reader();
+                final Terms terms = lreader.terms("textSigle");
+
+                if (terms == null)
+                    continue;
+
+                termsEnum = terms.iterator(termsEnum);
+                if (!termsEnum.seekExact(term))
+                    continue;
+
+                // Find the live document
+                docs = termsEnum.docs(lreader.getLiveDocs(), docs,
+                        DocsEnum.FLAG_NONE);
+                final int localDocID = docs.nextDoc();
+
+                if (localDocID == DocIdSetIterator.NO_MORE_DOCS)
+                    continue;
+
+                if (DEBUG)
+                    log.trace("We've found a matching document");
+
+                final NumericDocValues dates = lreader
+                        .getNumericDocValues("indexCreationDate");
+
+                if (dates != null) {
+                    final long date = dates.get(localDocID);
+                    if (date != 0)
+                        return new KrillDate(String.valueOf(date));
                 };
-            }
 
-            catch (IOException e) {
-                log.error("Unable to upsert document");
+                // Documents indexed without DocValues
+                final Document storedDoc = lreader.document(localDocID,
+                        Collections.singleton("indexCreationDate"));
+                final IndexableField indexCreationField = storedDoc
+                        .getField("indexCreationDate");
+
+                if (indexCreationField == null)
+                    return null;
+
+                return new KrillDate(
+                    indexCreationField.numericValue().toString()
+                    );
             };
+        }
+        finally {
+            reader.decRef();
         };
 
-        doc.addDate("indexCreationDate", indexCreationDate.toDisplay());
-        doc.addDate("indexLastModified", indexLastModified.toDisplay());
-
-        return this.addDoc(doc);
+        return null;
     };
 
 
@@ -662,9 +911,8 @@ public final class KrillIndex implements IndexInfo {
 
             // Add document to writer
             this.writer().addDocument(doc.compile());
-            if (++commitCounter > autoCommit) {
+            if (commitCounter.incrementAndGet() > autoCommit) {
                 this.commit();
-                commitCounter = 0;
             };
             this.indexRevision = null;
         }
@@ -690,9 +938,8 @@ public final class KrillIndex implements IndexInfo {
             return false;
         try {
             this.writer().deleteDocuments(new Term(field, term));
-            if (++commitCounter > autoCommit) {
+            if (commitCounter.incrementAndGet() > autoCommit) {
                 this.commit();
-                commitCounter = 0;
             };
 
             this.indexRevision = null;
@@ -968,9 +1215,8 @@ public final class KrillIndex implements IndexInfo {
 
                 // Load the necessary fields of the document
 
-                // TODO: Probably use
-                // document(int docID, StoredFieldVisitor visitor)
-                Document doc = atomic.reader().document(localDocID);
+                Document doc = PrimaryData.document(atomic.reader(),
+                        localDocID);
                 text.populateFields(doc);
 
                 return text;
@@ -1257,16 +1503,15 @@ public final class KrillIndex implements IndexInfo {
 				// Lift primary field
                 fieldsSet.add(field);
                 
-                // Load the necessary fields of the document
-                Document doc = (fields != null)
-                    ? atomic.reader().document(localDocID, fieldsSet)
-                    : atomic.reader().document(localDocID);
-
                 // Put some more information to the match
                 PositionsToOffset pto = new PositionsToOffset(atomic, field);
                 match.setPositionsToOffset(pto);
                 match.setLocalDocID(localDocID);
-                match.populateDocument(doc, field, (List<String>) fields);
+
+                // Load the necessary fields of the document,
+                // primary data stored in chunks is loaded on demand
+                match.populateDocument(atomic.reader(), localDocID, field,
+                        (List<String>) fields);
                 if (DEBUG)
                     log.trace("The document has the id '{}' or the sigle '{}'",
                             match.getDocID(), match.getTextSigle());
@@ -1449,6 +1694,13 @@ public final class KrillIndex implements IndexInfo {
      * Search the endpoint.
      */
     public Result search (Krill ks) {
+        return this.search(ks, false);
+    };
+
+
+    // Search the endpoint, optionally only counting
+    // matches and documents without collecting hits
+    Result search (Krill ks, boolean countOnly) {
         if (DEBUG)
             log.trace("Start search");
 
@@ -1468,7 +1720,7 @@ public final class KrillIndex implements IndexInfo {
         // Todo: Make kr subclassing ks - so ks has a method for a new Result!
         // Or allow passing of Krill object
         final Result kr = new Result(query.toString(), meta.getStartIndex(),
-                meta.getCount(), meta.getContext());
+                countOnly ? 0 : meta.getCount(), meta.getContext());
 
         // Copy notification info
         kr.moveNotificationsFrom(ks);
@@ -1498,8 +1750,7 @@ public final class KrillIndex implements IndexInfo {
         int count = kr.getItemsPerPage();
         int hits = kr.getItemsPerPage() + startIndex;
         int limit = meta.getLimit();
-        int itemsPerResourceCounter = 0;
-        boolean cutoff = meta.doCutOff();
+        boolean cutoff = !countOnly && meta.doCutOff();
         short itemsPerResource = meta.getItemsPerResource();
 
         // Check if there is work to do at all
@@ -1519,14 +1770,14 @@ public final class KrillIndex implements IndexInfo {
             return kr;
         };
 
-        // Collect matches from atomic readers
-        final ArrayList<Match> atomicMatches = new ArrayList<Match>(
-                kr.getItemsPerPage());
+        // Collect hits of the page per leaf, the matches are
+        // materialized after all spans were enumerated
+        final List<LeafPage> pages = new ArrayList<LeafPage>();
 
-        // Start time out thread
-        final TimeOutThread tthread = new TimeOutThread();
-        tthread.start();
-        final long timeout = meta.getTimeOut();
+        // Start the deadline and bind it to the current thread,
+        // so spans and snippet retrieval can stop early
+        final Deadline deadline = ks.startDeadline();
+        Deadline.set(deadline);
         boolean isTimeout = false;
        
         // See: http://www.ibm.com/developerworks/java/library/j-benchmark1/index.html
@@ -1534,6 +1785,10 @@ public final class KrillIndex implements IndexInfo {
 
         int fromCache = 0;
 
+        // A cursor for the following page is requested
+        final boolean withCursor = meta.getCursor() != null;
+        SearchCursor cursor = null, nextCursor = null;
+
         try {
             // Rewrite query (for regex and wildcard queries)
             // Revise!
@@ -1557,299 +1812,344 @@ public final class KrillIndex implements IndexInfo {
             };
 
             PrelimCacheKey prelim = new PrelimCacheKey(qHash, collHash, itemsPerResource);
-            
-            // Todo: run this in a separated thread
-            for (LeafReaderContext atomic : this.reader().leaves()) {
 
-                int oldLocalDocID = -1;
+            // Continue the search of a former page
+            if (withCursor && !meta.getCursor().isEmpty()) {
+                cursor = SearchCursor.decode(meta.getCursor());
+
+                // The cursor is invalidated by changes of the index
+                // or the collection
+                if (cursor == null
+                        || !cursor.isValid(this.getFingerprint(), qHash,
+                                collHash, itemsPerResource)
+                        || !this._isAligned(cursor, query, collection)) {
+                    kr.addWarning(StatusCodes.INVALID_CURSOR,
+                            "Cursor is invalid and was ignored");
+                    cursor = null;
+                }
+                else {
+                    startIndex = (int) cursor.matchCount();
+                    hits = count + startIndex;
+                    if (limit > 0 && hits > limit)
+                        hits = limit;
+                    kr.setStartIndex(startIndex);
+                    meta.setStartIndex(startIndex);
+
+                    // Matches and documents of the skipped leaves
+                    // are counted by the cursor
+                    i = cursor.matchCount();
+                    j = cursor.matchDocCount();
+                };
+            };
 
-                if (isTimeout)
-                    break;
+            final List<LeafReaderContext> leaves = this.reader().leaves();
+
+            // Search leaves in parallel, in case all matches need to be counted
+            final ExecutorService executor =
+                (!cutoff && limit <= 0 && leaves.size() > 1 && !withCursor)
+                ? this.getSearchExecutor()
+                : null;
+
+            // Key of the counts in the persistent count cache.
+            // Named virtual corpora may be redefined,
+            // so their counts are not persisted
+            final String collString = (collf != null) ? collf.toString() : "";
+            final String countKey = collection.refersToNamedVC() ? null
+                    : Fingerprinter.create(query.toString() + '\t' + collString
+                            + '\t' + itemsPerResource);
+
+            // Only count matches and documents, without collecting hits
+            if (count == 0 && !cutoff && limit <= 0 && !withCursor) {
+                fromCache = this._count(leaves, kr, query, collection, prelim,
+                        countKey, deadline);
+            }
 
-                SearchCacheKey finalCacheKey = new SearchCacheKey(prelim, atomic.reader().getCombinedCoreAndDeletesKey().toString());
-                SearchCacheValue foundCache = searchCache.getIfPresent(finalCacheKey);
-                
-                if (foundCache != null) {
-                    if (DEBUG) {
-                        log.trace(
-                            "Found cache for Query: {}, Collection: {}, itemsPerRessource: {}, Reader: {}",
-                            qHash, collHash, itemsPerResource, atomic.reader().getCombinedCoreAndDeletesKey().toString()
-                            );
-                    };
+            else if (executor != null) {
+                fromCache = this._searchParallel(executor, leaves, ks, kr,
+                        query, collection, prelim, countKey, deadline, pages);
+            }
+            else {
+                for (LeafReaderContext atomic : leaves) {
 
-                    if (startIndex > (i + foundCache.matchCount)) {
-                        fromCache += foundCache.matchCount;
-                        i += foundCache.matchCount;
-                        j += foundCache.matchDocCount;
-                        continue;
-                    };
-                } else if (DEBUG) {
-                    log.trace(
-                        "Found no cache for Query: {}, Collection: {}, itemsPerRessource: {}, Reader: {}",
-                        qHash, collHash, itemsPerResource, atomic.reader().getCombinedCoreAndDeletesKey().toString()
-                        );
-                } 
-
-                /*
-                 * Todo: There may be a way to know early if the bitset is emty
-                 * by using LongBitSet - but this may not be as fast as I think.
-                 */
-                final FixedBitSet bitset = collection.bits(atomic);
-
-				if (bitset.nextSetBit(0) == DocIdSetIterator.NO_MORE_DOCS) {
-                    if (foundCache == null)
-                        searchCache.put(
-                            finalCacheKey,
-                            new SearchCacheValue(0, 0)
-                            );
-                    
-                    if (DEBUG) {
-                        log.trace(
-                            "Store cache (1) for Query: {}, Collection: {}, itemsPerRessource: {}, Reader: {}, store:0/0",
-                            qHash,
-                            collHash,
-                            itemsPerResource,
-                            atomic.reader().getCombinedCoreAndDeletesKey().toString()
-                            );
-                    };
-					continue;
-                };
+                    int oldLocalDocID = -1;
+                    int itemsPerResourceCounter = 0;
 
-                final PositionsToOffset pto = snippets ? new PositionsToOffset(atomic, field) : null;
-				
-                // Spans spans = NearSpansOrdered();
-                final Spans spans = query.getSpans(atomic, (Bits) bitset,
-                        termContexts);
+                    if (isTimeout)
+                        break;
 
-                final IndexReader lreader = atomic.reader();
-                int localDocID, docID;
+                    // Leaves before the cursor are already counted
+                    if (cursor != null && atomic.ord < cursor.leaf())
+                        continue;
 
-                long li = i;
-                long lj = j;
+                    SearchCacheKey finalCacheKey = new SearchCacheKey(prelim, atomic.reader().getCombinedCoreAndDeletesKey().toString());
+                    SearchCacheValue foundCache = this._cachedCounts(finalCacheKey, atomic, countKey);
                 
-                // TODO: Get document information from Cache! Fieldcache?
-                for (; i < hits; i++) {
+                    if (foundCache != null) {
+                        if (DEBUG) {
+                            log.trace(
+                                "Found cache for Query: {}, Collection: {}, itemsPerRessource: {}, Reader: {}",
+                                qHash, collHash, itemsPerResource, atomic.reader().getCombinedCoreAndDeletesKey().toString()
+                                );
+                        };
 
-                    if (DEBUG)
-                        log.trace("Match Nr {}/{}", i, count);
-                   
-                    // There are no more spans to find
-                    if (!spans.next()) {
+                        if (startIndex > (i + foundCache.matchCount)) {
+                            fromCache += foundCache.matchCount;
+                            i += foundCache.matchCount;
+                            j += foundCache.matchDocCount;
+                            continue;
+                        };
+                    } else if (DEBUG) {
+                        log.trace(
+                            "Found no cache for Query: {}, Collection: {}, itemsPerRessource: {}, Reader: {}",
+                            qHash, collHash, itemsPerResource, atomic.reader().getCombinedCoreAndDeletesKey().toString()
+                            );
+                    } 
+
+                    /*
+                     * Todo: There may be a way to know early if the bitset is emty
+                     * by using LongBitSet - but this may not be as fast as I think.
+                     */
+                    final FixedBitSet bitset = collection.bits(atomic);
+
+    				if (bitset.nextSetBit(0) == DocIdSetIterator.NO_MORE_DOCS) {
                         if (foundCache == null)
-                            foundCache = new SearchCacheValue(i - li, j - lj);
-                            searchCache.put(
+                            this._cacheCounts(
                                 finalCacheKey,
-                                foundCache
+                                atomic,
+                                countKey,
+                                new SearchCacheValue(0, 0)
                                 );
-
+                    
                         if (DEBUG) {
                             log.trace(
-                                "Store cache (2) for Query: {}, Collection: {}, itemsPerRessource: {}, Reader: {}, store:{}/{}",
+                                "Store cache (1) for Query: {}, Collection: {}, itemsPerRessource: {}, Reader: {}, store:0/0",
                                 qHash,
                                 collHash,
                                 itemsPerResource,
-                                atomic.reader().getCombinedCoreAndDeletesKey().toString(),
-                                i - li,
-                                j - lj
+                                atomic.reader().getCombinedCoreAndDeletesKey().toString()
                                 );
                         };
-                        break;
-                    };
-                    
-                    // Increment resource counter
-                    itemsPerResourceCounter++;
-                    
-                    // Timeout!
-                    if (tthread.getTime() > timeout) {
-                        kr.setTimeExceeded(true);
-                        isTimeout=true;
-                        break;
+    					continue;
                     };
 
-                    localDocID = spans.doc();
+                    // Hits are added before enumeration, so they are
+                    // kept in case of a timeout
+                    final List<LeafHit> leafHits = new ArrayList<LeafHit>();
+                    pages.add(new LeafPage(atomic, leafHits));
 
-                    // IDS are identical
-                    if (localDocID == oldLocalDocID
-                        || oldLocalDocID == -1) {
+                    // Spans spans = NearSpansOrdered();
+                    final Spans spans = query.getSpans(atomic, (Bits) bitset,
+                            termContexts);
 
-                        // Count hits per resource
-                        if (itemsPerResource > 0) {
-                            
-                            // End of resourcecounter is reached
-                            if (itemsPerResourceCounter > itemsPerResource) {
+                    int localDocID;
 
-                                // Skip to next resource
-                                if (spans.skipTo(localDocID + 1) != true) {
-                                    break;
-                                }
+                    long li = i;
+                    long lj = j;
 
-                                itemsPerResourceCounter = 1;
-                                localDocID = spans.doc();
-                            };
-                        }
-                    }
+                    // Counts of the leaf are incomplete when resuming
+                    boolean resumed = false;
 
-                    // localDoc is new
-                    else
-                        itemsPerResourceCounter = 1;
+                    // Move the spans to the last span before the page,
+                    // the cursor was checked to be aligned
+                    if (cursor != null && atomic.ord == cursor.leaf()) {
+                        resumed = true;
+                        spans.skipTo(cursor.localDocID());
+                        for (int k = 1; k < cursor.docSpans(); k++)
+                            spans.next();
 
+                        oldLocalDocID = cursor.localDocID();
+                        itemsPerResourceCounter = cursor.docSpans();
+                    };
+                
+                    // TODO: Get document information from Cache! Fieldcache?
+                    for (; i < hits; i++) {
 
-                    if (itemsPerResourceCounter == 1)
-                        j++;
+                        if (DEBUG)
+                            log.trace("Match Nr {}/{}", i, count);
+                   
+                        // There are no more spans to find
+                        if (!spans.next()) {
+                            if (resumed)
+                                break;
 
-                    oldLocalDocID = localDocID;
+                            if (foundCache == null)
+                                foundCache = new SearchCacheValue(i - li, j - lj);
+                                this._cacheCounts(
+                                    finalCacheKey,
+                                    atomic,
+                                    countKey,
+                                    foundCache
+                                    );
+
+                            if (DEBUG) {
+                                log.trace(
+                                    "Store cache (2) for Query: {}, Collection: {}, itemsPerRessource: {}, Reader: {}, store:{}/{}",
+                                    qHash,
+                                    collHash,
+                                    itemsPerResource,
+                                    atomic.reader().getCombinedCoreAndDeletesKey().toString(),
+                                    i - li,
+                                    j - lj
+                                    );
+                            };
+                            break;
+                        };
                     
+                        // Increment resource counter
+                        itemsPerResourceCounter++;
                     
-                    // The next matches are not yet part of the result
-                    if (startIndex > i)
-                        continue;
-
-                    docID = atomic.docBase + localDocID;
+                        // Timeout!
+                        if (deadline.isExpired()) {
+                            kr.setTimeExceeded(true);
+                            isTimeout=true;
+                            break;
+                        };
 
-                    // Do not load all of this, in case the doc is the same!
-                    final Document doc = (fields != null)
-                            ? lreader.document(localDocID, fieldsSet)
-                            : lreader.document(localDocID);
-                    
-                    int maxMatchSize = ks.getMaxTokenMatchSize();
-                    if (maxMatchSize <= 0
-                            || maxMatchSize > KrillProperties.maxTokenMatchSize) {
-                        maxMatchSize = KrillProperties.maxTokenMatchSize;
-                    };
-                    
-                    // Create new Match
-                    final Match match = new Match(maxMatchSize, pto, localDocID,
-                            spans.start(), spans.end());
-                    
-                    // Add snippet if existing
-                    if (snippets) {
-                        match.setContext(kr.getContext());
-                        match.retrieveMarkers("~:base/s:pb");
-                        match.retrieveMarkers("~:base/s:marker");
+                        localDocID = spans.doc();
 
-                        if (DEBUG)
-                            log.trace("Retrieve pagebreaks from index");
+                        // IDS are identical
+                        if (localDocID == oldLocalDocID
+                            || oldLocalDocID == -1) {
 
-                        if (spans.isPayloadAvailable())
-                            match.addPayload((List<byte[]>) spans.getPayload());
-                        
-                        if (meta.hasSnippets()) {
-                            match.hasSnippet = true;
-                        };
-                        
-                        if (meta.hasTokens()) {
-                            match.hasTokens = true;
-                        };
-                    };
+                            // Count hits per resource
+                            if (itemsPerResource > 0) {
+                            
+                                // End of resourcecounter is reached
+                                if (itemsPerResourceCounter > itemsPerResource) {
 
-                    // Add match to Result
-                    kr.add(match);
-                    
-                    match.internalDocID = docID;
-                    
-                    // Lift certain fields
-                    if (fields != null) {
-                        match.populateDocument(doc, snippets ? field : null, fields);
-                    }
-                    // Lift all fields
-                    else {
-                        match.populateDocument(doc, snippets ? field : null);
-                    };
+                                    // Skip to next resource
+                                    if (spans.skipTo(localDocID + 1) != true) {
+                                        break;
+                                    }
 
+                                    itemsPerResourceCounter = 1;
+                                    localDocID = spans.doc();
+                                };
+                            }
+                        }
 
-                    if (DEBUG) {
-                        if (match.getDocID() != null)
-                            log.trace(
-                                    "With DocID: I've got 1 match of {} in {}",
-                                    count, match.getDocID());
+                        // localDoc is new
                         else
-                            log.trace("With UID: I've got 1 match of {} in {}",
-                                    count, match.getUID());
-                    };
+                            itemsPerResourceCounter = 1;
 
-                    atomicMatches.add(match);
-                };
 
-                // Can be disabled TEMPORARILY
-                while (!cutoff && !isTimeout && spans.next()) {
+                        if (itemsPerResourceCounter == 1)
+                            j++;
 
-                    // TODO: Deprecated
-                    if (limit > 0 && i >= limit)
-                        break;
+                        oldLocalDocID = localDocID;
+                    
+                    
+                        // The next matches are not yet part of the result
+                        if (startIndex > i)
+                            continue;
 
-                    // Timeout!
-                    if (tthread.getTime() > timeout) {
-                        kr.setTimeExceeded(true);
-                        isTimeout=true;
-                        break;
+                        leafHits.add(new LeafHit(localDocID, spans.start(),
+                            spans.end(),
+                            (snippets && spans.isPayloadAvailable())
+                            ? new ArrayList<byte[]>(spans.getPayload())
+                            : null));
+
+                        // Remember the position after the last match of the page
+                        if (withCursor && i == hits - 1) {
+                            nextCursor = new SearchCursor(this.getFingerprint(),
+                                qHash, collHash, itemsPerResource, atomic.ord,
+                                localDocID, itemsPerResourceCounter, i + 1, j);
+                        };
                     };
 
-                    // Increment resource counter
-                    itemsPerResourceCounter++;
+                    // Can be disabled TEMPORARILY
+                    while (!cutoff && !isTimeout && spans.next()) {
+
+                        // TODO: Deprecated
+                        if (limit > 0 && i >= limit)
+                            break;
+
+                        // Timeout!
+                        if (deadline.isExpired()) {
+                            kr.setTimeExceeded(true);
+                            isTimeout=true;
+                            break;
+                        };
+
+                        // Increment resource counter
+                        itemsPerResourceCounter++;
                     
-                    localDocID = spans.doc();
+                        localDocID = spans.doc();
 
-                    if (localDocID == DocIdSetIterator.NO_MORE_DOCS)
-                        break;
+                        if (localDocID == DocIdSetIterator.NO_MORE_DOCS)
+                            break;
 
-                    // IDS are identical
-                    if (localDocID == oldLocalDocID
-                        || oldLocalDocID == -1) {
+                        // IDS are identical
+                        if (localDocID == oldLocalDocID
+                            || oldLocalDocID == -1) {
                                 
-                        if (localDocID == -1)
-                            break;
+                            if (localDocID == -1)
+                                break;
                         
-                        // Count hits per resource
-                        if (itemsPerResource > 0) {
-
-                            // End of resourcecounter is reached
-                            if (itemsPerResourceCounter > itemsPerResource) {
-                                if (spans.skipTo(localDocID + 1) != true) {
-                                    break;
+                            // Count hits per resource
+                            if (itemsPerResource > 0) {
+
+                                // End of resourcecounter is reached
+                                if (itemsPerResourceCounter > itemsPerResource) {
+                                    if (spans.skipTo(localDocID + 1) != true) {
+                                        break;
+                                    };
+                                    itemsPerResourceCounter = 1;
+                                    localDocID = spans.doc();
                                 };
-                                itemsPerResourceCounter = 1;
-                                localDocID = spans.doc();
-                            };
+                            }
                         }
-                    }
-                    // Reset counter
-                    else
-                        itemsPerResourceCounter = 1;
+                        // Reset counter
+                        else
+                            itemsPerResourceCounter = 1;
 
-                    if (itemsPerResourceCounter == 1)
-                        j++;
+                        if (itemsPerResourceCounter == 1)
+                            j++;
                     
-                    oldLocalDocID = localDocID;
-                    i++;
-                };
+                        oldLocalDocID = localDocID;
+                        i++;
+                    };
 
-                if (!isTimeout && !cutoff) {
-                    if (foundCache == null) {
-                        searchCache.put(
-                            finalCacheKey,
-                            new SearchCacheValue(i - li, j -lj)
-                            );
+                    if (!isTimeout && !cutoff && !resumed) {
+                        if (foundCache == null) {
+                            this._cacheCounts(
+                                finalCacheKey,
+                                atomic,
+                                countKey,
+                                new SearchCacheValue(i - li, j -lj)
+                                );
                     
-                        if (DEBUG) {
-                            log.trace(
-                                "Store cache (3) for Query: {}, Collection: {}, itemsPerRessource: {}, Reader: {}, store:{}/{}",
-                                qHash,
-                                collHash,
-                                itemsPerResource,
-                                atomic.reader().getCombinedCoreAndDeletesKey().toString(),
-                                i - li,
-                                j - lj
-                                );
+                            if (DEBUG) {
+                                log.trace(
+                                    "Store cache (3) for Query: {}, Collection: {}, itemsPerRessource: {}, Reader: {}, store:{}/{}",
+                                    qHash,
+                                    collHash,
+                                    itemsPerResource,
+                                    atomic.reader().getCombinedCoreAndDeletesKey().toString(),
+                                    i - li,
+                                    j - lj
+                                    );
+                            };
                         };
                     };
                 };
-                
-                atomicMatches.clear();
+
+                kr.setTotalResults(cutoff ? (long) -1 : i);
+                kr.setTotalResources(cutoff ? (long) -1 : j);
+
+                // Return a cursor, in case there may be more matches
+                if (nextCursor != null
+                        && (cutoff || isTimeout || i > nextCursor.matchCount()))
+                    kr.setCursor(nextCursor.encode());
             };
 
             if (itemsPerResource > 0)
                 kr.setItemsPerResource(itemsPerResource);
+        }
 
+        // Aborted while enumerating spans
+        catch (TimeExceededException e) {
+            kr.setTimeExceeded(true);
             kr.setTotalResults(cutoff ? (long) -1 : i);
             kr.setTotalResources(cutoff ? (long) -1 : j);
         }
@@ -1876,18 +2176,671 @@ public final class KrillIndex implements IndexInfo {
             e.printStackTrace();
         }
 
+        // Materialize the hits in document order per leaf,
+        // so stored fields are read sequentially.
+        // All collected hits become matches, but the deadline
+        // stays bound, as markers are part of the time budget
+        try {
+            for (LeafPage page : pages)
+                this._materialize(ks, kr, page, fields, fieldsSet, field);
+
+            if (deadline.isExpired())
+                kr.setTimeExceeded(true);
+        }
+        catch (IOException e) {
+            kr.addError(600, "Unable to read index", e.getLocalizedMessage());
+            log.warn(e.getLocalizedMessage());
+        }
+
+        // Release the deadline, snippets are built lazily
+        // within the same deadline on serialization
+        finally {
+            Deadline.clear();
+            kr.setDeadline(deadline);
+        };
+
         if (fromCache > 0)
             kr.addMessage(0, "Some results were cached", String.valueOf(fromCache));
 
-        // Stop timer thread
-        tthread.stopTimer();
-
         // Calculate time
         kr.setBenchmark(t1, System.nanoTime());
 
         return kr;
     };
 
+    // Check, if the spans reach the position of the cursor.
+    // Collections referring to named VCs may have been redefined
+    // without changing the collection hash, and cursors may
+    // have been tampered with.
+    private boolean _isAligned (SearchCursor cursor, SpanQuery query,
+            KrillCollection collection) throws IOException, QueryException {
+
+        final List<LeafReaderContext> leaves = this.reader().leaves();
+        if (cursor.leaf() >= leaves.size())
+            return false;
+
+        final LeafReaderContext atomic = leaves.get(cursor.leaf());
+        final int localDocID = cursor.localDocID();
+        if (localDocID >= atomic.reader().maxDoc())
+            return false;
+
+        final Spans spans = query.getSpans(atomic,
+                (Bits) collection.bits(atomic), new HashMap<Term, TermContext>());
+
+        boolean more = spans.skipTo(localDocID) && spans.doc() == localDocID;
+        for (int k = 1; more && k < cursor.docSpans(); k++)
+            more = spans.next() && spans.doc() == localDocID;
+        return more;
+    };
+
+
+    // Create loaders for pagebreaks and markers,
+    // shared by all matches of a leaf
+    private static MarkerLoader[] _markerLoaders (LeafReaderContext atomic) {
+        return new MarkerLoader[] {
+                new MarkerLoader(atomic, "tokens", "~:base/s:pb"),
+                new MarkerLoader(atomic, "tokens", "~:base/s:marker") };
+    };
+
+
+    // Create the matches of all hits of a leaf and add them to the result.
+    // Marker retrieval stops silently when the bound deadline expires
+    private void _materialize (Krill ks, Result kr, LeafPage page,
+            List<String> fields, Set<String> fieldsSet, String field)
+            throws IOException {
+
+        if (page.hits().isEmpty())
+            return;
+
+        final KrillMeta meta = ks.getMeta();
+        final boolean snippets = meta.hasSnippets() || meta.hasTokens();
+        final LeafReaderContext atomic = page.atomic();
+
+        // Offsets and markers are shared by all matches of the leaf
+        final PositionsToOffset pto = snippets
+                ? new PositionsToOffset(atomic, field)
+                : null;
+        final MarkerLoader[] markers = snippets ? _markerLoaders(atomic)
+                : null;
+
+        for (LeafHit hit : page.hits()) {
+            this._buildMatch(ks, kr, pto, markers, atomic, hit.localDocID(),
+                    hit.start(), hit.end(), hit.payload(), fields, fieldsSet,
+                    field);
+        };
+    };
+
+
+    // Create a match in a leaf and add it to the result
+    private Match _buildMatch (Krill ks, Result kr, PositionsToOffset pto,
+            MarkerLoader[] markers, LeafReaderContext atomic, int localDocID, int start, int end,
+            List<byte[]> payload, List<String> fields, Set<String> fieldsSet,
+            String field) throws IOException {
+
+        final KrillMeta meta = ks.getMeta();
+        final boolean snippets = meta.hasSnippets() || meta.hasTokens();
+
+        // Do not load all of this, in case the doc is the same!
+        // Primary data stored in chunks is not loaded here
+        final PrimaryData.Loader loader = new PrimaryData.Loader(
+                (fields != null) ? fieldsSet : null, snippets ? field : null)
+                        .load(atomic.reader(), localDocID);
+        final Document doc = loader.getDocument();
+
+        int maxMatchSize = ks.getMaxTokenMatchSize();
+        if (maxMatchSize <= 0
+                || maxMatchSize > KrillProperties.maxTokenMatchSize) {
+            maxMatchSize = KrillProperties.maxTokenMatchSize;
+        };
+
+        // Create new Match
+        final Match match = new Match(maxMatchSize, pto, localDocID, start,
+                end);
+
+        // Add snippet if existing
+        if (snippets) {
+
+            // Register the match boundaries, so the offsets of all
+            // matches in the leaf are resolved in a single batch
+            pto.add(localDocID, start);
+            pto.add(localDocID, end - 1);
+
+            match.setContext(kr.getContext());
+            for (MarkerLoader marker : markers)
+                match.retrieveMarkers(marker);
+
+            if (DEBUG)
+                log.trace("Retrieve pagebreaks from index");
+
+            if (payload != null)
+                match.addPayload(payload);
+
+            if (meta.hasSnippets()) {
+                match.hasSnippet = true;
+            };
+
+            if (meta.hasTokens()) {
+                match.hasTokens = true;
+            };
+        };
+
+        // Add match to Result
+        kr.add(match);
+
+        match.internalDocID = atomic.docBase + localDocID;
+
+        // Lift certain fields
+        if (fields != null) {
+            match.populateDocument(doc, snippets ? field : null, fields);
+        }
+        // Lift all fields
+        else {
+            match.populateDocument(doc, snippets ? field : null);
+        };
+
+        // Read chunks of the primary data only for the snippet
+        if (snippets) {
+            final PrimaryData primary = loader.getPrimaryData();
+            if (primary != null)
+                match.setPrimaryData(primary);
+        };
+
+        if (DEBUG) {
+            if (match.getDocID() != null)
+                log.trace("With DocID: I've got 1 match in {}",
+                        match.getDocID());
+            else
+                log.trace("With UID: I've got 1 match in {}",
+                        match.getUID());
+        };
+
+        return match;
+    };
+
+
+    /**
+     * Count the matches and documents of a search,
+     * without collecting any matches.
+     * The paging and cut-off settings of the request are ignored,
+     * but not changed.
+     * 
+     * @param ks
+     *            The {@link Krill} request.
+     * @return A {@link Result} with the total number of
+     *         matches and documents.
+     */
+    public Result count (Krill ks) {
+        VirtualCorpusCache.setIndexInfo(this);
+        return ks.apply(this, true);
+    };
+
+
+    /**
+     * Warm up the caches by replaying a log of queries,
+     * e.g. at startup. The matches and documents of the
+     * queries are counted per leaf and cached, so following
+     * searches don't need to enumerate all matches again.
+     * 
+     * @param queries
+     *            The query log with one KoralQuery request per line.
+     *            Empty lines and lines starting with <tt>#</tt>
+     *            are ignored.
+     * @return The number of successfully replayed queries.
+     * @throws IOException
+     */
+    public int warmUp (BufferedReader queries) throws IOException {
+        int replayed = 0;
+        int lineNr = 0;
+        String line;
+        while ((line = queries.readLine()) != null) {
+            lineNr++;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#')
+                continue;
+
+            final Result kr = this.count(new Krill(line));
+            if (kr.hasErrors()) {
+                log.warn("Unable to warm up query in line {}: {}", lineNr,
+                        kr.getError(0).getMessage());
+                continue;
+            };
+            replayed++;
+        };
+        return replayed;
+    };
+
+
+    // Get the counts of a leaf from the search cache or,
+    // in case they are not cached in memory, from the count cache
+    private SearchCacheValue _cachedCounts (SearchCacheKey cacheKey,
+            LeafReaderContext atomic, String countKey) {
+        SearchCacheValue cached = searchCache.getIfPresent(cacheKey);
+        if (cached != null || countKey == null || this.countCache == null)
+            return cached;
+
+        final String leafFp = LeafCountCache.leafFingerprint(atomic.reader());
+        if (leafFp == null)
+            return null;
+
+        final LeafCountCache.Counts counts = this.countCache.get(leafFp,
+                countKey);
+        if (counts == null)
+            return null;
+
+        cached = new SearchCacheValue(counts.matchCount(),
+                counts.matchDocCount());
+        searchCache.put(cacheKey, cached);
+        return cached;
+    };
+
+
+    // Cache the counts of a leaf in the search cache
+    // and the count cache
+    private void _cacheCounts (SearchCacheKey cacheKey,
+            LeafReaderContext atomic, String countKey,
+            SearchCacheValue counts) {
+        searchCache.put(cacheKey, counts);
+        if (countKey == null || this.countCache == null)
+            return;
+
+        final String leafFp = LeafCountCache.leafFingerprint(atomic.reader());
+        if (leafFp != null)
+            this.countCache.put(leafFp, countKey, new LeafCountCache.Counts(
+                    counts.matchCount(), counts.matchDocCount()), true);
+    };
+
+
+    /*
+     * Count matches and documents of all leaves, optionally
+     * in parallel. Counts are cached per leaf in the search cache
+     * and in the count cache, that may be persisted on disk.
+     */
+    private int _count (List<LeafReaderContext> leaves, Result kr,
+            SpanQuery query, KrillCollection collection,
+            PrelimCacheKey prelim, String countKey, Deadline deadline)
+            throws IOException, QueryException {
+
+        final short itemsPerResource = prelim.itemsPerRessource();
+        final Map<Term, TermContext> termContexts = this.termContexts;
+        final ExecutorService executor = leaves.size() > 1
+                ? this.getSearchExecutor()
+                : null;
+
+        final int size = leaves.size();
+        final SearchCacheKey[] cacheKeys = new SearchCacheKey[size];
+        final LeafResult[] results = new LeafResult[size];
+        final List<Future<LeafResult>> tasks = new ArrayList<>(size);
+
+        // Tasks are stopped cooperatively, as interrupts
+        // may close the channels of the index directory
+        final Deadline taskDeadline = deadline.fork();
+
+        long i = 0, j = 0;
+        int fromCache = 0;
+
+        // Take counts from the caches
+        for (int l = 0; l < size; l++) {
+            final LeafReaderContext atomic = leaves.get(l);
+            tasks.add(null);
+
+            cacheKeys[l] = new SearchCacheKey(prelim,
+                    atomic.reader().getCombinedCoreAndDeletesKey().toString());
+            final SearchCacheValue cached = this._cachedCounts(cacheKeys[l],
+                    atomic, countKey);
+
+            if (cached != null) {
+                results[l] = new LeafResult(Collections.emptyList(),
+                        cached.matchCount(), cached.matchDocCount(), false);
+                fromCache += cached.matchCount();
+                continue;
+            };
+
+            // Count uncached leaves concurrently
+            if (executor != null) {
+                tasks.set(l, executor.submit(() -> {
+                    Deadline.set(taskDeadline);
+                    try {
+                        return this._countLeaf(atomic, query, collection,
+                                itemsPerResource, termContexts, taskDeadline);
+                    }
+                    finally {
+                        Deadline.clear();
+                    }
+                }));
+            };
+        };
+
+        try {
+            for (int l = 0; l < size; l++) {
+                LeafResult lr = results[l];
+                final boolean counted = lr == null;
+
+                if (lr == null) {
+                    lr = (tasks.get(l) != null) ? tasks.get(l).get()
+                            : this._countLeaf(leaves.get(l), query,
+                                    collection, itemsPerResource,
+                                    termContexts, deadline);
+                };
+
+                i += lr.matchCount();
+                j += lr.matchDocCount();
+
+                // Counts are incomplete
+                if (lr.timeExceeded()) {
+                    kr.setTimeExceeded(true);
+                    break;
+                };
+
+                if (counted)
+                    this._cacheCounts(cacheKeys[l], leaves.get(l), countKey,
+                            new SearchCacheValue(lr.matchCount(),
+                                    lr.matchDocCount()));
+            };
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Search was interrupted", e);
+        }
+        catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof QueryException)
+                throw (QueryException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+        finally {
+            // Do not keep counting in case of failures
+            taskDeadline.cancel();
+            for (Future<LeafResult> task : tasks) {
+                if (task != null)
+                    task.cancel(false);
+            };
+        };
+
+        kr.setTotalResults(i);
+        kr.setTotalResources(j);
+
+        return fromCache;
+    };
+
+
+    // Count matches and documents of a single leaf
+    private LeafResult _countLeaf (LeafReaderContext atomic, SpanQuery query,
+            KrillCollection collection, short itemsPerResource,
+            Map<Term, TermContext> termContexts, Deadline deadline)
+            throws IOException, QueryException {
+
+        long mc = 0, dc = 0;
+        try {
+            final FixedBitSet bitset = collection.bits(atomic);
+
+            if (bitset.nextSetBit(0) == DocIdSetIterator.NO_MORE_DOCS)
+                return new LeafResult(Collections.emptyList(), 0, 0, false);
+
+            final Spans spans = query.getSpans(atomic, (Bits) bitset,
+                    termContexts);
+
+            int itemsPerResourceCounter = 0;
+            int oldLocalDocID = -1;
+            int localDocID;
+
+            while (spans.next()) {
+
+                // Timeout!
+                if (deadline.isExpired())
+                    return new LeafResult(Collections.emptyList(), mc, dc,
+                            true);
+
+                localDocID = spans.doc();
+
+                // localDoc is new
+                if (localDocID != oldLocalDocID) {
+                    itemsPerResourceCounter = 1;
+                }
+
+                // End of resourcecounter is reached
+                else if (++itemsPerResourceCounter > itemsPerResource
+                        && itemsPerResource > 0) {
+
+                    // Skip to next resource
+                    if (!spans.skipTo(localDocID + 1))
+                        break;
+
+                    itemsPerResourceCounter = 1;
+                    localDocID = spans.doc();
+                };
+
+                if (itemsPerResourceCounter == 1)
+                    dc++;
+
+                oldLocalDocID = localDocID;
+                mc++;
+            };
+        }
+
+        // Aborted while enumerating spans
+        catch (TimeExceededException e) {
+            return new LeafResult(Collections.emptyList(), mc, dc, true);
+        };
+
+        return new LeafResult(Collections.emptyList(), mc, dc, false);
+    };
+
+
+    /*
+     * Count and collect matches of all leaves concurrently
+     * and merge them in docBase order, so the result is identical
+     * to the serial search.
+     * Leaves are searched independently, therefore each task collects
+     * lightweight hits for all matches that may be part of the
+     * requested page - the hits of the page are added to the pages
+     * and only materialized after merging.
+     */
+    private int _searchParallel (ExecutorService executor,
+            List<LeafReaderContext> leaves, Krill ks, Result kr,
+            SpanQuery query, KrillCollection collection, PrelimCacheKey prelim,
+            String countKey, Deadline deadline, List<LeafPage> pages)
+            throws IOException, QueryException {
+
+        final KrillMeta meta = ks.getMeta();
+        final boolean snippets = meta.hasSnippets() || meta.hasTokens();
+        final short itemsPerResource = meta.getItemsPerResource();
+        final int startIndex = kr.getStartIndex();
+        final int hits = kr.getItemsPerPage() + startIndex;
+        final Map<Term, TermContext> termContexts = this.termContexts;
+
+        final int size = leaves.size();
+        final SearchCacheKey[] cacheKeys = new SearchCacheKey[size];
+        final SearchCacheValue[] cached = new SearchCacheValue[size];
+        final List<Future<LeafResult>> tasks = new ArrayList<>(size);
+
+        // Tasks are stopped cooperatively, as interrupts
+        // may close the channels of the index directory
+        final Deadline taskDeadline = deadline.fork();
+
+        long i = 0, j = 0;
+        int fromCache = 0;
+
+        // Leaves at the beginning can be skipped, as long as
+        // their counts are cached and they are not part of the page
+        boolean skippable = true;
+
+        for (int l = 0; l < size; l++) {
+            final LeafReaderContext atomic = leaves.get(l);
+
+            cacheKeys[l] = new SearchCacheKey(prelim,
+                    atomic.reader().getCombinedCoreAndDeletesKey().toString());
+            cached[l] = this._cachedCounts(cacheKeys[l], atomic, countKey);
+
+            if (skippable && cached[l] != null
+                    && startIndex > (i + cached[l].matchCount())) {
+                fromCache += cached[l].matchCount();
+                i += cached[l].matchCount();
+                j += cached[l].matchDocCount();
+                tasks.add(null);
+                continue;
+            };
+            skippable = false;
+
+            // In case the counts are known, only the hits are of interest
+            final boolean countsKnown = cached[l] != null;
+
+            tasks.add(executor.submit(() -> {
+                final List<LeafHit> leafHits = new ArrayList<>();
+                long mc = 0, dc = 0;
+
+                // Spans poll the deadline of the current thread
+                Deadline.set(taskDeadline);
+                try {
+                    final FixedBitSet bitset = collection.bits(atomic);
+
+                    if (bitset.nextSetBit(0) == DocIdSetIterator.NO_MORE_DOCS)
+                        return new LeafResult(leafHits, 0, 0, false);
+
+                    final Spans spans = query.getSpans(atomic, (Bits) bitset,
+                            termContexts);
+
+                    int itemsPerResourceCounter = 0;
+                    int oldLocalDocID = -1;
+                    int localDocID;
+
+                    while (spans.next()) {
+
+                        // Timeout!
+                        if (taskDeadline.isExpired())
+                            return new LeafResult(leafHits, mc, dc, true);
+
+                        // Increment resource counter
+                        itemsPerResourceCounter++;
+
+                        localDocID = spans.doc();
+
+                        // IDS are identical
+                        if (localDocID == oldLocalDocID || oldLocalDocID == -1) {
+
+                            // End of resourcecounter is reached
+                            if (itemsPerResource > 0
+                                    && itemsPerResourceCounter > itemsPerResource) {
+
+                                // Skip to next resource
+                                if (!spans.skipTo(localDocID + 1))
+                                    break;
+
+                                itemsPerResourceCounter = 1;
+                                localDocID = spans.doc();
+                            };
+                        }
+
+                        // localDoc is new
+                        else
+                            itemsPerResourceCounter = 1;
+
+                        if (itemsPerResourceCounter == 1)
+                            dc++;
+
+                        oldLocalDocID = localDocID;
+
+                        // Remember hits that may be part of the page
+                        if (mc < hits) {
+                            leafHits.add(new LeafHit(localDocID, spans.start(),
+                                    spans.end(),
+                                    (snippets && spans.isPayloadAvailable())
+                                    ? new ArrayList<byte[]>(spans.getPayload())
+                                    : null));
+                        }
+                        else if (countsKnown) {
+                            break;
+                        };
+
+                        mc++;
+                    };
+
+                    return new LeafResult(leafHits, mc, dc, false);
+                }
+                // Aborted while enumerating spans
+                catch (TimeExceededException e) {
+                    return new LeafResult(leafHits, mc, dc, true);
+                }
+                finally {
+                    Deadline.clear();
+                }
+            }));
+        };
+
+        // Merge leaf results in docBase order
+        try {
+            for (int l = 0; l < size; l++) {
+                final Future<LeafResult> task = tasks.get(l);
+                if (task == null)
+                    continue;
+
+                final LeafResult lr = task.get();
+                final LeafReaderContext atomic = leaves.get(l);
+
+                // Remember all hits of the leaf that are part of the page
+                final List<LeafHit> pageHits = new ArrayList<LeafHit>();
+                long k = i;
+                for (LeafHit hit : lr.hits()) {
+                    if (k >= startIndex && k < hits)
+                        pageHits.add(hit);
+                    k++;
+                };
+                pages.add(new LeafPage(atomic, pageHits));
+
+                // Stop after a timeout, as the following
+                // matches are not positioned correctly
+                if (lr.timeExceeded()) {
+                    i += lr.matchCount();
+                    j += lr.matchDocCount();
+                    kr.setTimeExceeded(true);
+                    break;
+                };
+
+                if (cached[l] != null) {
+                    i += cached[l].matchCount();
+                    j += cached[l].matchDocCount();
+                    continue;
+                };
+
+                this._cacheCounts(cacheKeys[l], leaves.get(l), countKey,
+                        new SearchCacheValue(lr.matchCount(),
+                                lr.matchDocCount()));
+                i += lr.matchCount();
+                j += lr.matchDocCount();
+            };
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Search was interrupted", e);
+        }
+        catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof QueryException)
+                throw (QueryException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+        finally {
+            // Do not keep searching in case of failures
+            taskDeadline.cancel();
+            for (Future<LeafResult> task : tasks) {
+                if (task != null)
+                    task.cancel(false);
+            };
+        };
+
+        kr.setTotalResults(i);
+        kr.setTotalResources(j);
+
+        return fromCache;
+    };
+
     public MetaFields getFields (String textSigle) {
 
         List hs = new ArrayList<String>();
@@ -1930,7 +2883,8 @@ public final class KrillIndex implements IndexInfo {
                 if (localDocID == DocIdSetIterator.NO_MORE_DOCS)
                     continue;
 
-                Document doc = atomic.reader().document(localDocID);
+                Document doc = PrimaryData.document(atomic.reader(),
+                        localDocID);
                 if (fields == null)
                     metaFields.populateFields(doc);
                 else
@@ -1993,18 +2947,9 @@ public final class KrillIndex implements IndexInfo {
         // Get span query
         SpanQuery query = ks.getSpanQuery();
 
-        // Get the field of textual data and annotations
-        String field = query.getField();
-
-        // TODO: Get document information from Cache!
         // See: http://www.ibm.com/developerworks/java/library/j-benchmark1/index.html
         long t1 = System.nanoTime();
 
-        // Only load UIDs
-        HashSet<String> fields = new HashSet<>(1);
-        fields.add("UID");
-
-        // List<Match> atomicMatches = new ArrayList<Match>(10);
         try {
 
             // Rewrite query (for regex and wildcard queries)
@@ -2014,68 +2959,65 @@ public final class KrillIndex implements IndexInfo {
                 query = (SpanQuery) rewrittenQuery;
             };
 
-            int matchcount = 0;
-            String uniqueDocIDString;;
-            int uniqueDocID = -1;
-
-            // start thread:
-            for (LeafReaderContext atomic : this.reader().leaves()) {
-
-                int previousDocID = -1;
-                int oldLocalDocID = -1;
-
-                // Use LongBitSet;
-                Bits bitset = collection.bits(atomic);
-
-                // PositionsToOffset pto = new PositionsToOffset(atomic, field);
-
-                Spans spans = query.getSpans(atomic, (Bits) bitset,
-                        termContexts);
-
-                IndexReader lreader = atomic.reader();
-
-                while (spans.next()) {
-                    int localDocID = spans.doc();
-
-                    // New match
-                    // MatchIdentifier possibly needs more
-                    /*
-                      Match match = new Match();
-                      match.setStartPos(spans.start());
-                      match.setEndPos(spans.end());
-                      
-                      // Add payload information to match
-                      if (spans.isPayloadAvailable())
-                      match.addPayload(spans.getPayload());
-                    */
-
-                    if (previousDocID != localDocID) {
-                        if (matchcount > 0) {
-                            mc.add(uniqueDocID, matchcount);
-                            matchcount = 0;
+            final List<LeafReaderContext> leaves = this.reader().leaves();
+            final ExecutorService executor = leaves.size() > 1
+                ? this.getSearchExecutor()
+                : null;
+
+            // Collect leaves in parallel
+            if (executor != null) {
+                final SpanQuery finalQuery = query;
+                final Map<Term, TermContext> termContexts = this.termContexts;
+                final List<Future<?>> tasks = new ArrayList<>(leaves.size());
+
+                // Tasks are stopped cooperatively, as interrupts
+                // may close the channels of the index directory
+                final Deadline stop = new Deadline(Long.MAX_VALUE);
+
+                for (LeafReaderContext atomic : leaves) {
+                    tasks.add(executor.submit(() -> {
+                        Deadline.set(stop);
+                        try {
+                            this._collectLeaf(atomic, finalQuery, collection,
+                                    termContexts, mc);
+                        }
+                        finally {
+                            Deadline.clear();
                         };
-
-                        // Read document id from index
-                        uniqueDocIDString = lreader.document(localDocID, fields)
-                                .get("UID");
-
-                        if (uniqueDocIDString != null)
-                            uniqueDocID = Integer.parseInt(uniqueDocIDString);
-
-                        previousDocID = localDocID;
-                    }
-                    else {
-                        matchcount++;
-                    };
+                        return null;
+                    }));
                 };
 
-                // Add count to collector
-                if (matchcount > 0) {
-                    mc.add(uniqueDocID, matchcount);
-                    matchcount = 0;
+                try {
+                    for (Future<?> task : tasks)
+                        task.get();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Collecting was interrupted", e);
+                }
+                catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof IOException)
+                        throw (IOException) cause;
+                    if (cause instanceof QueryException)
+                        throw (QueryException) cause;
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    throw new IOException(cause);
+                }
+                finally {
+                    stop.cancel();
+                    for (Future<?> task : tasks)
+                        task.cancel(false);
+                };
+            }
+            else {
+                for (LeafReaderContext atomic : leaves) {
+                    this._collectLeaf(atomic, query, collection,
+                            this.termContexts, mc);
                 };
             };
-            // end thread
 
             // Benchmark the collector
             mc.setBenchmark(t1, System.nanoTime());
@@ -2092,12 +3034,127 @@ public final class KrillIndex implements IndexInfo {
         mc.close();
         return mc;
     };
+
+
+    /*
+     * Collect the number of matches per document of a single leaf.
+     * UIDs are read from DocValues if available - otherwise
+     * (e.g. for documents indexed before UIDs were stored as DocValues)
+     * from the stored fields.
+     * The results are passed in batches to the collector.
+     */
+    private void _collectLeaf (LeafReaderContext atomic, SpanQuery query,
+            KrillCollection collection, Map<Term, TermContext> termContexts,
+            MatchCollector mc) throws IOException, QueryException {
+
+        final LeafReader lreader = atomic.reader();
+        final NumericDocValues uids = lreader.getNumericDocValues("UID");
+
+        // Documents without UID DocValues, e.g. in segments merged
+        // from documents indexed before UIDs were stored as DocValues
+        final Bits hasUID = (uids != null)
+                ? lreader.getDocsWithField("UID")
+                : null;
+
+        // Only load UIDs
+        final HashSet<String> fields = new HashSet<>(1);
+        fields.add("UID");
+
+        // Use LongBitSet;
+        Bits bitset = collection.bits(atomic);
+
+        Spans spans = query.getSpans(atomic, bitset, termContexts);
+
+        final List<int[]> batch = new ArrayList<>(MatchCollector.BATCH_SIZE);
+        int previousDocID = -1;
+        int uniqueDocID = 0;
+        int matchcount = 0;
+
+        // Stop in case collecting failed in another leaf
+        final Deadline deadline = Deadline.current();
+
+        while (!deadline.poll() && spans.next()) {
+            int localDocID = spans.doc();
+
+            if (previousDocID != localDocID) {
+                if (matchcount > 0) {
+                    batch.add(new int[] { uniqueDocID, matchcount });
+                    if (batch.size() >= MatchCollector.BATCH_SIZE) {
+                        mc.add(batch);
+                        batch.clear();
+                    };
+                };
+
+                // Read document id from index
+                if (hasUID != null && hasUID.get(localDocID)) {
+                    uniqueDocID = (int) uids.get(localDocID);
+                }
+
+                // Fall back to stored fields
+                else {
+                    String uniqueDocIDString = lreader
+                            .document(localDocID, fields).get("UID");
+                    uniqueDocID = (uniqueDocIDString != null)
+                            ? Integer.parseInt(uniqueDocIDString)
+                            : 0;
+                };
+
+                previousDocID = localDocID;
+                matchcount = 0;
+            };
+
+            matchcount++;
+        };
+
+        // Add count to collector
+        if (matchcount > 0)
+            batch.add(new int[] { uniqueDocID, matchcount });
+
+        if (!batch.isEmpty())
+            mc.add(batch);
+    };
+
     
     public boolean isReaderOpen () {
         return readerOpen;
     }
 
 
+    /**
+     * Get the bit vector of a collection for a leaf from
+     * the collection cache or create it, in case it is not cached.
+     * The returned bit vector is shared between requests
+     * and must not be modified.
+     * 
+     * @param collection
+     *            The normalized string representation of
+     *            the collection.
+     * @param atomic
+     *            The {@link LeafReaderContext}.
+     * @param create
+     *            Function creating the bit vector.
+     * @return The bit vector of the collection.
+     */
+    FixedBitSet collectionBits (String collection, LeafReaderContext atomic,
+            Function<CollectionCacheKey, FixedBitSet> create) {
+        final LeafReader reader = atomic.reader();
+        final Object coreKey = reader.getCoreCacheKey();
+
+        // Invalidate all entries of the segment core when it is closed
+        if (collectionCacheCores.add(coreKey)) {
+            reader.addCoreClosedListener(key -> {
+                collectionCache.asMap().keySet()
+                    .removeIf(ck -> ck.coreKey() == key);
+                collectionCacheCores.remove(key);
+            });
+        };
+
+        return collectionCache.get(
+            new CollectionCacheKey(collection, coreKey, reader.numDeletedDocs()),
+            create);
+    };
+
+
     @Override
     public Set<String> getAllLeafFingerprints () {
         List<LeafReaderContext> leaves = this.reader().leaves();
@@ -2164,7 +3221,7 @@ public final class KrillIndex implements IndexInfo {
                         if (live != null && !live.get(i))
                             continue;
                         
-                        Document doc = lreader.document(i);
+                        Document doc = PrimaryData.document(lreader, i);
                         fieldValue = doc.get(field);
                         if (fieldValue != null && fieldValue != "")
                             fieldValues.add(fieldValue);
@@ -35,6 +35,10 @@ public final class KrillMeta extends Notifications {
     HashSet<Integer> highlights;
 
     private JsonNode rewrites;
+
+    // Cursor to continue a search or an empty string
+    // to request a cursor for the following page
+    private String cursor;
     
     // Timeout search after milliseconds
     private long timeout = (long) 120_000;
@@ -164,6 +168,15 @@ public final class KrillMeta extends Notifications {
 
         if (json.has("rewrites"))
             this.rewrites = json.get("rewrites");
+
+        // Defined cursor
+        if (json.has("cursor")) {
+            JsonNode cursor = json.get("cursor");
+            if (cursor.isBoolean())
+                this.cursor = cursor.asBoolean() ? "" : null;
+            else
+                this.cursor = cursor.asText();
+        };
         
         // Defined highlights
         if (json.has("highlight")) {
@@ -286,6 +299,28 @@ public final class KrillMeta extends Notifications {
     };
 
 
+    /**
+     * Get the cursor to continue a search.
+     * An empty string requests a cursor without
+     * continuing a former search.
+     */
+    public String getCursor () {
+        return this.cursor;
+    };
+
+
+    /**
+     * Set the cursor to continue a search.
+     * Set an empty string to request a cursor for
+     * the following page without continuing a former search
+     * and <tt>null</tt> to not request a cursor.
+     */
+    public KrillMeta setCursor (String cursor) {
+        this.cursor = cursor;
+        return this;
+    };
+
+
     /**
      * Get if snippets should be retrieved.
      */
@@ -0,0 +1,480 @@
+package de.ids_mannheim.korap.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.util.StringHelper;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.ids_mannheim.korap.util.KrillProperties;
+
+/**
+ * Cache for the number of matches and documents of a query
+ * per index leaf.
+ *
+ * <p>
+ * In contrast to the search cache, leaves are identified by
+ * a fingerprint that is stable across restarts, based on the
+ * unique segment ID and the generation of deletions.
+ * In case a directory is given, counts are additionally
+ * persisted in one file per leaf, named after the leaf
+ * fingerprint. On the first request for a leaf, the keys
+ * of the file are indexed, so counts evicted from memory
+ * are read again from disk:
+ *
+ * <pre>
+ * int   magic number
+ * short format version
+ * utf   Krill version
+ * utf   leaf fingerprint
+ * </pre>
+ *
+ * followed by appended entries:
+ *
+ * <pre>
+ * int   length of the entry
+ * utf   key
+ * long  number of matches
+ * long  number of documents
+ * long  CRC32 checksum of the entry
+ * </pre>
+ *
+ * Files with a different format or Krill version or a wrong
+ * fingerprint are deleted, as matching may have changed.
+ * Truncated entries or entries with a wrong checksum
+ * end the reading of a file. Files with these or with
+ * repeated keys are rewritten when they are read.
+ * Files of leaves that are not part of the index anymore are
+ * deleted on {@link #refresh(IndexReader)}, so a directory
+ * must not be shared by multiple indices.
+ *
+ * @author diewald
+ */
+public class LeafCountCache {
+
+    private final static Logger log = LoggerFactory
+            .getLogger(LeafCountCache.class);
+
+    // This advices the java compiler to ignore all loggings
+    public static final boolean DEBUG = false;
+
+    // Format of cache files
+    private static final int MAGIC = 0x4B4C4343; // "KLCC"
+    private static final short VERSION = 2;
+    private static final String KRILL_VERSION = krillVersion();
+    private static final Pattern FILE_NAME = Pattern
+            .compile("[0-9a-z]+-(-1|[0-9a-z]+)");
+
+    /**
+     * Number of matches and documents of a query in a leaf.
+     */
+    public record Counts(long matchCount, long matchDocCount) {};
+
+    private final Cache<String, Counts> cache;
+    private final File dir;
+
+    // Offsets of the persisted entries per leaf and key
+    private final Map<String, Map<String, Long>> persisted = new ConcurrentHashMap<>();
+
+
+    /**
+     * Construct a new count cache.
+     *
+     * @param dir
+     *            The directory to persist counts in or
+     *            <tt>null</tt> to keep counts in memory only.
+     * @param size
+     *            The maximum number of entries kept in memory.
+     */
+    public LeafCountCache (File dir, long size) {
+        this.dir = dir;
+        if (dir != null)
+            dir.mkdirs();
+        this.cache = Caffeine.newBuilder().maximumSize(size).build();
+    };
+
+
+    /**
+     * Get the fingerprint of a leaf, that is stable
+     * as long as the documents of the leaf don't change.
+     *
+     * @param reader
+     *            The {@link LeafReader}.
+     * @return The fingerprint or <tt>null</tt>, in case the
+     *         leaf can't be identified across restarts.
+     */
+    public static String leafFingerprint (LeafReader reader) {
+        if (!(reader instanceof SegmentReader))
+            return null;
+
+        final SegmentCommitInfo info = ((SegmentReader) reader)
+                .getSegmentInfo();
+        final byte[] id = info.info.getId();
+        if (id == null)
+            return null;
+
+        return StringHelper.idToString(id) + "-"
+                + Long.toString(info.getDelGen(), Character.MAX_RADIX);
+    };
+
+
+    /**
+     * Get the counts of a query in a leaf.
+     *
+     * @param leafFingerprint
+     *            The fingerprint of the leaf.
+     * @param key
+     *            The key of the query.
+     * @return The {@link Counts} or <tt>null</tt>,
+     *         in case the counts are not cached.
+     */
+    public Counts get (String leafFingerprint, String key) {
+        Counts counts = this.cache.getIfPresent(leafFingerprint + '\t' + key);
+        if (counts != null || this.dir == null)
+            return counts;
+
+        // Read counts evicted from memory
+        final Long offset = this.index(leafFingerprint).get(key);
+        if (offset == null)
+            return null;
+
+        counts = this.read(leafFingerprint, key, offset);
+        if (counts != null)
+            this.cache.put(leafFingerprint + '\t' + key, counts);
+        return counts;
+    };
+
+
+    /**
+     * Cache the counts of a query in a leaf.
+     *
+     * @param leafFingerprint
+     *            The fingerprint of the leaf.
+     * @param key
+     *            The key of the query.
+     * @param counts
+     *            The {@link Counts}.
+     * @param persist
+     *            <tt>true</tt> in case the counts should
+     *            be persisted on disk.
+     */
+    public void put (String leafFingerprint, String key, Counts counts,
+                     boolean persist) {
+        this.cache.put(leafFingerprint + '\t' + key, counts);
+
+        if (!persist || this.dir == null)
+            return;
+
+        final Map<String, Long> index = this.index(leafFingerprint);
+        synchronized (this) {
+
+            // Counts are already persisted
+            final Long offset = index.get(key);
+            if (offset != null
+                    && counts.equals(this.read(leafFingerprint, key, offset)))
+                return;
+
+            final long entry = this.append(leafFingerprint, key, counts);
+            if (entry >= 0)
+                index.put(key, entry);
+        };
+    };
+
+
+    /**
+     * Remove the counts of all leaves that are not part of
+     * the index anymore, e.g. after merges or deletions.
+     * Persisted counts of these leaves are deleted.
+     *
+     * @param reader
+     *            The reopened index reader.
+     */
+    public void refresh (IndexReader reader) {
+        final Set<String> live = new HashSet<>();
+        for (LeafReaderContext context : reader.leaves()) {
+            final String leafFingerprint = leafFingerprint(context.reader());
+
+            // Leaves can't be identified
+            if (leafFingerprint == null)
+                return;
+            live.add(leafFingerprint);
+        };
+
+        this.cache.asMap().keySet().removeIf(
+                k -> !live.contains(k.substring(0, k.indexOf('\t'))));
+        this.persisted.keySet().retainAll(live);
+
+        if (this.dir == null)
+            return;
+
+        int deleted = 0;
+        synchronized (this) {
+            final File[] files = this.dir.listFiles(
+                    (d, name) -> FILE_NAME.matcher(name).matches()
+                            && !live.contains(name));
+            if (files == null)
+                return;
+
+            for (File f : files) {
+                if (f.delete())
+                    deleted++;
+                else
+                    log.warn("Unable to delete count cache file {}", f);
+            };
+        };
+
+        if (DEBUG)
+            log.trace("Deleted counts of {} stale leaves", deleted);
+    };
+
+
+    /**
+     * Remove all counts from memory.
+     * Persisted counts are read again on request.
+     */
+    public void clear () {
+        this.cache.invalidateAll();
+        this.persisted.clear();
+    };
+
+
+    /**
+     * Get the directory counts are persisted in.
+     *
+     * @return The directory or <tt>null</tt>.
+     */
+    public File getDirectory () {
+        return this.dir;
+    };
+
+
+    // Get the offsets of the persisted entries of a leaf
+    private Map<String, Long> index (String leafFingerprint) {
+        Map<String, Long> index = this.persisted.get(leafFingerprint);
+        if (index != null)
+            return index;
+
+        synchronized (this) {
+            index = this.persisted.get(leafFingerprint);
+            if (index == null) {
+                index = this.load(leafFingerprint);
+                this.persisted.put(leafFingerprint, index);
+            };
+        };
+        return index;
+    };
+
+
+    // Index the persisted counts of a leaf and rewrite the file,
+    // in case it is truncated or contains repeated keys
+    private Map<String, Long> load (String leafFingerprint) {
+        final Map<String, Long> index = new ConcurrentHashMap<>();
+        final File f = new File(this.dir, leafFingerprint);
+        if (!f.exists())
+            return index;
+
+        final Map<String, Counts> entries = new LinkedHashMap<>();
+        boolean outdated = false, clean = false;
+        int read = 0;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(f)))) {
+            outdated = in.readInt() != MAGIC || in.readShort() != VERSION
+                    || !in.readUTF().equals(KRILL_VERSION)
+                    || !in.readUTF().equals(leafFingerprint);
+
+            long offset = 4 + 2 + utfLength(KRILL_VERSION)
+                    + utfLength(leafFingerprint);
+            final CRC32 crc = new CRC32();
+            while (!outdated) {
+                final int length;
+                try {
+                    length = in.readInt();
+                }
+                catch (EOFException e) {
+                    clean = true;
+                    break;
+                };
+
+                final byte[] entry = new byte[length];
+                in.readFully(entry);
+                final long checksum = in.readLong();
+                crc.reset();
+                crc.update(entry);
+                if (crc.getValue() != checksum) {
+                    log.warn("Count cache file {} is corrupt", f);
+                    break;
+                };
+
+                final DataInputStream ein = new DataInputStream(
+                        new ByteArrayInputStream(entry));
+                final String key = ein.readUTF();
+                entries.put(key, new Counts(ein.readLong(), ein.readLong()));
+                index.put(key, offset);
+                offset += 4 + length + 8;
+                read++;
+            }
+        }
+        catch (EOFException e) {
+            // Truncated entry
+        }
+        catch (IOException | NegativeArraySizeException e) {
+            log.warn("Unable to read count cache file {}: {}", f,
+                    e.getMessage());
+        };
+
+        if (outdated) {
+            log.warn("Deleting outdated count cache file {}", f);
+            if (!f.delete())
+                log.warn("Unable to delete count cache file {}", f);
+        }
+        else if (!clean || read > entries.size())
+            this.rewrite(leafFingerprint, entries, index);
+
+        if (DEBUG)
+            log.trace("Indexed {} counts of leaf {}", entries.size(),
+                    leafFingerprint);
+
+        return index;
+    };
+
+
+    // Read persisted counts of a leaf at an offset
+    private Counts read (String leafFingerprint, String key, long offset) {
+        final File f = new File(this.dir, leafFingerprint);
+        try (RandomAccessFile in = new RandomAccessFile(f, "r")) {
+            in.seek(offset);
+            final byte[] entry = new byte[in.readInt()];
+            in.readFully(entry);
+            final CRC32 crc = new CRC32();
+            crc.update(entry);
+            if (crc.getValue() != in.readLong())
+                return null;
+
+            final DataInputStream ein = new DataInputStream(
+                    new ByteArrayInputStream(entry));
+            if (!ein.readUTF().equals(key))
+                return null;
+            return new Counts(ein.readLong(), ein.readLong());
+        }
+        catch (IOException | NegativeArraySizeException e) {
+            log.warn("Unable to read count cache file {}: {}", f,
+                    e.getMessage());
+        };
+        return null;
+    };
+
+
+    // Replace the file of a leaf with the given counts
+    private synchronized void rewrite (String leafFingerprint,
+            Map<String, Counts> entries, Map<String, Long> index) {
+        final File f = new File(this.dir, leafFingerprint);
+        index.clear();
+        if (!f.delete()) {
+            log.warn("Unable to delete count cache file {}", f);
+            return;
+        };
+
+        for (Map.Entry<String, Counts> e : entries.entrySet()) {
+            final long offset = this.append(leafFingerprint, e.getKey(),
+                    e.getValue());
+            if (offset < 0)
+                return;
+            index.put(e.getKey(), offset);
+        };
+    };
+
+
+    // Append counts to the file of a leaf.
+    // Returns the offset of the entry or -1,
+    // in case the counts can't be written
+    private synchronized long append (String leafFingerprint, String key,
+                                      Counts counts) {
+        final File f = new File(this.dir, leafFingerprint);
+        final boolean exists = f.exists();
+        long offset = exists ? f.length() : 0;
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(f, true)))) {
+            if (!exists) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeUTF(KRILL_VERSION);
+                out.writeUTF(leafFingerprint);
+                offset += out.size();
+            };
+
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            final DataOutputStream eout = new DataOutputStream(bytes);
+            eout.writeUTF(key);
+            eout.writeLong(counts.matchCount());
+            eout.writeLong(counts.matchDocCount());
+            eout.flush();
+
+            final byte[] entry = bytes.toByteArray();
+            final CRC32 crc = new CRC32();
+            crc.update(entry);
+            out.writeInt(entry.length);
+            out.write(entry);
+            out.writeLong(crc.getValue());
+        }
+        catch (IOException e) {
+            log.warn("Unable to write count cache file {}: {}", f,
+                    e.getMessage());
+            return -1;
+        };
+        return offset;
+    };
+
+
+    // Get the number of bytes of a string written by writeUTF()
+    private static int utfLength (String str) {
+        int length = 2;
+        for (int i = 0; i < str.length(); i++) {
+            final char c = str.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F)
+                length++;
+            else if (c > 0x07FF)
+                length += 3;
+            else
+                length += 2;
+        };
+        return length;
+    };
+
+
+    // Get the version of Krill, as counts may change with it
+    private static String krillVersion () {
+        final Properties info = KrillProperties.loadInfo();
+        if (info == null)
+            return "";
+        return info.getProperty("krill.version", "");
+    };
+};
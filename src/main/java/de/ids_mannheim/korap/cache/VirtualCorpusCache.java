@@ -1,21 +1,45 @@
 package de.ids_mannheim.korap.cache;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,9 +50,36 @@ import de.ids_mannheim.korap.collection.DocBits;
 import de.ids_mannheim.korap.collection.VirtualCorpusFilter;
 import de.ids_mannheim.korap.collection.VirtualCorpusFilter.DocBitsSupplier;
 import de.ids_mannheim.korap.util.Fingerprinter;
+import de.ids_mannheim.korap.util.KrillProperties;
 import de.ids_mannheim.korap.util.QueryException;
 
 /**
+ * 
+ * Cache for named virtual corpora, keeping the documents of
+ * every index leaf as {@link DocBits} in memory and on disk.
+ * 
+ * <p>
+ * On disk, every leaf is stored in a single file named after
+ * the leaf fingerprint, consisting of a header followed by the
+ * compact {@link DocBits} serialization:
+ * 
+ * <pre>
+ * int   magic number
+ * short format version
+ * byte  representation type
+ * byte  (unused)
+ * int   number of bits
+ * int   cardinality
+ * long  length of the serialization
+ * long  CRC32 checksum of the serialization
+ * short length of the leaf fingerprint
+ * byte* leaf fingerprint (UTF-8), padded to 8 bytes
+ * </pre>
+ * 
+ * Files are memory mapped on retrieval, so the cached
+ * {@link DocBits} are not copied to the heap.
+ * Files with a different version, a wrong fingerprint or
+ * a wrong checksum are treated as not being cached.
  * 
  * @author margaretha
  *
@@ -38,25 +89,41 @@ public class VirtualCorpusCache {
     public final static Logger log = LoggerFactory
             .getLogger(VirtualCorpusCache.class);
     
+    private final static ObjectMapper mapper = new ObjectMapper();
+
     public static Pattern vcNamePattern = Pattern.compile("[a-zA-Z0-9]+[a-zA-Z_0-9-.]*");
 
     public static String CACHE_LOCATION = "vc-cache";
+
+    // Format of cache files
+    private static final int MAGIC = 0x4B564343; // "KVCC"
+    private static final short VERSION = 1;
+    private static final String TEMP_SUFFIX = ".tmp";
     
-    public static int CAPACITY = 5;
-    public static final Map<String, Map<String, DocBits>> map = Collections
-            .synchronizedMap(new LinkedHashMap<String, Map<String, DocBits>>(
-                    CAPACITY, (float) 0.75, true) {
+    // Maximum heap size of cached DocBits in bytes
+    public static long MAX_WEIGHT;
+
+    private static final Cache<String, Map<String, DocBits>> cache;
+    public static final ConcurrentMap<String, Map<String, DocBits>> map;
+
+    static {
+        KrillProperties.loadDefaultProperties();
+        MAX_WEIGHT = KrillProperties.namedVCCacheSize;
+        cache = Caffeine.newBuilder()
+                .maximumWeight(MAX_WEIGHT)
+                .weigher(VirtualCorpusCache::weigh)
+                .recordStats()
+                .build();
+        map = cache.asMap();
+    }
 
-                private static final long serialVersionUID = 1815514581428132435L;
+    private static IndexInfo indexInfo;
 
-                @SuppressWarnings("rawtypes")
-                @Override
-                protected boolean removeEldestEntry (Map.Entry eldest) {
-                    return size() > CAPACITY;
-                }
-            });
+    private static ExecutorService refresher;
 
-    private static IndexInfo indexInfo;
+    // Background calculations of DocBits, that may still be running
+    private static final ConcurrentLinkedQueue<Future<?>> refreshing =
+            new ConcurrentLinkedQueue<>();
 
     public static final Set<String> vcToCleanUp = Collections
             .synchronizedSet(new HashSet<>());
@@ -113,15 +180,8 @@ public class VirtualCorpusCache {
         }
 
         String filepath = dir + "/" + leafFingerprint;
-        File f = new File(filepath);
-        if (f.exists()) {
-            f.delete();
-        }
         try {
-            ObjectOutputStream os = new ObjectOutputStream(
-                    new FileOutputStream(f));
-            os.writeObject(docBits);
-            os.close();
+            writeFile(new File(filepath), leafFingerprint, docBits);
         }
         catch (IOException e) {
             e.printStackTrace();
@@ -130,6 +190,96 @@ public class VirtualCorpusCache {
     }
 
 
+    // Write DocBits to a cache file, replacing an existing file atomically
+    private static void writeFile (File f, String leafFingerprint,
+            DocBits docBits) throws IOException {
+        final byte[] fp = leafFingerprint.getBytes(StandardCharsets.UTF_8);
+        final int headerSize = headerSize(fp.length);
+        final Path temp = new File(f.getPath() + TEMP_SUFFIX).toPath();
+        final CRC32 crc = new CRC32();
+
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            // Write the serialization after the header
+            channel.position(headerSize);
+            DataOutputStream os = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel),
+                            crc)));
+            long length = docBits.write(os);
+            os.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(headerSize);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.put(docBits.getType());
+            header.put((byte) 0);
+            header.putInt(docBits.length());
+            header.putInt(docBits.cardinality());
+            header.putLong(length);
+            header.putLong(crc.getValue());
+            header.putShort((short) fp.length);
+            header.put(fp);
+            header.rewind();
+            while (header.hasRemaining())
+                channel.write(header, header.position());
+        }
+
+        Files.move(temp, f.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    // Memory map DocBits from a cache file
+    static DocBits mapFile (File f) throws IOException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION)
+                throw new IOException("Unknown cache format");
+
+            final byte type = buffer.get();
+            buffer.get();
+            final int numbits = buffer.getInt();
+            final int cardinality = buffer.getInt();
+            final long length = buffer.getLong();
+            final long checksum = buffer.getLong();
+            final byte[] fp = new byte[buffer.getShort()];
+            buffer.get(fp);
+
+            if (!f.getName()
+                    .equals(new String(fp, StandardCharsets.UTF_8)))
+                throw new IOException("Leaf fingerprint mismatch");
+
+            buffer.position(headerSize(fp.length));
+            if (buffer.remaining() != length)
+                throw new IOException("Cache file is truncated");
+
+            final CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if (crc.getValue() != checksum)
+                throw new IOException("Checksum mismatch");
+
+            return DocBits.wrap(buffer, type, numbits, cardinality);
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("Cache file is truncated", e);
+        }
+    }
+
+
+    // Header size, padded to 8 bytes
+    private static int headerSize (int fingerprintLength) {
+        return (34 + fingerprintLength + 7) & ~7;
+    }
+
+
     public static void store (String vcId, Map<String, DocBits> vcData){
         map.put(vcId, vcData);
         vcData.keySet().forEach(leafFingerprint -> {
@@ -170,30 +320,83 @@ public class VirtualCorpusCache {
      * @return a map of index leaves and DocBits, otherwise null if not found.
      */
     public static Map<String, DocBits> retrieve (String vcId) {
-        Map<String, DocBits> vcData = map.get(vcId);
-        if (vcData != null) {
-            return vcData;
-        }
+        // Concurrent requests for the same VC wait for a single load
+        return cache.get(vcId, VirtualCorpusCache::load);
+    }
+
+
+    // Load all leaves of a VC from disk
+    private static Map<String, DocBits> load (String vcId) {
         File dir = new File(CACHE_LOCATION + "/" + vcId);
-        if (dir.exists()) {
-            vcData = new HashMap<String, DocBits>();
-            for (File f : dir.listFiles()) {
-                ObjectInputStream ois;
-                try {
-                    ois = new ObjectInputStream(new FileInputStream(f));
-                    DocBits d = (DocBits) ois.readObject();
-                    vcData.put(f.getName(), d);
-                    ois.close();
-                }
-                catch (IOException | ClassNotFoundException e) {
-                    return null;
-                }
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return null;
+        }
+        Map<String, DocBits> vcData = new ConcurrentHashMap<String, DocBits>();
+        for (File f : files) {
+            if (f.getName().endsWith(TEMP_SUFFIX))
+                continue;
+            try {
+                vcData.put(f.getName(), mapFile(f));
+            }
+            catch (IOException e) {
+                // Outdated or broken files are recalculated
+                log.warn("Ignoring cache file {}: {}", f, e.getMessage());
+                f.delete();
             }
-            vcData = Collections.synchronizedMap(vcData);
-            map.put(vcId, vcData);
         }
         return vcData;
+    }
+
+
+    // Estimate the heap size of a VC
+    private static int weigh (String vcId, Map<String, DocBits> vcData) {
+        long weight = 64L * (vcData.size() + 1);
+        for (DocBits docBits : vcData.values()) {
+            weight += docBits.ramBytesUsed();
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
 
+
+    /**
+     * Sets the maximum heap size of the cached DocBits in bytes.
+     * Exceeding VCs are evicted from memory, but stay on disk.
+     * 
+     * @param maxWeight
+     */
+    public static void setMaxWeight (long maxWeight) {
+        MAX_WEIGHT = maxWeight;
+        cache.policy().eviction()
+                .ifPresent(eviction -> eviction.setMaximum(maxWeight));
+    }
+
+
+    /**
+     * Returns statistics of the in-memory VC cache, i.e. the number
+     * of hits, misses, evictions, loads, and the time spent on loading
+     * in milliseconds, as well as the current size and weight.
+     * 
+     * @return statistics as a JSON object
+     */
+    public static ObjectNode getStatistics () {
+        cache.cleanUp();
+        CacheStats stats = cache.stats();
+        ObjectNode json = mapper.createObjectNode();
+        json.put("entries", cache.estimatedSize());
+        json.put("weight", cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0))
+                .orElse(0L));
+        json.put("maxWeight", MAX_WEIGHT);
+        json.put("hits", stats.hitCount());
+        json.put("misses", stats.missCount());
+        json.put("hitRate", stats.hitRate());
+        json.put("evictions", stats.evictionCount());
+        json.put("evictionWeight", stats.evictionWeight());
+        json.put("loads", stats.loadCount());
+        json.put("loadFailures", stats.loadFailureCount());
+        json.put("loadTime", stats.totalLoadTime() / 1_000_000);
+        return json;
     }
 
 
@@ -300,15 +503,163 @@ public class VirtualCorpusCache {
         Map<String, DocBits> vcData;
         for (String vcId : vcToCleanUp) {
             vcData = retrieve(vcId);
-            vcData.keySet()
-                    .removeIf(storedFingerPrint -> currentLeafFingerprints
-                            .contains(storedFingerPrint) == false);
-            store(vcId, vcData);
+            if (vcData != null) {
+                removeLeaves(vcId, vcData, currentLeafFingerprints);
+            }
         }
         vcToCleanUp.clear();
     }
 
 
+    // Remove leaves of a VC that are not part of the index anymore,
+    // both from memory and disk
+    private static void removeLeaves (String vcId, Map<String, DocBits> vcData,
+            Set<String> currentLeafFingerprints) {
+        boolean removed = vcData.keySet().removeIf(leafFingerprint -> {
+            if (currentLeafFingerprints.contains(leafFingerprint)) {
+                return false;
+            }
+            new File(CACHE_LOCATION + "/" + vcId + "/" + leafFingerprint)
+                    .delete();
+            return true;
+        });
+
+        // Update the weight of the VC
+        if (removed) {
+            map.replace(vcId, vcData, vcData);
+        }
+    }
+
+
+    /**
+     * Refreshes all VCs in the memory cache after the index reader
+     * has been reopened, e.g. after a commit or a merge.
+     * 
+     * DocBits of leaves that are not part of the index anymore are
+     * removed immediately. DocBits of new leaves are calculated
+     * in the background (see krill.namedVC.refresh.threads),
+     * so requests after an index update don't need to rebuild
+     * the VCs. Requests for leaves that are still being calculated
+     * wait for the calculation.
+     * 
+     * @param reader
+     *            the reopened index reader
+     */
+    public static void refresh (IndexReader reader) {
+        if (map.isEmpty()) {
+            return;
+        }
+
+        refreshing.removeIf(Future::isDone);
+
+        final Map<String, LeafReaderContext> leaves = new HashMap<>();
+        for (LeafReaderContext context : reader.leaves()) {
+            leaves.put(Fingerprinter.create(context.reader()
+                    .getCombinedCoreAndDeletesKey().toString()), context);
+        }
+
+        for (String vcId : map.keySet()) {
+            Map<String, DocBits> vcData = map.get(vcId);
+            if (vcData == null) {
+                continue;
+            }
+            removeLeaves(vcId, vcData, leaves.keySet());
+
+            if (KrillProperties.namedVCRefreshThreads <= 0) {
+                continue;
+            }
+
+            DocBitsSupplier docBitsSupplier = new VirtualCorpusFilter(vcId)
+                    .getDocBitsSupplier();
+            for (Map.Entry<String, LeafReaderContext> leaf : leaves
+                    .entrySet()) {
+                if (vcData.containsKey(leaf.getKey())) {
+                    continue;
+                }
+
+                // Keep the reader open until the DocBits are calculated
+                if (!reader.tryIncRef()) {
+                    return;
+                }
+                refreshing.add(refresher().submit(() -> {
+                    try {
+                        LeafReaderContext context = leaf.getValue();
+                        getDocBits(vcId, leaf.getKey(), () -> {
+                            try {
+                                return docBitsSupplier.supplyDocBits(context,
+                                        context.reader().getLiveDocs());
+                            }
+                            catch (IOException | QueryException e) {
+                                throw new RuntimeException(e);
+                            }
+                        });
+                    }
+                    catch (RuntimeException e) {
+                        log.warn("Unable to refresh VC {}: {}", vcId,
+                                e.getMessage());
+                    }
+                    finally {
+                        try {
+                            reader.decRef();
+                        }
+                        catch (IOException e) {
+                            log.warn(e.getLocalizedMessage());
+                        }
+                    }
+                }));
+            }
+        }
+    }
+
+
+    /**
+     * Wait for the background calculations of DocBits
+     * started by {@link #refresh(IndexReader)}.
+     * 
+     * @param timeout
+     *            the maximum time to wait
+     * @param unit
+     *            the unit of the timeout
+     * @return <code>true</code> if all calculations are done,
+     *         <code>false</code> if the timeout elapsed before
+     * @throws InterruptedException
+     */
+    static boolean awaitRefresh (long timeout, TimeUnit unit)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Future<?> task;
+        while ((task = refreshing.peek()) != null) {
+            try {
+                task.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+            catch (TimeoutException e) {
+                return false;
+            }
+            catch (ExecutionException e) {
+                // Failures are logged by the task
+            }
+            refreshing.remove(task);
+        }
+        return true;
+    }
+
+
+    // Executor for calculating DocBits of new leaves in the background
+    private static synchronized ExecutorService refresher () {
+        if (refresher == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            refresher = Executors.newFixedThreadPool(
+                    KrillProperties.namedVCRefreshThreads, runnable -> {
+                        Thread t = new Thread(runnable, "KrillVCRefresher-"
+                                + threadCount.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+        }
+        return refresher;
+    }
+
+
     /**
      * Gets DocBits for a single leaf from the VC cache or calculates
      * and stores it, if it doesn't exist in the cache. This can
@@ -322,7 +673,8 @@ public class VirtualCorpusCache {
      * <li>The index has been updated</li>
      * <p>
      * In this case, the VC may contain old leaf-fingerprints. It will
-     * be clean up when the index is used next time.
+     * be clean up when the index is used next time. Usually, new
+     * leaves have already been calculated by {@link #refresh(IndexReader)}.
      * </p>
      * </ul>
      * 
@@ -336,38 +688,46 @@ public class VirtualCorpusCache {
      */
     public static DocBits getDocBits (String vcId, String leafFingerprint,
             Supplier<DocBits> calculateDocBits) {
-        DocBits docBits = null;
-        Map<String, DocBits> leafToDocBitMap = retrieve(vcId);
         // if VC is not in the cache (both memory and disk), 
         // put it in the memory map
-        if (leafToDocBitMap == null) {
-            leafToDocBitMap = Collections
-                    .synchronizedMap(new HashMap<String, DocBits>());
-            map.put(vcId, leafToDocBitMap);
-        }
-        else {
-            docBits = leafToDocBitMap.get(leafFingerprint);
-            // VC-id is the cache but there is no data for the leaf
-            if (docBits == null && !isCleaning) {
-                vcToCleanUp.add(vcId);
-            }
+        Map<String, DocBits> leafToDocBitMap = cache.get(vcId, id -> {
+            Map<String, DocBits> vcData = load(id);
+            return vcData != null ? vcData
+                    : new ConcurrentHashMap<String, DocBits>();
+        });
+
+        DocBits docBits = leafToDocBitMap.get(leafFingerprint);
+        if (docBits != null) {
+            return docBits;
         }
-        if (docBits == null) {
-        	/* Calculating docBits and storing in the cache
-        	 * 
-        	 * This process is triggered when finding a JSON-LD file at 
-        	 * the named-vc folder that doesn't exist in the cache.
-        	 * 
-        	 * It should only happens at server start-up, or index update
-        	 * for a small number of new leaves.
-        	 * 
-        	 * New named VC should *not* be added at a running instance, as 
-        	 * it would trigger this process.
-        	 */   
-            docBits = calculateDocBits.get();
-            leafToDocBitMap.put(leafFingerprint, docBits);
-            storeOnDisk(vcId, leafFingerprint, docBits);
+
+        // VC-id is the cache but there is no data for the leaf
+        if (!leafToDocBitMap.isEmpty() && !isCleaning) {
+            vcToCleanUp.add(vcId);
         }
+
+        /* Calculating docBits and storing in the cache
+         * 
+         * This process is triggered when finding a JSON-LD file at 
+         * the named-vc folder that doesn't exist in the cache.
+         * 
+         * It should only happens at server start-up, or index update
+         * for a small number of new leaves.
+         * 
+         * New named VC should *not* be added at a running instance, as 
+         * it would trigger this process.
+         * 
+         * Concurrent requests for the same leaf wait for
+         * a single calculation.
+         */
+        docBits = leafToDocBitMap.computeIfAbsent(leafFingerprint, fp -> {
+            DocBits calculated = calculateDocBits.get();
+            storeOnDisk(vcId, fp, calculated);
+            return calculated;
+        });
+
+        // Update the weight of the VC
+        map.replace(vcId, leafToDocBitMap, leafToDocBitMap);
         return docBits;
     }
 }
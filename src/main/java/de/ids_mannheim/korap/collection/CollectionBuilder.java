@@ -189,6 +189,11 @@ public class CollectionBuilder {
 
 
         public CollectionBuilder.Interface not ();
+
+
+        // Named virtual corpora may be redefined without
+        // changing the collection
+        public boolean refersToNamedVC ();
     };
 
     public class Term implements CollectionBuilder.Interface {
@@ -237,6 +242,11 @@ public class CollectionBuilder {
         };
 
 
+        public boolean refersToNamedVC () {
+            return false;
+        };
+
+
         public CollectionBuilder.Interface not () {
             this.isNegative = true;
             return this;
@@ -295,6 +305,11 @@ public class CollectionBuilder {
         };
 
 
+        public boolean refersToNamedVC () {
+            return false;
+        };
+
+
         public CollectionBuilder.Interface not () {
             this.isNegative = true;
             return this;
@@ -329,6 +344,11 @@ public class CollectionBuilder {
         };
 
 
+        public boolean refersToNamedVC () {
+            return true;
+        };
+
+
         public CollectionBuilder.Interface not () {
             this.isNegative = true;
             return this;
@@ -421,6 +441,15 @@ public class CollectionBuilder {
         };
 
 
+        public boolean refersToNamedVC () {
+            for (CollectionBuilder.Interface cb : this.operands) {
+                if (cb.refersToNamedVC())
+                    return true;
+            };
+            return false;
+        };
+
+
         public CollectionBuilder.Interface not () {
             this.isNegative = true;
             return this;
@@ -459,6 +488,11 @@ public class CollectionBuilder {
         };
 
 
+        public boolean refersToNamedVC () {
+            return false;
+        };
+
+
         public CollectionBuilder.Interface not () {
             this.isNegative = true;
             return this;
@@ -496,6 +530,11 @@ public class CollectionBuilder {
         };
 
 
+        public boolean refersToNamedVC () {
+            return false;
+        };
+
+
         public CollectionBuilder.Interface not () {
             this.isNegative = true;
             return this;
@@ -1,40 +1,470 @@
 package de.ids_mannheim.korap.collection;
 
-import java.io.Serializable;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.BitDocIdSet;
 import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
 
-/** Serializable object for caching Lucene doc bit vector.
- * 
- * @author margaretha
+/**
+ * Compact representation of the documents of a virtual corpus
+ * in a single index leaf, used for caching.
+ *
+ * <p>
+ * Depending on the number of documents, the set is either stored
+ * as a sorted array of document IDs (sparse sets), as a bit vector
+ * (dense sets) or in roaring-style blocks of 65536 documents
+ * (mixed sets), where each block is either an array of
+ * 16-bit document offsets or a bit vector.
+ * The smallest representation is chosen on construction.
+ *
+ * <p>
+ * All representations are backed by buffers, so serialized
+ * DocBits can be wrapped without copying, e.g. from a memory
+ * mapped file (see {@link #wrap(ByteBuffer, byte, int, int)}).
+ *
+ * @author margaretha, diewald
  *
  */
-public class DocBits implements Serializable {
+public class DocBits {
+
+    // Representation types
+    public static final byte SPARSE = 1;
+    public static final byte DENSE = 2;
+    public static final byte ROARING = 3;
+
+    // Size of a roaring block
+    private static final int BLOCK_BITS = 16;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    private static final int BLOCK_WORDS = BLOCK_SIZE >>> 6;
+
+    // Blocks with more documents are stored as bit vectors
+    private static final int MAX_ARRAY_SIZE = 4096;
 
-    /**
-     * Auto generated
-     */
-    private static final long serialVersionUID = -3505650918983180852L;
-    final long[] bits;
     final int numbits;
+    final int cardinality;
+    private final byte type;
+
+    // SPARSE: sorted document IDs
+    private final IntBuffer docs;
 
+    // DENSE: bit vector
+    private final LongBuffer bits;
+
+    // ROARING: blocks either being CharBuffer, LongBuffer or null
+    private final Buffer[] blocks;
+
+
+    /**
+     * Construct a new DocBits object based on a bit vector.
+     * The bit vector may not be copied, so it should not be
+     * modified afterwards.
+     *
+     * @param bits
+     *            The bit vector as used by {@link FixedBitSet}.
+     * @param numbits
+     *            The number of bits (i.e. the maximum document
+     *            number of the leaf).
+     */
     public DocBits (long[] bits, int numbits) {
-        this.bits = bits;
         this.numbits = numbits;
-    }
 
+        final int numWords = FixedBitSet.bits2words(numbits);
+        final int numBlocks = numBlocks(numbits);
+        final int[] blockCards = new int[numBlocks];
+
+        int card = 0;
+        for (int w = 0; w < numWords; w++) {
+            final int c = Long.bitCount(bits[w]);
+            blockCards[w >>> (BLOCK_BITS - 6)] += c;
+            card += c;
+        };
+        this.cardinality = card;
+
+        // Estimate the size of all representations
+        final long sparseSize = 4L * card;
+        final long denseSize = 8L * numWords;
+        long roaringSize = 8L * numBlocks;
+        for (int c : blockCards) {
+            if (c > MAX_ARRAY_SIZE)
+                roaringSize += 8L * BLOCK_WORDS;
+            else if (c > 0)
+                roaringSize += 2L * c;
+        };
+
+        if (sparseSize <= denseSize && sparseSize <= roaringSize) {
+            this.type = SPARSE;
+            final int[] docs = new int[card];
+            int i = 0;
+            for (int w = 0; w < numWords; w++) {
+                long word = bits[w];
+                while (word != 0) {
+                    docs[i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                };
+            };
+            this.docs = IntBuffer.wrap(docs);
+            this.bits = null;
+            this.blocks = null;
+        }
+        else if (denseSize <= roaringSize) {
+            this.type = DENSE;
+            this.bits = LongBuffer.wrap(bits, 0, numWords).slice();
+            this.docs = null;
+            this.blocks = null;
+        }
+        else {
+            this.type = ROARING;
+            this.blocks = new Buffer[numBlocks];
+            for (int b = 0; b < numBlocks; b++) {
+                final int c = blockCards[b];
+                final int firstWord = b * BLOCK_WORDS;
+                final int lastWord = Math.min(firstWord + BLOCK_WORDS,
+                        numWords);
+
+                if (c == 0)
+                    continue;
+
+                // Bit vector block
+                if (c > MAX_ARRAY_SIZE) {
+                    final long[] words = new long[BLOCK_WORDS];
+                    System.arraycopy(bits, firstWord, words, 0,
+                            lastWord - firstWord);
+                    this.blocks[b] = LongBuffer.wrap(words);
+                    continue;
+                };
+
+                // Array block
+                final char[] offsets = new char[c];
+                int i = 0;
+                for (int w = firstWord; w < lastWord; w++) {
+                    long word = bits[w];
+                    while (word != 0) {
+                        offsets[i++] = (char) (((w - firstWord) << 6)
+                                + Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    };
+                };
+                this.blocks[b] = CharBuffer.wrap(offsets);
+            };
+            this.docs = null;
+            this.bits = null;
+        };
+    };
+
+
+    // Construct a DocBits object from wrapped data
+    private DocBits (byte type, int numbits, int cardinality, IntBuffer docs,
+            LongBuffer bits, Buffer[] blocks) {
+        this.type = type;
+        this.numbits = numbits;
+        this.cardinality = cardinality;
+        this.docs = docs;
+        this.bits = bits;
+        this.blocks = blocks;
+    };
+
+
+    /**
+     * Get the representation type, being one of
+     * {@link #SPARSE}, {@link #DENSE} or {@link #ROARING}.
+     *
+     * @return The representation type.
+     */
+    public byte getType () {
+        return this.type;
+    };
+
+
+    /**
+     * Get the number of documents in the set.
+     *
+     * @return The number of documents.
+     */
+    public int cardinality () {
+        return this.cardinality;
+    };
+
+
+    /**
+     * Get the number of bits of the set
+     * (i.e. the maximum document number of the leaf).
+     *
+     * @return The number of bits.
+     */
+    public int length () {
+        return this.numbits;
+    };
+
+
+    /**
+     * Estimate the heap memory used by this object.
+     * Data wrapped from memory mapped files is not counted.
+     *
+     * @return The estimated number of bytes.
+     */
+    public long ramBytesUsed () {
+        long size = RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 32;
+        switch (this.type) {
+            case SPARSE:
+                return size + bufferBytes(this.docs);
+            case DENSE:
+                return size + bufferBytes(this.bits);
+        };
+
+        size += RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                + (long) RamUsageEstimator.NUM_BYTES_OBJECT_REF
+                        * this.blocks.length;
+        for (Buffer block : this.blocks)
+            size += bufferBytes(block);
+        return size;
+    };
+
+
+    /**
+     * Create a {@link DocIdSet} iterating over the documents
+     * without expanding the compact representation.
+     *
+     * @return The {@link DocIdSet}.
+     */
+    public DocIdSet createDocIdSet () {
+        return new DocIdSet() {
+            @Override
+            public DocIdSetIterator iterator () {
+                switch (type) {
+                    case SPARSE:
+                        return new SparseIterator(docs, cardinality);
+                    case DENSE:
+                        return new DenseIterator(bits, cardinality);
+                };
+                return new RoaringIterator();
+            };
+
+
+            @Override
+            public long ramBytesUsed () {
+                return DocBits.this.ramBytesUsed();
+            };
+        };
+    };
+
+
+    /**
+     * Create a {@link BitDocIdSet} based on a bit vector.
+     * In case the documents are not stored as a bit vector
+     * on the heap, the bit vector is created.
+     *
+     * @return The {@link BitDocIdSet}.
+     */
     public BitDocIdSet createBitDocIdSet () {
-        FixedBitSet bitset = new FixedBitSet(bits, numbits);
-        BitDocIdSet docIdSet = new BitDocIdSet(bitset);
+        FixedBitSet bitset = new FixedBitSet(this.getBits(), numbits);
+        BitDocIdSet docIdSet = new BitDocIdSet(bitset, this.cardinality);
         return docIdSet;
-    }
+    };
+
+
+    /**
+     * Get the documents as a bit vector.
+     * In case the documents are not stored as a bit vector
+     * on the heap, the bit vector is created.
+     *
+     * @return The bit vector as used by {@link FixedBitSet}.
+     */
+    public long[] getBits () {
+        if (this.type == DENSE && this.bits.hasArray()
+                && this.bits.arrayOffset() == 0)
+            return this.bits.array();
+
+        final long[] words = new long[FixedBitSet.bits2words(numbits)];
+        switch (this.type) {
+            case SPARSE:
+                for (int i = 0; i < this.cardinality; i++) {
+                    final int doc = this.docs.get(i);
+                    words[doc >> 6] |= 1L << doc;
+                };
+                return words;
+
+            case DENSE:
+                this.bits.duplicate().get(words, 0,
+                        Math.min(words.length, this.bits.limit()));
+                return words;
+        };
+
+        for (int b = 0; b < this.blocks.length; b++) {
+            final Buffer block = this.blocks[b];
+            final int firstWord = b * BLOCK_WORDS;
+            if (block instanceof CharBuffer) {
+                final CharBuffer offsets = (CharBuffer) block;
+                for (int i = 0; i < offsets.limit(); i++) {
+                    final char offset = offsets.get(i);
+                    words[firstWord + (offset >> 6)] |= 1L << offset;
+                };
+            }
+            else if (block != null) {
+                ((LongBuffer) block).duplicate().get(words, firstWord,
+                        Math.min(BLOCK_WORDS, words.length - firstWord));
+            };
+        };
+        return words;
+    };
+
+
+    /**
+     * Serialize the documents in their compact representation.
+     * The representation type, the number of bits and the cardinality
+     * are not part of the serialization and need to be stored
+     * separately. All longs are 8-byte aligned, relative to the
+     * start of the serialization.
+     *
+     * @param out
+     *            The {@link DataOutput} to write to.
+     * @return The number of bytes written.
+     * @throws IOException
+     */
+    public long write (DataOutput out) throws IOException {
+        switch (this.type) {
+            case SPARSE:
+                for (int i = 0; i < this.cardinality; i++)
+                    out.writeInt(this.docs.get(i));
+                return 4L * this.cardinality;
+
+            case DENSE:
+                final int numWords = FixedBitSet.bits2words(numbits);
+                for (int i = 0; i < numWords; i++)
+                    out.writeLong(this.bits.get(i));
+                return 8L * numWords;
+        };
+
+        // Write block directory
+        long size = 0;
+        for (Buffer block : this.blocks) {
+            if (block instanceof CharBuffer)
+                out.writeInt(block.limit());
+            else if (block != null)
+                out.writeInt(BLOCK_SIZE);
+            else
+                out.writeInt(0);
+            size += 4;
+        };
+        size = pad(out, size);
+
+        // Write blocks
+        for (Buffer block : this.blocks) {
+            if (block instanceof CharBuffer) {
+                final CharBuffer offsets = (CharBuffer) block;
+                for (int i = 0; i < offsets.limit(); i++)
+                    out.writeChar(offsets.get(i));
+                size = pad(out, size + 2L * offsets.limit());
+            }
+            else if (block != null) {
+                final LongBuffer words = (LongBuffer) block;
+                for (int i = 0; i < BLOCK_WORDS; i++)
+                    out.writeLong(words.get(i));
+                size += 8L * BLOCK_WORDS;
+            };
+        };
+        return size;
+    };
+
+
+    /**
+     * Wrap serialized documents without copying.
+     *
+     * @param buffer
+     *            The {@link ByteBuffer} positioned at the start of
+     *            the serialization as written by
+     *            {@link #write(DataOutput)}.
+     * @param type
+     *            The representation type.
+     * @param numbits
+     *            The number of bits.
+     * @param cardinality
+     *            The number of documents.
+     * @return The {@link DocBits} object.
+     * @throws IOException
+     *             In case the serialization is invalid.
+     */
+    public static DocBits wrap (ByteBuffer buffer, byte type, int numbits,
+            int cardinality) throws IOException {
+        final ByteBuffer data = buffer.slice();
+
+        try {
+            switch (type) {
+                case SPARSE:
+                    data.limit(4 * cardinality);
+                    return new DocBits(type, numbits, cardinality,
+                            data.asIntBuffer(), null, null);
+
+                case DENSE:
+                    data.limit(8 * FixedBitSet.bits2words(numbits));
+                    return new DocBits(type, numbits, cardinality, null,
+                            data.asLongBuffer(), null);
+
+                case ROARING:
+                    final Buffer[] blocks = new Buffer[numBlocks(numbits)];
+                    final int[] blockCards = new int[blocks.length];
+                    int pos = 0;
+                    for (int b = 0; b < blocks.length; b++) {
+                        blockCards[b] = data.getInt(pos);
+                        pos += 4;
+                    };
+                    pos = (pos + 7) & ~7;
+
+                    int card = 0;
+                    for (int b = 0; b < blocks.length; b++) {
+                        final int c = blockCards[b];
+                        if (c == 0)
+                            continue;
+
+                        data.limit(data.capacity()).position(pos);
+                        if (c == BLOCK_SIZE) {
+                            data.limit(pos + 8 * BLOCK_WORDS);
+                            final LongBuffer words = data.slice()
+                                    .asLongBuffer();
+                            for (int i = 0; i < BLOCK_WORDS; i++)
+                                card += Long.bitCount(words.get(i));
+                            blocks[b] = words;
+                            pos += 8 * BLOCK_WORDS;
+                        }
+                        else if (c <= MAX_ARRAY_SIZE) {
+                            data.limit(pos + 2 * c);
+                            blocks[b] = data.slice().asCharBuffer();
+                            card += c;
+                            pos = (pos + 2 * c + 7) & ~7;
+                        }
+                        else {
+                            throw new IOException("Invalid block size " + c);
+                        };
+                    };
+
+                    if (card != cardinality)
+                        throw new IOException("Cardinality mismatch");
+
+                    return new DocBits(type, numbits, cardinality, null,
+                            null, blocks);
+            };
+        }
+        catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("DocBits data is truncated", e);
+        };
+
+        throw new IOException("Unknown DocBits type " + type);
+    };
+
 
     @Override
     public String toString () {
         StringBuilder sb = new StringBuilder("[");
         int i = 1;
-        for (long b : bits) {
+        for (long b : this.getBits()) {
             sb.append(b);
             if (i < numbits) {
                 sb.append(",");
@@ -43,9 +473,278 @@ public class DocBits implements Serializable {
         }
         sb.append("]");
         return sb.toString();
-    }
-    
-    public long[] getBits () {
-        return bits;
-    }
-}
+    };
+
+
+    // Number of roaring blocks for a number of bits
+    private static int numBlocks (int numbits) {
+        return (numbits + BLOCK_SIZE - 1) >>> BLOCK_BITS;
+    };
+
+
+    // Pad to a multiple of 8 bytes
+    private static long pad (DataOutput out, long size) throws IOException {
+        while ((size & 7) != 0) {
+            out.writeByte(0);
+            size++;
+        };
+        return size;
+    };
+
+
+    // Heap bytes used by a buffer
+    private static long bufferBytes (Buffer buffer) {
+        if (buffer == null)
+            return 0;
+        long size = RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 32;
+        if (buffer.isDirect())
+            return size;
+        if (buffer instanceof IntBuffer)
+            return size + 4L * buffer.capacity();
+        if (buffer instanceof CharBuffer)
+            return size + 2L * buffer.capacity();
+        return size + 8L * buffer.capacity();
+    };
+
+
+    // Iterate over sorted document IDs
+    private static class SparseIterator extends DocIdSetIterator {
+        private final IntBuffer docs;
+        private final int size;
+        private int i = -1;
+        private int doc = -1;
+
+        SparseIterator (IntBuffer docs, int size) {
+            this.docs = docs;
+            this.size = size;
+        };
+
+
+        @Override
+        public int docID () {
+            return doc;
+        };
+
+
+        @Override
+        public int nextDoc () {
+            if (++i >= size)
+                return doc = NO_MORE_DOCS;
+            return doc = docs.get(i);
+        };
+
+
+        @Override
+        public int advance (int target) {
+
+            // Binary search in the remaining documents
+            int low = i + 1, high = size - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                if (docs.get(mid) < target)
+                    low = mid + 1;
+                else
+                    high = mid - 1;
+            };
+            i = low;
+            if (i >= size)
+                return doc = NO_MORE_DOCS;
+            return doc = docs.get(i);
+        };
+
+
+        @Override
+        public long cost () {
+            return size;
+        };
+    };
+
+
+    // Iterate over sorted 16-bit offsets
+    private static class OffsetIterator extends DocIdSetIterator {
+        private final CharBuffer offsets;
+        private final int size;
+        private int i = -1;
+        private int doc = -1;
+
+        OffsetIterator (CharBuffer offsets) {
+            this.offsets = offsets;
+            this.size = offsets.limit();
+        };
+
+
+        @Override
+        public int docID () {
+            return doc;
+        };
+
+
+        @Override
+        public int nextDoc () {
+            if (++i >= size)
+                return doc = NO_MORE_DOCS;
+            return doc = offsets.get(i);
+        };
+
+
+        @Override
+        public int advance (int target) {
+            int low = i + 1, high = size - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                if (offsets.get(mid) < target)
+                    low = mid + 1;
+                else
+                    high = mid - 1;
+            };
+            i = low;
+            if (i >= size)
+                return doc = NO_MORE_DOCS;
+            return doc = offsets.get(i);
+        };
+
+
+        @Override
+        public long cost () {
+            return size;
+        };
+    };
+
+
+    // Iterate over a bit vector
+    private static class DenseIterator extends DocIdSetIterator {
+        private final LongBuffer words;
+        private final int numWords;
+        private final long cost;
+        private int doc = -1;
+
+        DenseIterator (LongBuffer words, long cost) {
+            this.words = words;
+            this.numWords = words.limit();
+            this.cost = cost;
+        };
+
+
+        @Override
+        public int docID () {
+            return doc;
+        };
+
+
+        @Override
+        public int nextDoc () {
+            return this.advance(doc + 1);
+        };
+
+
+        @Override
+        public int advance (int target) {
+            int w = target >> 6;
+            if (w >= numWords)
+                return doc = NO_MORE_DOCS;
+
+            long word = words.get(w) >>> target;
+            if (word != 0)
+                return doc = target + Long.numberOfTrailingZeros(word);
+
+            while (++w < numWords) {
+                word = words.get(w);
+                if (word != 0)
+                    return doc = (w << 6) + Long.numberOfTrailingZeros(word);
+            };
+            return doc = NO_MORE_DOCS;
+        };
+
+
+        @Override
+        public long cost () {
+            return cost;
+        };
+    };
+
+
+    // Iterate over roaring blocks
+    private class RoaringIterator extends DocIdSetIterator {
+        private int block = -1;
+        private DocIdSetIterator blockIter = null;
+        private int doc = -1;
+
+        @Override
+        public int docID () {
+            return doc;
+        };
+
+
+        @Override
+        public int nextDoc () throws IOException {
+            if (blockIter != null) {
+                int next = blockIter.nextDoc();
+                if (next != NO_MORE_DOCS)
+                    return doc = (block << BLOCK_BITS) + next;
+            };
+            return doc = this.firstDocFrom(block + 1);
+        };
+
+
+        @Override
+        public int advance (int target) throws IOException {
+            final int targetBlock = target >>> BLOCK_BITS;
+            if (targetBlock == block && blockIter != null) {
+                int next = blockIter.advance(target & (BLOCK_SIZE - 1));
+                if (next != NO_MORE_DOCS)
+                    return doc = (block << BLOCK_BITS) + next;
+                return doc = this.firstDocFrom(block + 1);
+            };
+
+            if (targetBlock >= blocks.length)
+                return doc = NO_MORE_DOCS;
+
+            // Position at the target block
+            if (this.openBlock(targetBlock)) {
+                int next = blockIter.advance(target & (BLOCK_SIZE - 1));
+                if (next != NO_MORE_DOCS)
+                    return doc = (block << BLOCK_BITS) + next;
+            };
+            return doc = this.firstDocFrom(targetBlock + 1);
+        };
+
+
+        @Override
+        public long cost () {
+            return cardinality;
+        };
+
+
+        // Return the first document of the next non-empty block
+        private int firstDocFrom (int b) throws IOException {
+            for (; b < blocks.length; b++) {
+                if (this.openBlock(b)) {
+                    int next = blockIter.nextDoc();
+                    if (next != NO_MORE_DOCS)
+                        return (block << BLOCK_BITS) + next;
+                };
+            };
+            block = blocks.length;
+            blockIter = null;
+            return NO_MORE_DOCS;
+        };
+
+
+        // Open an iterator on a block
+        private boolean openBlock (int b) {
+            block = b;
+            final Buffer data = blocks[b];
+            if (data == null) {
+                blockIter = null;
+                return false;
+            };
+
+            if (data instanceof CharBuffer)
+                blockIter = new OffsetIterator((CharBuffer) data);
+            else
+                blockIter = new DenseIterator((LongBuffer) data,
+                        BLOCK_SIZE);
+            return true;
+        };
+    };
+};
@@ -46,7 +46,7 @@ public class VirtualCorpusFilter extends Filter {
                         throw new RuntimeException(e);
                     }
                 });
-        return docBits.createBitDocIdSet();
+        return docBits.createDocIdSet();
     }
 
     @Override
@@ -60,31 +60,41 @@ public class VirtualCorpusFilter extends Filter {
     
     public class DocBitsSupplier {
 
-        private Filter filter;
+        private volatile Filter filter;
         private CollectionBuilder.Interface cbi;
         
         public DocBitsSupplier () {}
         
         public DocBits supplyDocBits (LeafReaderContext context,
                 Bits acceptDocs) throws IOException, QueryException {
-            if (cbi == null || filter == null) {
-                KrillCollection kc = new KrillCollection();
-                // load from file
-                kc.fromStore(vcId);
-                if (kc.hasErrors()) {
-                    throw new QueryException(kc.getError(0).getCode(),
-                            kc.getError(0).getMessage());
-                }
-
-                this.cbi = kc.getBuilder();
-                this.filter = kc.toFilter();
+            if (filter == null) {
+                this.init();
             }
-                
+
             DocIdSet docIdSet = filter.getDocIdSet(context, acceptDocs);
             return calculateDocBits(docIdSet, context.reader().maxDoc());
         }
 
 
+        // Load the VC from file - leaves may be supplied concurrently
+        private synchronized void init () throws QueryException {
+            if (filter != null) {
+                return;
+            }
+
+            KrillCollection kc = new KrillCollection();
+            // load from file
+            kc.fromStore(vcId);
+            if (kc.hasErrors()) {
+                throw new QueryException(kc.getError(0).getCode(),
+                        kc.getError(0).getMessage());
+            }
+
+            this.cbi = kc.getBuilder();
+            this.filter = kc.toFilter();
+        }
+
+
         private DocBits calculateDocBits (DocIdSet docIdSet, int maxDoc)
                 throws IOException {
             FixedBitSet bitset = new FixedBitSet(maxDoc);
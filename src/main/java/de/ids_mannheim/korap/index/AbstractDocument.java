@@ -11,6 +11,9 @@ import de.ids_mannheim.korap.response.MetaFieldsObj;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+
+import java.io.IOException;
 
 import com.fasterxml.jackson.annotation.*;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
@@ -44,6 +47,9 @@ public abstract class AbstractDocument extends Response {
     ObjectMapper mapper = new ObjectMapper();
     
     private String primaryData;
+
+    // Primary data stored in chunks, loaded on demand
+    private PrimaryData primaryDataChunks;
     
     private static HashSet<String> legacyStringFields =
         new HashSet<String>(Arrays.asList(
@@ -122,7 +128,8 @@ public abstract class AbstractDocument extends Response {
         String name;
         while (fieldIterator.hasNext()) {
             name = fieldIterator.next().name();
-            if (name.equals("tokens") || name.equals("base"))
+            if (name.equals("tokens") || name.equals("base")
+                    || PrimaryData.isPrimaryDataField(name))
                 continue;
             fieldList.add(name);
         }
@@ -150,13 +157,53 @@ public abstract class AbstractDocument extends Response {
     };
 
 
+    /**
+     * Populate document meta information and primary data
+     * with information coming from the index.
+     * In case the primary data is stored in chunks, it is only
+     * loaded on demand.
+     * 
+     * @param reader
+     *            The {@link LeafReader} of the document.
+     * @param localDocID
+     *            The local document ID.
+     * @param field
+     *            Primary data field.
+     * @param fields
+     *            List of fields to populate or <tt>null</tt>
+     *            for all fields.
+     * @throws IOException
+     */
+    public void populateDocument (LeafReader reader, int localDocID,
+            String field, List<String> fields) throws IOException {
+        Set<String> fieldsSet = null;
+        if (fields != null) {
+            fieldsSet = new HashSet<String>(fields);
+            if (field != null)
+                fieldsSet.add(field);
+        };
+
+        PrimaryData.Loader loader = new PrimaryData.Loader(fieldsSet, field)
+                .load(reader, localDocID);
+        Document doc = loader.getDocument();
+        if (fields != null)
+            this.populateDocument(doc, field, fields);
+        else
+            this.populateDocument(doc, field);
+
+        if (field != null && this.primaryData == null)
+            this.setPrimaryData(loader.getPrimaryData());
+    };
+
+
     public void populateFields (Document doc) {
         ArrayList<String> fieldList = new ArrayList<>(32);
         Iterator<IndexableField> fieldIterator = doc.getFields().iterator();
         String name;
         while (fieldIterator.hasNext()) {
             name = fieldIterator.next().name();
-            if (name.equals("tokens") || name.equals("base"))
+            if (name.equals("tokens") || name.equals("base")
+                    || PrimaryData.isPrimaryDataField(name))
                 continue;
             fieldList.add(name);
         };
@@ -256,8 +303,11 @@ public abstract class AbstractDocument extends Response {
      */
     @JsonIgnore
     public String getPrimaryData () {
-        if (this.primaryData == null)
-            return "";
+        if (this.primaryData == null) {
+            if (this.primaryDataChunks == null)
+                return "";
+            this.primaryData = this.primaryDataChunks.toString();
+        };
         return this.primaryData;
     };
 
@@ -273,6 +323,8 @@ public abstract class AbstractDocument extends Response {
      */
     @JsonIgnore
     public String getPrimaryData (int startOffset) {
+        if (this.primaryData == null && this.primaryDataChunks != null)
+            return this.primaryDataChunks.substring(startOffset);
         return codePointSubstring(this.primaryData, startOffset);
     };
 
@@ -281,6 +333,8 @@ public abstract class AbstractDocument extends Response {
      * Get the primary data of the document,
      * starting with a given character offset and ending
      * with a given character offset.
+     * In case the primary data is stored in chunks,
+     * only the chunks covering the offsets are read.
      * 
      * @param startOffset
      *            The starting character offset.
@@ -291,6 +345,8 @@ public abstract class AbstractDocument extends Response {
      */
     @JsonIgnore
     public String getPrimaryData (int startOffset, int endOffset) {
+        if (this.primaryData == null && this.primaryDataChunks != null)
+            return this.primaryDataChunks.substring(startOffset, endOffset);
         return codePointSubstring(this.primaryData,startOffset, endOffset);
     };
 
@@ -304,6 +360,21 @@ public abstract class AbstractDocument extends Response {
      */
     public void setPrimaryData (String primary) {
         this.primaryData = primary;
+        this.primaryDataChunks = null;
+    };
+
+
+    /**
+     * Set the primary data of the document
+     * stored in chunks.
+     * 
+     * @param primary
+     *            The chunked {@link PrimaryData}
+     *            of the document.
+     */
+    public void setPrimaryData (PrimaryData primary) {
+        this.primaryData = null;
+        this.primaryDataChunks = primary;
     };
 
     /**
@@ -315,6 +386,8 @@ public abstract class AbstractDocument extends Response {
      */
     @JsonIgnore
     public int getPrimaryDataLength () {
+        if (this.primaryData == null && this.primaryDataChunks != null)
+            return this.primaryDataChunks.length();
         return this.primaryData.length();
     };
 
@@ -0,0 +1,221 @@
+package de.ids_mannheim.korap.index;
+
+import de.ids_mannheim.korap.util.TimeExceededException;
+
+/**
+ * A deadline for search requests, supporting time outs and
+ * cooperative cancellation.
+ * 
+ * <p>
+ * Instead of running a timer thread per request, the deadline is
+ * based on {@link System#nanoTime()} and only checked on demand.
+ * A deadline can be bound to the thread processing a request,
+ * so that long running loops (e.g. in span enumerations or
+ * while building snippets) can poll the deadline of the current
+ * request via {@link #current()} and stop early.
+ * 
+ * <blockquote><pre>
+ * Deadline deadline = new Deadline(5000);
+ * Deadline.set(deadline);
+ * try {
+ *   while (spans.next()) {
+ *     deadline.check();
+ *     ...
+ *   };
+ * }
+ * finally {
+ *   Deadline.clear();
+ * };
+ * </pre></blockquote>
+ * 
+ * @author diewald
+ */
+public final class Deadline {
+
+    // Deadline of the current thread
+    private static final ThreadLocal<Deadline> current = new ThreadLocal<>();
+
+    // Deadline that never expires
+    private static final Deadline NONE = new Deadline();
+
+    // Number of polls before the clock is consulted
+    private static final int POLL_INTERVAL = 0xFF;
+
+    private final long start;
+    private final long timeout;
+    private final long timeoutNanos;
+    private final boolean unlimited;
+    private volatile boolean cancelled = false;
+
+    // Deadline this deadline was forked from
+    private final Deadline parent;
+
+    // Not synchronized, as polls only need to be roughly counted
+    private int polls = 0;
+
+
+    // Construct a deadline that never expires
+    private Deadline () {
+        this.start = System.nanoTime();
+        this.timeout = Long.MAX_VALUE;
+        this.timeoutNanos = Long.MAX_VALUE;
+        this.unlimited = true;
+        this.parent = null;
+    };
+
+
+    // Construct a deadline with the time budget of a parent
+    private Deadline (Deadline parent) {
+        this.start = parent.start;
+        this.timeout = parent.timeout;
+        this.timeoutNanos = parent.timeoutNanos;
+        this.unlimited = parent.unlimited;
+        this.parent = parent;
+    };
+
+
+    /**
+     * Construct a new deadline, starting now.
+     * 
+     * @param timeout
+     *            The time out in milliseconds.
+     *            A negative value expires immediately.
+     */
+    public Deadline (long timeout) {
+        this.start = System.nanoTime();
+        this.timeout = timeout;
+        this.unlimited = timeout > Long.MAX_VALUE / 1_000_000L;
+        this.timeoutNanos = this.unlimited ? Long.MAX_VALUE
+                : timeout * 1_000_000L;
+        this.parent = null;
+    };
+
+
+    /**
+     * Fork the deadline. The forked deadline has the same time
+     * budget and expires as soon as this deadline expires,
+     * but can be cancelled independently,
+     * e.g. to stop the tasks of a parallel search
+     * without cancelling the whole request.
+     * 
+     * @return The forked {@link Deadline}.
+     */
+    public Deadline fork () {
+        return new Deadline(this);
+    };
+
+
+    /**
+     * Get the deadline bound to the current thread.
+     * 
+     * @return The bound {@link Deadline} or a deadline
+     *         that never expires.
+     */
+    public static Deadline current () {
+        Deadline deadline = current.get();
+        return deadline == null ? NONE : deadline;
+    };
+
+
+    /**
+     * Bind a deadline to the current thread.
+     * 
+     * @param deadline
+     *            The {@link Deadline} to bind.
+     */
+    public static void set (Deadline deadline) {
+        current.set(deadline);
+    };
+
+
+    /**
+     * Release the deadline bound to the current thread.
+     */
+    public static void clear () {
+        current.remove();
+    };
+
+
+    /**
+     * Get the time passed since the deadline was started.
+     * 
+     * @return The time in milliseconds.
+     */
+    public long getTime () {
+        return (System.nanoTime() - this.start) / 1_000_000L;
+    };
+
+
+    /**
+     * Get the time out of the deadline.
+     * 
+     * @return The time out in milliseconds.
+     */
+    public long getTimeOut () {
+        return this.timeout;
+    };
+
+
+    /**
+     * Cancel the request, so all pollers will stop.
+     */
+    public void cancel () {
+        this.cancelled = true;
+    };
+
+
+    /**
+     * Check if the request was cancelled.
+     * 
+     * @return <tt>true</tt> in case the request was cancelled.
+     */
+    public boolean isCancelled () {
+        return this.cancelled
+                || (this.parent != null && this.parent.isCancelled());
+    };
+
+
+    /**
+     * Check if the deadline is exceeded or the request
+     * was cancelled.
+     * 
+     * @return <tt>true</tt> in case processing should stop.
+     */
+    public boolean isExpired () {
+        if (this.isCancelled())
+            return true;
+        if (this.unlimited)
+            return false;
+        return System.nanoTime() - this.start > this.timeoutNanos;
+    };
+
+
+    /**
+     * Check the deadline, but only consult the clock
+     * every few calls. This is meant to be used in tight loops.
+     * 
+     * @return <tt>true</tt> in case processing should stop.
+     */
+    public boolean poll () {
+        if (this.isCancelled())
+            return true;
+        if (this.unlimited || (++this.polls & POLL_INTERVAL) != 0)
+            return false;
+        return this.isExpired();
+    };
+
+
+    /**
+     * Poll the deadline and throw an exception,
+     * in case processing should stop.
+     * 
+     * @throws TimeExceededException
+     */
+    public void check () throws TimeExceededException {
+        if (this.poll()) {
+            throw new TimeExceededException(this.isCancelled()
+                    ? "Request was cancelled"
+                    : "Response time exceeded");
+        };
+    };
+};
@@ -0,0 +1,232 @@
+package de.ids_mannheim.korap.index;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.util.Bits;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.ids_mannheim.korap.query.SpanElementQuery;
+
+/**
+ * Load the boundaries of all elements (e.g. sentences)
+ * in documents of a leaf, to expand contexts to elements.
+ *
+ * <p>
+ * The element spans are opened only once per leaf and
+ * advanced monotonically, so all matches of a page in the leaf
+ * can resolve their enclosing elements in a single pass, given
+ * they are requested in document order. The element boundaries
+ * of the current document are buffered, so multiple matches in
+ * the same document don't need to read the spans again.
+ *
+ * @author diewald
+ */
+public class ElementLoader {
+
+    // This advices the java compiler to ignore all loggings
+    public static final boolean DEBUG = false;
+
+    private final static Logger log = LoggerFactory
+            .getLogger(ElementLoader.class);
+
+    private final LeafReaderContext atomic;
+    private final Bits bitset;
+    private final SpanElementQuery query;
+
+    private Spans spans;
+    private boolean more = false;
+
+    // Buffered elements of the current document
+    private int docID = -1;
+    private int size = 0;
+    private int[] starts = new int[32];
+    private int[] ends = new int[32];
+    private int[] startChars = new int[32];
+    private int[] endChars = new int[32];
+    private boolean[] hasChars = new boolean[32];
+
+
+    /**
+     * Construct a new element loader.
+     *
+     * @param atomic
+     *            The {@link LeafReaderContext}.
+     * @param bitset
+     *            Bit vector of documents to search in
+     *            or <tt>null</tt>.
+     * @param field
+     *            The token stream field.
+     * @param element
+     *            The element, e.g. <tt>base/s:s</tt>.
+     */
+    public ElementLoader (LeafReaderContext atomic, Bits bitset, String field,
+                          String element) {
+        this.atomic = atomic;
+        this.bitset = bitset;
+        this.query = new SpanElementQuery(field, element);
+    };
+
+
+    /**
+     * Load all elements of a document,
+     * in the order of the element spans.
+     *
+     * @param localDocID
+     *            The local document ID.
+     * @return The number of elements in the document.
+     * @throws IOException
+     */
+    public int load (int localDocID) throws IOException {
+        if (localDocID == this.docID)
+            return this.size;
+
+        // Reopen the spans in case documents are not requested
+        // in ascending order
+        if (this.spans == null || localDocID < this.docID) {
+            this.spans = this.query.getSpans(this.atomic, this.bitset,
+                    new HashMap<Term, TermContext>());
+            this.more = this.spans.next();
+        };
+
+        this.docID = localDocID;
+        this.size = 0;
+
+        if (this.more && this.spans.doc() < localDocID)
+            this.more = this.spans.skipTo(localDocID);
+
+        // Stop in case the request is aborted
+        final Deadline deadline = Deadline.current();
+
+        while (this.more && this.spans.doc() == localDocID) {
+            if (deadline.poll()) {
+
+                // Buffered elements are incomplete
+                // and must not be reused
+                this.spans = null;
+                this.docID = -1;
+                this.size = 0;
+                break;
+            };
+
+            this.add(this.spans.start(), this.spans.end());
+            this.more = this.spans.next();
+        };
+
+        if (DEBUG)
+            log.trace("Loaded {} elements <{}> in doc {}", this.size,
+                    this.query.getElementStr(), localDocID);
+
+        return this.size;
+    };
+
+
+    /**
+     * Get the start position of a loaded element.
+     *
+     * @param i
+     *            The index of the element in the document.
+     * @return The start position.
+     */
+    public int start (int i) {
+        return this.starts[i];
+    };
+
+
+    /**
+     * Get the end position of a loaded element.
+     *
+     * @param i
+     *            The index of the element in the document.
+     * @return The end position.
+     */
+    public int end (int i) {
+        return this.ends[i];
+    };
+
+
+    /**
+     * Check, if character offsets are available
+     * for a loaded element.
+     *
+     * @param i
+     *            The index of the element in the document.
+     * @return <tt>true</tt> in case character offsets are available.
+     */
+    public boolean hasChars (int i) {
+        return this.hasChars[i];
+    };
+
+
+    /**
+     * Get the start character offset of a loaded element.
+     *
+     * @param i
+     *            The index of the element in the document.
+     * @return The start character offset.
+     */
+    public int startChar (int i) {
+        return this.startChars[i];
+    };
+
+
+    /**
+     * Get the end character offset of a loaded element.
+     *
+     * @param i
+     *            The index of the element in the document.
+     * @return The end character offset.
+     */
+    public int endChar (int i) {
+        return this.endChars[i];
+    };
+
+
+    // Buffer the current element span
+    private void add (int start, int end) throws IOException {
+        if (this.size == this.starts.length) {
+            final int length = this.size << 1;
+            this.starts = Arrays.copyOf(this.starts, length);
+            this.ends = Arrays.copyOf(this.ends, length);
+            this.startChars = Arrays.copyOf(this.startChars, length);
+            this.endChars = Arrays.copyOf(this.endChars, length);
+            this.hasChars = Arrays.copyOf(this.hasChars, length);
+        };
+
+        final int i = this.size++;
+        this.starts[i] = start;
+        this.ends[i] = end;
+        this.hasChars[i] = false;
+
+        // Get character offsets of the element
+        if (this.spans.isPayloadAvailable()) {
+            for (byte[] b : this.spans.getPayload()) {
+
+                // Not an element span
+                if (b[0] != (byte) 64)
+                    continue;
+
+                if (b.length >= 9) {
+                    this.startChars[i] = readInt(b, 1);
+                    this.endChars[i] = readInt(b, 5);
+                    this.hasChars[i] = true;
+                };
+                break;
+            };
+        };
+    };
+
+
+    // Read a big endian integer
+    private static int readInt (byte[] b, int o) {
+        return ((b[o] & 0xFF) << 24) | ((b[o + 1] & 0xFF) << 16)
+                | ((b[o + 2] & 0xFF) << 8) | (b[o + 3] & 0xFF);
+    };
+};
@@ -4,6 +4,7 @@ import de.ids_mannheim.korap.index.MultiTermTokenStream;
 import de.ids_mannheim.korap.index.MultiTermToken;
 import de.ids_mannheim.korap.index.AbstractDocument;
 import de.ids_mannheim.korap.util.KrillDate;
+import de.ids_mannheim.korap.util.KrillProperties;
 import de.ids_mannheim.korap.util.CorpusDataException;
 import de.ids_mannheim.korap.response.MetaField;
 
@@ -22,6 +23,7 @@ import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.IntField;
 import org.apache.lucene.document.DoubleField;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
 import org.apache.lucene.index.IndexOptions;
@@ -72,6 +74,9 @@ public class FieldDocument extends AbstractDocument {
     private FieldType tvField = new FieldType(TextField.TYPE_STORED);
     private FieldType tvNoField = new FieldType(TextField.TYPE_NOT_STORED);
     private FieldType keywordField = new FieldType(TextField.TYPE_STORED);
+
+    // Primary data to be stored in chunks
+    private Map<String, String> primaryDataChunks;
     
     {
         tvField.setStoreTermVectors(true);
@@ -94,6 +99,14 @@ public class FieldDocument extends AbstractDocument {
      */
     public Document compile () {
 
+        // The UID is additionally stored as a DocValue,
+        // so it can be read without loading stored fields
+        boolean uidDocValue = false;
+
+        // The index creation date is additionally stored as a DocValue,
+        // so it can be retrieved cheaply on upserts
+        boolean creationDocValue = false;
+
 		// Iterate over all fields
 		Iterator<MetaField> fIter = mFields.iterator();
 		while (fIter.hasNext()) {
@@ -115,6 +128,15 @@ public class FieldDocument extends AbstractDocument {
                 if (date != null) {
                     try {
                         doc.add(new IntField(mf.key, date.toInteger(), Field.Store.YES));
+
+                        if (!creationDocValue
+                                && mf.key.equals("indexCreationDate")) {
+                            doc.add(new NumericDocValuesField(
+                                        "indexCreationDate",
+                                        date.toInteger()
+                                        ));
+                            creationDocValue = true;
+                        };
                     }
                     catch (NumberFormatException ne) {
                         continue;
@@ -131,6 +153,19 @@ public class FieldDocument extends AbstractDocument {
                         Field.Store.YES
                         )
                     );
+
+                if (!uidDocValue && mf.key.equals("UID")) {
+                    try {
+                        doc.add(new NumericDocValuesField(
+                                    "UID",
+                                    Integer.parseInt(mf.values.get(0))
+                                    ));
+                        uidDocValue = true;
+                    }
+                    catch (NumberFormatException ne) {
+                        log.warn("UID is expected to be numerical");
+                    };
+                };
                 break;
 
             case "type:keywords":
@@ -153,6 +188,18 @@ public class FieldDocument extends AbstractDocument {
            	};
         };
 
+        // Chunked primary data needs to be stored last
+        if (this.primaryDataChunks != null) {
+            final int chunkSize = KrillProperties.primaryDataChunkSize;
+            for (Map.Entry<String, String> pd : primaryDataChunks.entrySet())
+                PrimaryData.addFields(doc, pd.getKey(), pd.getValue(),
+                                      chunkSize, false);
+            for (Map.Entry<String, String> pd : primaryDataChunks.entrySet())
+                PrimaryData.addFields(doc, pd.getKey(), pd.getValue(),
+                                      chunkSize, true);
+            this.primaryDataChunks = null;
+        };
+
         return doc;
     };
    
@@ -168,6 +215,17 @@ public class FieldDocument extends AbstractDocument {
 
 
     public void addTV (String key, String value, MultiTermTokenStream ts) {
+
+        // Store primary data in chunks after all other fields
+        if (KrillProperties.primaryDataChunkSize > 0 && value != null) {
+            if (this.primaryDataChunks == null)
+                this.primaryDataChunks = new LinkedHashMap<>(2);
+            this.primaryDataChunks.put(key, value);
+            this.addTV(key, ts);
+            return;
+        };
+
+        this.addTokenOffsets(key, ts);
         Field textField = new Field(key, value, tvField);
         textField.setTokenStream(ts);
         doc.add(textField);
@@ -175,11 +233,25 @@ public class FieldDocument extends AbstractDocument {
 
 
     public void addTV (String key, MultiTermTokenStream ts) {
+        this.addTokenOffsets(key, ts);
         Field textField = new Field(key, ts, tvNoField);
         doc.add(textField);
     };
 
 
+    // Add the token offset table of a field,
+    // only in case the field has a single token stream
+    private void addTokenOffsets (String key, MultiTermTokenStream ts) {
+        if (!KrillProperties.indexTokenOffsets)
+            return;
+
+        if (doc.getField(key) == null)
+            TokenOffsets.addField(doc, key, ts);
+        else
+            doc.removeFields(key + TokenOffsets.SUFFIX);
+    };
+
+
     public String toString () {
         return doc.toString();
     };
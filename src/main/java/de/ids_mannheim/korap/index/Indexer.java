@@ -1,5 +1,6 @@
 package de.ids_mannheim.korap.index;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -9,6 +10,10 @@ import java.nio.file.Paths;
 import java.util.Enumeration;
 import java.util.Properties;
 import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.regex.Matcher;
@@ -74,8 +79,10 @@ import static com.fasterxml.jackson.core.StreamReadConstraints.DEFAULT_MAX_STRIN
  */
 public class Indexer {
     private KrillIndex index;
-    private int count;
+    private final AtomicInteger count = new AtomicInteger();
+    private ThreadPoolExecutor workers;
     private int commitCount;
+    private int threads;
     private boolean progressEnabled = false;
     private SimpleProgressBar progressBar;
 
@@ -108,8 +115,8 @@ public class Indexer {
 
         // Create a new index object based on the directory
         this.index = new KrillIndex(new MMapDirectory(Paths.get(path)));
-        this.count = 0;
         this.commitCount = Integer.parseInt(commitCount);
+        this.threads = KrillProperties.indexThreads;
 
         jsonFilePattern = Pattern.compile(".*\\.json\\.gz$");
         plainJsonFilePattern = Pattern.compile(".*\\.json$");
@@ -127,7 +134,7 @@ public class Indexer {
         this.progressBar.start();
     }
 
-    private void stepProgress (long bytes) {
+    private synchronized void stepProgress (long bytes) {
         if (this.progressEnabled && this.progressBar != null) {
             this.progressBar.addBytes(bytes);
         }
@@ -152,44 +159,18 @@ public class Indexer {
         for (String file : dir.list()) {
             matcher = jsonFilePattern.matcher(file);
             if (matcher.find()) {
-                file = dir.getPath() + '/' + file;
+                final String filePath = dir.getPath() + '/' + file;
 
-                try {
-                    if (addInsteadOfUpsert) {
-                        if (!progressEnabled)
-                            log.info("{} Add {} to the index. ", this.count, file);
-                        if (this.index.addDoc(new FileInputStream(file),
-                                              true) == null) {
-                            log.warn("fail.");
-                            continue;
-                        }
+                this.submit(() -> {
+                    try {
+                        if (this.indexDoc(new FileInputStream(filePath), true,
+                                filePath, null))
+                            this.stepProgress(new File(filePath).length());
                     }
-                    else {
-                        if (!progressEnabled)
-                            log.info("{} Add or update {} to the index. ", this.count, file);
-                        if (this.index.upsertDoc(new FileInputStream(file),
-                                                 true) == null) {
-                            log.warn("fail.");
-                            continue;
-                        };
-                    };
-                    this.count++;
-                    if (DEBUG){
-                        log.debug("Finished adding files. (" + count + ").");
-                    }
-
-                    // Commit in case the commit count is reached
-                    if ((this.count % this.commitCount) == 0) {
-
-                        // This will be done in addition to the
-                        // autocommit initiated by KrillIndex
-                        this.commit();
+                    catch (FileNotFoundException e) {
+                        log.error("File " + filePath + " is not found!");
                     }
-                    this.stepProgress(new File(file).length());
-                }
-                catch (FileNotFoundException e) {
-                    log.error("File " + file + " is not found!");
-                }
+                });
             }
             else {
                 log.warn("Skip " + file
@@ -243,40 +224,20 @@ public class Indexer {
                             if (bytesRead == -1) break;
                             totalRead += bytesRead;
                         }
-                        
-                        try (InputStream entryStream = new java.io.ByteArrayInputStream(entryData)) {
-                            if (addInsteadOfUpsert) {
-                                if (!progressEnabled)
-                                    log.info("{} Add {} from tar {} to the index. ", 
-                                            this.count, entryName, tarFile.getName());
-                                if (this.index.addDoc(entryStream, isGzipped) == null) {
-                                    log.warn("fail.");
-                                    continue;
-                                }
-                            }
-                            else {
-                                if (!progressEnabled)
-                                    log.info("{} Add or update {} from tar {} to the index. ", 
-                                            this.count, entryName, tarFile.getName());
-                                if (this.index.upsertDoc(entryStream, isGzipped) == null) {
-                                    log.warn("fail.");
-                                    continue;
-                                }
-                            }
-                            
-                            this.count++;
-                            if (DEBUG) {
-                                log.debug("Finished adding files. (" + count + ").");
-                            }
 
-                            // Commit in case the commit count is reached
-                            if ((this.count % this.commitCount) == 0) {
-                                this.commit();
-                            }
-                            long nowBytes = countingStream.getBytesRead();
-                            this.stepProgress(nowBytes - prevCompressedBytes);
-                            prevCompressedBytes = nowBytes;
-                        }
+                        long nowBytes = countingStream.getBytesRead();
+                        long entryBytes = nowBytes - prevCompressedBytes;
+                        prevCompressedBytes = nowBytes;
+
+                        // Parsing and indexing may be done by a worker,
+                        // while the next entry is read
+                        this.submit(() -> {
+                            if (this.indexDoc(
+                                    new ByteArrayInputStream(entryData),
+                                    isGzipped, entryName,
+                                    "tar " + tarFile.getName()))
+                                this.stepProgress(entryBytes);
+                        });
                     }
                     else {
                         log.warn("Skip " + entryName + " from tar " + tarFile.getName()
@@ -317,41 +278,27 @@ public class Indexer {
                 boolean isPlainJson = plainMatcher.find();
                 
                 if (isGzipped || isPlainJson) {
-                    try (InputStream entryStream = zip.getInputStream(entry)) {
-                        if (addInsteadOfUpsert) {
-                            if (!progressEnabled)
-                                log.info("{} Add {} from zip {} to the index. ", 
-                                        this.count, entryName, zipFile.getName());
-                            if (this.index.addDoc(entryStream, isGzipped) == null) {
-                                log.warn("fail.");
-                                continue;
-                            }
-                        }
-                        else {
-                            if (!progressEnabled)
-                                log.info("{} Add or update {} from zip {} to the index. ", 
-                                        this.count, entryName, zipFile.getName());
-                            if (this.index.upsertDoc(entryStream, isGzipped) == null) {
-                                log.warn("fail.");
-                                continue;
-                            }
-                        }
-                        
-                        this.count++;
-                        if (DEBUG) {
-                            log.debug("Finished adding files. (" + count + ").");
-                        }
 
-                        // Commit in case the commit count is reached
-                        if ((this.count % this.commitCount) == 0) {
-                            this.commit();
-                        }
-                        long compSize = entry.getCompressedSize();
-                        this.stepProgress(compSize > 0 ? compSize : entry.getSize());
+                    // Read the entry, so the zip file can be closed
+                    // before all entries are indexed
+                    final byte[] entryData;
+                    try (InputStream entryStream = zip.getInputStream(entry)) {
+                        entryData = entryStream.readAllBytes();
                     }
                     catch (IOException e) {
                         log.error("Error reading entry " + entryName + " from zip file " + zipFile.getName(), e);
+                        continue;
                     }
+
+                    long compSize = entry.getCompressedSize();
+                    long entryBytes = compSize > 0 ? compSize : entry.getSize();
+
+                    this.submit(() -> {
+                        if (this.indexDoc(new ByteArrayInputStream(entryData),
+                                isGzipped, entryName,
+                                "zip " + zipFile.getName()))
+                            this.stepProgress(entryBytes);
+                    });
                 }
                 else {
                     log.warn("Skip " + entryName + " from zip " + zipFile.getName()
@@ -365,6 +312,127 @@ public class Indexer {
     }
 
 
+    /**
+     * Add or update a single document in the index.
+     * This may be called concurrently by multiple workers,
+     * as the underlying index writer is thread-safe.
+     * 
+     * @param json
+     *            The document as an {@link InputStream}.
+     * @param gzip
+     *            Boolean value indicating if the document is gzipped.
+     * @param name
+     *            The name of the document file.
+     * @param source
+     *            The archive containing the document or <tt>null</tt>.
+     * @return <tt>true</tt> in case the document was indexed.
+     */
+    private boolean indexDoc (InputStream json, boolean gzip, String name,
+            String source) {
+        String from = source == null ? "" : " from " + source;
+        if (addInsteadOfUpsert) {
+            if (!progressEnabled)
+                log.info("{} Add {}{} to the index. ", this.count.get(),
+                        name, from);
+            if (this.index.addDoc(json, gzip) == null) {
+                log.warn("fail.");
+                return false;
+            }
+        }
+        else {
+            if (!progressEnabled)
+                log.info("{} Add or update {}{} to the index. ",
+                        this.count.get(), name, from);
+            if (this.index.upsertDoc(json, gzip) == null) {
+                log.warn("fail.");
+                return false;
+            }
+        }
+
+        int count = this.count.incrementAndGet();
+        if (DEBUG) {
+            log.debug("Finished adding files. (" + count + ").");
+        }
+
+        // Commit in case the commit count is reached
+        if ((count % this.commitCount) == 0) {
+
+            // This will be done in addition to the
+            // autocommit initiated by KrillIndex
+            this.commit();
+        }
+        return true;
+    }
+
+
+    /**
+     * Index a document, either directly or - in case multiple
+     * threads are configured - by a worker thread.
+     * In case all workers are busy and the queue is full,
+     * the document is indexed by the calling thread.
+     * 
+     * @param task
+     *            The task indexing the document.
+     */
+    private void submit (Runnable task) {
+        if (this.workers == null) {
+            task.run();
+            return;
+        }
+        this.workers.execute(task);
+    }
+
+
+    /**
+     * Start worker threads for concurrent indexing.
+     * 
+     * @param threads
+     *            The number of indexing threads.
+     * @param queueSize
+     *            The maximum number of waiting documents.
+     */
+    private void startWorkers (int threads, int queueSize) {
+        if (threads <= 1)
+            return;
+
+        if (queueSize <= 0)
+            queueSize = threads * 4;
+
+        log.info("Indexing with {} threads", threads);
+
+        final AtomicInteger n = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), r -> {
+                    Thread t = new Thread(r,
+                            "KrillIndexer-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+
+    /**
+     * Wait for all workers to finish indexing.
+     */
+    private void finishWorkers () {
+        if (this.workers == null)
+            return;
+
+        this.workers.shutdown();
+        try {
+            while (!this.workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.info("Waiting for indexing threads to finish ...");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while waiting for indexing threads");
+        }
+        this.workers = null;
+    }
+
+
     /**
      * Commit changes to the index.
      */
@@ -422,6 +490,10 @@ public class Indexer {
         options.addOption(Option.builder().longOpt("progress")
                 .desc("Show progress bar with ETA")
                 .build());
+        options.addOption(Option.builder("t").longOpt("threads")
+                .desc("number of indexing threads (defaults to "
+                        + "krill.index.threads in the configuration).")
+                .hasArg().argName("threads").build());
 
         CommandLineParser parser = new DefaultParser();
 
@@ -430,6 +502,7 @@ public class Indexer {
         String deleteField = null;
         String deleteValue = null;
         boolean showProgress = false;
+        int threads = -1;
         try {
             CommandLine cmd = parser.parse(options, argv);
             log.info("Configuration file: " + cmd.getOptionValue("c"));
@@ -463,18 +536,21 @@ public class Indexer {
             if (cmd.hasOption("progress")) {
                 showProgress = true;
             }
+            if (cmd.hasOption("t")) {
+                threads = Integer.parseInt(cmd.getOptionValue("t"));
+            }
         }
         catch (MissingOptionException e) {
             HelpFormatter formatter = new HelpFormatter();
             String helpSyntax = "Krill indexer\n java -jar Krill-Indexer.jar -c <properties file> "
                     + "[-i <input paths>] [-D <field> <value>] "
-                    + "[-o <output directory> -a --progress]";
+                    + "[-o <output directory> -a --progress -t <threads>]";
             formatter.printHelp(
                     helpSyntax,
                     options);
             return;
         }
-        catch (ParseException e) {
+        catch (ParseException | NumberFormatException e) {
             log.error("Unexpected error: " + e);
             e.printStackTrace();
         }
@@ -486,6 +562,13 @@ public class Indexer {
             // Get indexer object
             Indexer indexer = new Indexer(prop);
 
+            // The command line overrides the configuration, so the
+            // index writer is prepared for all threads
+            if (threads > 0) {
+                indexer.threads = threads;
+                indexer.index.setIndexThreads(threads);
+            }
+
             // Apply max text size from configuration
             if (KrillProperties.maxTextSize > DEFAULT_MAX_STRING_LEN) {
                 log.info("Setting max text length to " + KrillProperties.maxTextSize);
@@ -498,6 +581,10 @@ public class Indexer {
                 indexer.initProgress(totalBytes);
             }
 
+            // Parse and add documents concurrently
+            indexer.startWorkers(indexer.threads,
+                    KrillProperties.indexQueueSize);
+
             // Iterate over list of input paths (auto-detect directories vs zip/tar files)
             if (inputPaths != null) {
                 for (String arg : inputPaths) {
@@ -523,6 +610,8 @@ public class Indexer {
                 }
             }
 
+            indexer.finishWorkers();
+
             if (deleteField != null && deleteValue != null) {
                 indexer.index.delDocs(deleteField, deleteValue);
             }
@@ -537,8 +626,8 @@ public class Indexer {
                 String message = "Added ";
                 if (!addInsteadOfUpsert)
                     message += "or updated ";
-                message += indexer.count + " file";
-                if (indexer.count > 1) {
+                message += indexer.count.get() + " file";
+                if (indexer.count.get() > 1) {
                     message += "s";
                 }
                 System.out.println(message + ".");
@@ -0,0 +1,201 @@
+package de.ids_mannheim.korap.index;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BytesRef;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Load the occurrences of a marker term (e.g. pagebreaks)
+ * in documents of a leaf.
+ *
+ * <p>
+ * The postings of the marker are opened only once per leaf and
+ * advanced monotonically, so all matches of a page in the leaf
+ * can retrieve their markers in a single pass, given they are
+ * requested in document order. The positions and payloads of the
+ * current document are buffered, so multiple matches in
+ * the same document share them.
+ *
+ * @author diewald
+ */
+public class MarkerLoader {
+
+    // This advices the java compiler to ignore all loggings
+    public static final boolean DEBUG = false;
+
+    private final static Logger log = LoggerFactory
+            .getLogger(MarkerLoader.class);
+
+    private final LeafReaderContext atomic;
+    private final String field;
+    private final BytesRef marker;
+
+    private DocsAndPositionsEnum postings;
+    private boolean opened = false, exhausted = false;
+
+    // Buffered markers of the current document
+    private int docID = -1;
+    private int size = 0;
+    private int[] positions = new int[16];
+    private int[] payloadOffsets = new int[17];
+    private byte[] payloads = new byte[256];
+    private final BytesRef payload = new BytesRef();
+
+
+    /**
+     * Construct a new marker loader.
+     *
+     * @param atomic
+     *            The {@link LeafReaderContext}.
+     * @param field
+     *            The token stream field.
+     * @param marker
+     *            The marker term, e.g. <tt>~:base/s:pb</tt>.
+     */
+    public MarkerLoader (LeafReaderContext atomic, String field,
+                         String marker) {
+        this.atomic = atomic;
+        this.field = field;
+        this.marker = new BytesRef(marker);
+    };
+
+
+    /**
+     * Load all markers of a document.
+     *
+     * @param localDocID
+     *            The local document ID.
+     * @return The number of markers in the document.
+     */
+    public int load (int localDocID) {
+        if (localDocID == this.docID)
+            return this.size;
+
+        this.size = 0;
+
+        try {
+
+            // Reopen the postings in case documents are not requested
+            // in ascending order
+            if (!this.opened || localDocID < this.docID) {
+                this.exhausted = !this.open();
+            };
+
+            this.docID = localDocID;
+
+            if (this.exhausted)
+                return 0;
+
+            int doc = this.postings.docID();
+            if (doc < localDocID)
+                doc = this.postings.advance(localDocID);
+
+            if (doc == DocIdSetIterator.NO_MORE_DOCS) {
+                this.exhausted = true;
+                return 0;
+            };
+
+            if (doc != localDocID)
+                return 0;
+
+            final int freq = this.postings.freq();
+            if (this.positions.length < freq) {
+                this.positions = new int[freq];
+                this.payloadOffsets = new int[freq + 1];
+            };
+
+            int offset = 0;
+            for (int i = 0; i < freq; i++) {
+                this.positions[i] = this.postings.nextPosition();
+                final BytesRef pl = this.postings.getPayload();
+                final int length = pl == null ? 0 : pl.length;
+                if (offset + length > this.payloads.length)
+                    this.payloads = Arrays.copyOf(this.payloads,
+                            Math.max(offset + length,
+                                    this.payloads.length << 1));
+                if (length > 0)
+                    System.arraycopy(pl.bytes, pl.offset, this.payloads,
+                            offset, length);
+                this.payloadOffsets[i] = offset;
+                offset += length;
+            };
+            this.payloadOffsets[freq] = offset;
+            this.size = freq;
+        }
+        catch (IOException e) {
+            log.warn("Unable to load markers: {}", e.getMessage());
+            this.size = 0;
+        };
+
+        if (DEBUG)
+            log.trace("Loaded {} markers in doc {}", this.size, localDocID);
+
+        return this.size;
+    };
+
+
+    /**
+     * Get the position of a loaded marker.
+     *
+     * @param i
+     *            The index of the marker in the document.
+     * @return The position of the marker.
+     */
+    public int position (int i) {
+        return this.positions[i];
+    };
+
+
+    /**
+     * Get the payload of a loaded marker.
+     * The returned {@link BytesRef} is reused.
+     *
+     * @param i
+     *            The index of the marker in the document.
+     * @return The payload of the marker.
+     */
+    public BytesRef payload (int i) {
+        this.payload.bytes = this.payloads;
+        this.payload.offset = this.payloadOffsets[i];
+        this.payload.length = this.payloadOffsets[i + 1]
+                - this.payloadOffsets[i];
+        return this.payload;
+    };
+
+
+    /**
+     * Get the leaf of the loader.
+     *
+     * @return The {@link LeafReaderContext}.
+     */
+    public LeafReaderContext getLeafReader () {
+        return this.atomic;
+    };
+
+
+    // Open the postings of the marker
+    private boolean open () throws IOException {
+        this.opened = true;
+        this.postings = null;
+        final Terms terms = this.atomic.reader().terms(this.field);
+        if (terms == null)
+            return false;
+
+        final TermsEnum termsEnum = terms.iterator(null);
+        if (!termsEnum.seekExact(this.marker))
+            return false;
+
+        this.postings = termsEnum.docsAndPositions(null, null,
+                DocsAndPositionsEnum.FLAG_PAYLOADS);
+        return this.postings != null;
+    };
+};
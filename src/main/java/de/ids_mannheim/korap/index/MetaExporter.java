@@ -100,7 +100,7 @@ public class MetaExporter {
             for (int i = 0; i < max; i++) {
                 if (liveDocs != null && !liveDocs.get(i))
                     continue;
-                Document doc = lr.document(i);
+                Document doc = PrimaryData.document(lr, i);
                 for (IndexableField f : doc.getFields()) {
                     String name = f.name();
                     if (!SKIP_FIELDS.contains(name))
@@ -151,7 +151,7 @@ public class MetaExporter {
             for (int i = 0; i < max; i++) {
                 if (liveDocs != null && !liveDocs.get(i))
                     continue;
-                Document doc = lr.document(i);
+                Document doc = PrimaryData.document(lr, i);
 
                 if (format == Format.JSON) {
                     writeJson(out, mapper, doc, fields);
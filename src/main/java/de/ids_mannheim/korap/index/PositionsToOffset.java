@@ -3,27 +3,54 @@ package de.ids_mannheim.korap.index;
 import java.util.*;
 import java.io.*;
 
-import java.nio.ByteBuffer;
-
+import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.DocsAndPositionsEnum;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Resolve token positions of documents in a leaf
+ * to character offsets, based on the <tt>_&lt;pos&gt;</tt>
+ * terms and their payloads.
+ *
+ * <p>
+ * Positions are collected using {@link #add(int, int)} and
+ * resolved lazily in a single batch, sorted by position and
+ * document, so every position term is only seeked once and
+ * its postings are advanced forward only.
+ * Positions and offsets are stored in primitive arrays,
+ * the terms and postings enumerators are reused.
+ * In case the document has a {@link TokenOffsets} table,
+ * the offsets are read blockwise from the table instead.
+ */
 public class PositionsToOffset {
     private String field;
     private LeafReaderContext atomic;
     private boolean processed = false;
-    private Integer[] pair;
-    private ByteBuffer bbOffset;
 
-    HashSet<PositionsToOffsetArray> positions;
-    HashMap<PositionsToOffsetArray, Integer[]> offsets;
+    // Pending positions as (pos << 32 | docID)
+    private long[] positions;
+    private int positionsSize = 0;
+
+    // Resolved offsets as (startOffset << 32 | endOffset)
+    private final LongLongMap offsets;
+
+    // Reusable enumerators
+    private TermsEnum termsEnum;
+    private DocsAndPositionsEnum docs;
+    private final StringBuilder sb = new StringBuilder(12);
+    private final BytesRefBuilder term = new BytesRefBuilder();
+    private int[] block;
+
+    // Loaders of context elements shared by all matches of the leaf
+    private Map<String, ElementLoader> elements;
 
     private final static Logger log = LoggerFactory
             .getLogger(PositionsToOffset.class);
@@ -31,213 +58,202 @@ public class PositionsToOffset {
     // This advices the java compiler to ignore all loggings
     public static final boolean DEBUG = false;
 
-    private class PositionsToOffsetArray {
-        public int docID;
-        public int pos;
-
-
-        public PositionsToOffsetArray (int docID, int pos) {
-            this.docID = docID;
-            this.pos = pos;
-        };
-
-
-        public int hashCode () {
-            long hashCode;
-            hashCode = (docID * Integer.MAX_VALUE) - Integer.MAX_VALUE + pos;
-            return Long.valueOf(hashCode).hashCode();
-        };
-
-
-        public boolean equals (Object obj) {
-            if (obj instanceof PositionsToOffsetArray) {
-                PositionsToOffsetArray ptoa = (PositionsToOffsetArray) obj;
-                return (ptoa.docID == this.docID && ptoa.pos == this.pos);
-            };
-            return false;
-        };
-    };
-
 
     public PositionsToOffset (LeafReaderContext atomic, String field) {
         this.field = field;
         this.atomic = atomic;
-        this.positions = new HashSet<>(64);
-        this.offsets = new HashMap<>(64);
-        this.bbOffset = ByteBuffer.allocate(8);
+        this.positions = new long[64];
+        this.offsets = new LongLongMap(64);
     };
 
 
     public void clear () {
-        this.positions.clear();
+        this.positionsSize = 0;
         this.offsets.clear();
-        this.bbOffset.clear();
         this.processed = false;
     };
 
 
     public void add (int docID, int pos) {
-        this.add(new PositionsToOffsetArray(docID, pos));
-    };
-
-
-    public void add (PositionsToOffsetArray ptoa) {
         if (DEBUG)
-            log.trace("Add positionsToOffsetArray {}/{}", ptoa.docID, ptoa.pos);
-        if (ptoa.pos < 0)
+            log.trace("Add position {}/{}", docID, pos);
+        if (pos < 0)
             return;
 
-        if (this.processed && this.exists(ptoa))
+        final long key = key(docID, pos);
+
+        if (this.offsets.containsKey(key))
             return;
 
         if (DEBUG)
             log.trace("Reopen processing");
 
-        this.positions.add(ptoa);
+        if (this.positionsSize == this.positions.length)
+            this.positions = Arrays.copyOf(this.positions,
+                    this.positionsSize << 1);
+
+        this.positions[this.positionsSize++] = key;
         this.processed = false;
     };
 
 
     public boolean exists (int docID, int pos) {
-        return this.offsets.containsKey(new PositionsToOffsetArray(docID, pos));
-    };
-
-
-    public boolean exists (PositionsToOffsetArray ptoa) {
-        return this.offsets.containsKey(ptoa);
+        return this.offsets.containsKey(key(docID, pos));
     };
 
 
     public int start (int docID, int pos) {
-        return this.start(new PositionsToOffsetArray(docID, pos));
-    };
-
-
-    public int start (PositionsToOffsetArray ptoa) {
-        if (ptoa.pos < 0)
+        if (pos < 0)
             return 0;
 
         if (!processed)
             this.offsets();
 
-        Integer[] pair = this.offsets.get(ptoa);
+        final long pair = this.offsets.get(key(docID, pos));
 
-        if (pair == null)
+        if (pair == LongLongMap.EMPTY)
             return 0;
 
-        return pair[0];
+        return (int) (pair >>> 32);
     };
 
 
     public int end (int docID, int pos) {
-        return this.end(new PositionsToOffsetArray(docID, pos));
-    };
-
-
-    public int end (PositionsToOffsetArray ptoa) {
-        if (ptoa.pos < 0)
+        if (pos < 0)
             return -1;
 
         if (!processed)
             this.offsets();
 
-        Integer[] pair = this.offsets.get(ptoa);
-        if (pair == null)
+        final long pair = this.offsets.get(key(docID, pos));
+
+        if (pair == LongLongMap.EMPTY)
             return -1;
 
-        return pair[1];
+        return (int) pair;
     };
 
 
-    public Integer[] span (int docID, int pos) {
-        return this.span(new PositionsToOffsetArray(docID, pos));
-    };
-
+    public int[] span (int docID, int pos) {
+        if (pos < 0)
+            return null;
 
-    public Integer[] span (PositionsToOffsetArray ptoa) {
         if (!processed)
             this.offsets();
-        return this.offsets.get(ptoa);
+
+        final long pair = this.offsets.get(key(docID, pos));
+
+        if (pair == LongLongMap.EMPTY)
+            return null;
+
+        return new int[] { (int) (pair >>> 32), (int) pair };
     };
 
 
     public void addOffset (int docID, int pos, int startOffset, int endOffset) {
-        offsets.put(new PositionsToOffsetArray(docID, pos),
-                new Integer[] { startOffset, endOffset });
+        if (pos < 0)
+            return;
+        this.offsets.put(key(docID, pos),
+                ((long) startOffset << 32) | (endOffset & 0xFFFFFFFFL));
     };
 
 
-    public HashMap<PositionsToOffsetArray, Integer[]> offsets () {
+    /**
+     * Resolve all pending positions to offsets.
+     */
+    public void offsets () {
         if (processed)
-            return offsets;
+            return;
 
         if (DEBUG)
-            log.trace("Process offsets");
+            log.trace("Process {} offsets", this.positionsSize);
 
-        StringBuilder sb = new StringBuilder().append('_');
+        // Group positions by term and documents in ascending order
+        Arrays.sort(this.positions, 0, this.positionsSize);
 
         try {
-            Terms terms = atomic.reader().fields().terms(field);
+
+            // Read offsets from token offset tables
+            final BinaryDocValues tables = atomic.reader()
+                    .getBinaryDocValues(field + TokenOffsets.SUFFIX);
+            if (tables != null)
+                this.offsetsFromTables(tables);
+
+            final Terms terms = atomic.reader().fields().terms(field);
 
             if (terms != null) {
-                // TODO: Maybe reuse a termsEnum!
+                this.termsEnum = terms.iterator(this.termsEnum);
+
+                long last = -1;
+                int lastPos = -1;
+                boolean found = false;
 
-                final TermsEnum termsEnum = terms.iterator(null);
+                for (int i = 0; i < this.positionsSize; i++) {
+                    final long key = this.positions[i];
 
-                for (PositionsToOffsetArray posDoc : positions) {
-                    if (this.exists(posDoc))
+                    // Skip duplicates and resolved positions
+                    if (key == last || this.offsets.containsKey(key))
                         continue;
+                    last = key;
+
+                    final int pos = (int) (key >>> 32);
+                    final int docID = (int) key;
+
+                    // Seek the position term only once
+                    if (pos != lastPos) {
+                        lastPos = pos;
+                        sb.setLength(0);
+                        sb.append('_').append(pos);
+                        term.copyChars(sb);
+
+                        found = this.termsEnum.seekExact(term.get());
+
+                        // Start an iterator to fetch all payloads of the term
+                        if (found) {
+                            this.docs = this.termsEnum.docsAndPositions(null,
+                                    this.docs,
+                                    DocsAndPositionsEnum.FLAG_PAYLOADS);
+                            found = this.docs != null;
+                        };
+                    };
+
+                    if (!found)
+                        continue;
+
+                    if (DEBUG)
+                        log.trace("Search for _{} in doc {}", pos, docID);
+
+                    // Documents are sorted, so only advance forward
+                    int doc = this.docs.docID();
+                    if (doc < docID)
+                        doc = this.docs.advance(docID);
 
-                    int docID = posDoc.docID;
+                    if (doc == DocIdSetIterator.NO_MORE_DOCS) {
+                        found = false;
+                        continue;
+                    };
 
-                    /*
-                    int pos = posDoc[1];
-                    Integer[] posDoc2 = new Integer[2];
-                    posDoc2[0] = docID;
-                    posDoc2[1] = pos;
-                    */
+                    if (doc != docID)
+                        continue;
 
-                    sb.append(posDoc.pos);
+                    this.docs.nextPosition();
 
-                    Term term = new Term(field, sb.toString());
-                    sb.setLength(1);
+                    final BytesRef payload = this.docs.getPayload();
 
-                    // Set the position in the iterator to the term that is seeked
-                    if (termsEnum.seekExact(term.bytes())) {
+                    if (payload != null && payload.length == 8) {
+                        final byte[] b = payload.bytes;
+                        final int o = payload.offset;
+                        this.addOffset(docID, pos, readInt(b, o),
+                                readInt(b, o + 4));
 
                         if (DEBUG)
-                            log.trace("Search for {} in doc {} with pos {}",
-                                    term.toString(), posDoc.docID, posDoc.pos);
+                            log.trace("Found {}-{} for _{}", readInt(b, o),
+                                    readInt(b, o + 4), pos);
+                    }
 
-                        // Start an iterator to fetch all payloads of the term
-                        DocsAndPositionsEnum docs = termsEnum.docsAndPositions(
-                                null, null, DocsAndPositionsEnum.FLAG_PAYLOADS);
-
-                        if (docs.advance(docID) == docID) {
-                            docs.nextPosition();
-
-                            BytesRef payload = docs.getPayload();
-
-                            if (payload.length == 8) {
-                                bbOffset.clear();
-                                bbOffset.put(payload.bytes, payload.offset, 8);
-                                bbOffset.rewind();
-                                Integer[] offsetArray = new Integer[2];
-                                offsetArray[0] = bbOffset.getInt();
-                                offsetArray[1] = bbOffset.getInt();
-                                offsets.put(posDoc, offsetArray);
-
-                                if (DEBUG)
-                                    log.trace("Found {}-{} for {}",
-                                            offsetArray[0], offsetArray[1],
-                                            term.toString());
-                            }
-
-                            else {
-                                log.error("Doc {} has no offsets stored for {}",
-                                        docID, term.toString());
-                            };
-                        };
+                    else {
+                        log.error("Doc {} has no offsets stored for _{}",
+                                docID, pos);
                     };
                 };
             };
@@ -247,12 +263,158 @@ public class PositionsToOffset {
         };
 
         processed = true;
-        positions.clear();
-        return offsets;
+        this.positionsSize = 0;
+    };
+
+
+    // Resolve pending positions by reading blocks of token offset tables
+    private void offsetsFromTables (BinaryDocValues tables) {
+        if (this.block == null)
+            this.block = new int[TokenOffsets.BLOCK_SIZE << 1];
+
+        int lastDoc = -1;
+        BytesRef table = null;
+        for (int i = 0; i < this.positionsSize; i++) {
+            final long key = this.positions[i];
+            if (this.offsets.containsKey(key))
+                continue;
+
+            final int pos = (int) (key >>> 32);
+            final int docID = (int) key;
+
+            if (docID != lastDoc) {
+                table = tables.get(docID);
+                lastDoc = docID;
+            };
+
+            // Add all offsets of the block
+            final int length = TokenOffsets.readBlock(table, pos, this.block);
+            final int first = pos - (pos % TokenOffsets.BLOCK_SIZE);
+            for (int j = 0; j < length; j++) {
+                if (this.block[(j << 1) + 1] != -1)
+                    this.addOffset(docID, first + j, this.block[j << 1],
+                            this.block[(j << 1) + 1]);
+            };
+        };
     };
 
 
     public LeafReaderContext getLeafReader () {
         return this.atomic;
     };
+
+
+    /**
+     * Get a loader for elements in the leaf,
+     * shared by all users of this object.
+     *
+     * @param field
+     *            The token stream field.
+     * @param element
+     *            The element, e.g. <tt>base/s:s</tt>.
+     * @return The {@link ElementLoader}.
+     */
+    public ElementLoader getElementLoader (String field, String element) {
+        if (this.elements == null)
+            this.elements = new HashMap<>(4);
+
+        return this.elements.computeIfAbsent(field + '\t' + element,
+                k -> new ElementLoader(this.atomic, null, field, element));
+    };
+
+
+    // Create a key sorted by position first
+    private static long key (int docID, int pos) {
+        return ((long) pos << 32) | (docID & 0xFFFFFFFFL);
+    };
+
+
+    // Read a big endian integer
+    private static int readInt (byte[] b, int o) {
+        return ((b[o] & 0xFF) << 24) | ((b[o + 1] & 0xFF) << 16)
+                | ((b[o + 2] & 0xFF) << 8) | (b[o + 3] & 0xFF);
+    };
+
+
+    /*
+     * Open addressing hash map with primitive, non-negative
+     * long keys and long values.
+     */
+    private static final class LongLongMap {
+        static final long EMPTY = Long.MIN_VALUE;
+
+        private long[] keys;
+        private long[] values;
+        private int size = 0;
+        private int mask;
+
+
+        LongLongMap (int capacity) {
+            int cap = Integer.highestOneBit(Math.max(4, capacity) - 1) << 1;
+            this.keys = new long[cap];
+            this.values = new long[cap];
+            this.mask = cap - 1;
+            Arrays.fill(this.keys, -1L);
+        };
+
+
+        private int slot (long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            int i = (int) (h ^ (h >>> 32)) & this.mask;
+            while (this.keys[i] != -1L && this.keys[i] != key)
+                i = (i + 1) & this.mask;
+            return i;
+        };
+
+
+        boolean containsKey (long key) {
+            return this.keys[this.slot(key)] == key;
+        };
+
+
+        long get (long key) {
+            final int i = this.slot(key);
+            return this.keys[i] == key ? this.values[i] : EMPTY;
+        };
+
+
+        void put (long key, long value) {
+            int i = this.slot(key);
+            if (this.keys[i] != key) {
+                if ((this.size + 1) << 1 > this.keys.length) {
+                    this.grow();
+                    i = this.slot(key);
+                };
+                this.keys[i] = key;
+                this.size++;
+            };
+            this.values[i] = value;
+        };
+
+
+        void clear () {
+            if (this.size == 0)
+                return;
+            Arrays.fill(this.keys, -1L);
+            this.size = 0;
+        };
+
+
+        private void grow () {
+            final long[] oldKeys = this.keys;
+            final long[] oldValues = this.values;
+            final int cap = oldKeys.length << 1;
+            this.keys = new long[cap];
+            this.values = new long[cap];
+            this.mask = cap - 1;
+            Arrays.fill(this.keys, -1L);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == -1L)
+                    continue;
+                final int j = this.slot(oldKeys[i]);
+                this.keys[j] = oldKeys[i];
+                this.values[j] = oldValues[i];
+            };
+        };
+    };
 };
@@ -0,0 +1,378 @@
+package de.ids_mannheim.korap.index;
+
+import static de.ids_mannheim.korap.util.KrillString.codePointSubstring;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.StoredFieldVisitor;
+
+/**
+ * Primary data of a document stored in chunks of a fixed
+ * number of code points.
+ *
+ * <p>
+ * Instead of storing the primary data as a single stored field,
+ * the data is split into chunks that are stored as separate values
+ * after all other stored fields of the document, preceded by an
+ * info field with the chunk size and the length of the data.
+ * Retrieving a snippet only reads the chunks covering the snippet
+ * window and stops reading the stored fields afterwards,
+ * so long texts don't need to be decompressed and materialized
+ * completely.
+ *
+ * <p>
+ * Chunked storage is enabled at index time by setting
+ * <tt>krill.index.primaryData.chunkSize</tt>.
+ *
+ * @author diewald
+ */
+public final class PrimaryData {
+
+    // Suffixes of the stored fields
+    public static final String INFO_SUFFIX = "#info";
+    public static final String CHUNK_SUFFIX = "#chunk";
+
+    private final LeafReader reader;
+    private final int localDocID;
+    private final String chunkField;
+    private final int chunkSize;
+    private final int length;
+    private final int codePoints;
+
+    // The last loaded window of chunks
+    private int firstChunk = -1, lastChunk = -1;
+    private String window;
+
+
+    // Construct primary data based on the info field
+    private PrimaryData (LeafReader reader, int localDocID, String field,
+                         byte[] info) {
+        final ByteBuffer bb = ByteBuffer.wrap(info);
+        this.reader = reader;
+        this.localDocID = localDocID;
+        this.chunkField = field + CHUNK_SUFFIX;
+        this.chunkSize = bb.getInt();
+        this.length = bb.getInt();
+        this.codePoints = bb.getInt();
+    };
+
+
+    /**
+     * Add the primary data in chunks to a document.
+     * The info fields of all primary data fields need to be
+     * added before all chunk fields, and the chunk fields
+     * need to be the last stored fields of the document.
+     *
+     * @param doc
+     *            The {@link Document}.
+     * @param field
+     *            The name of the primary data field.
+     * @param text
+     *            The primary data.
+     * @param chunkSize
+     *            The number of code points per chunk.
+     * @param chunks
+     *            <tt>true</tt> to add the chunk fields,
+     *            <tt>false</tt> to add the info field.
+     */
+    public static void addFields (Document doc, String field, String text,
+                                  int chunkSize, boolean chunks) {
+        if (!chunks) {
+            final ByteBuffer info = ByteBuffer.allocate(12);
+            info.putInt(chunkSize);
+            info.putInt(text.length());
+            info.putInt(text.codePointCount(0, text.length()));
+            doc.add(new StoredField(field + INFO_SUFFIX, info.array()));
+            return;
+        };
+
+        int start = 0;
+        while (start < text.length()) {
+            int end = start;
+            for (int i = 0; i < chunkSize && end < text.length(); i++)
+                end += Character.charCount(text.codePointAt(end));
+            doc.add(new StoredField(field + CHUNK_SUFFIX,
+                    text.substring(start, end)));
+            start = end;
+        };
+    };
+
+
+    /**
+     * Check, if a stored field is part of chunked primary data.
+     *
+     * @param name
+     *            The name of the field.
+     * @return <tt>true</tt> in case the field is part of
+     *         chunked primary data.
+     */
+    public static boolean isPrimaryDataField (String name) {
+        return name.endsWith(CHUNK_SUFFIX) || name.endsWith(INFO_SUFFIX);
+    };
+
+
+    /**
+     * Load all stored fields of a document, except for
+     * chunked primary data.
+     *
+     * @param reader
+     *            The {@link LeafReader}.
+     * @param localDocID
+     *            The local document ID.
+     * @return The {@link Document}.
+     * @throws IOException
+     */
+    public static Document document (LeafReader reader, int localDocID)
+            throws IOException {
+        final Loader loader = new Loader(null, null);
+        reader.document(localDocID, loader);
+        return loader.getDocument();
+    };
+
+
+    /**
+     * Get the length of the primary data
+     * (i.e. the number of characters).
+     *
+     * @return The length of the primary data.
+     */
+    public int length () {
+        return this.length;
+    };
+
+
+    /**
+     * Get the number of code points of the primary data.
+     *
+     * @return The number of code points.
+     */
+    public int codePointCount () {
+        return this.codePoints;
+    };
+
+
+    /**
+     * Get the primary data between two code point offsets,
+     * reading only the chunks covering the window.
+     *
+     * @param start
+     *            The starting code point offset.
+     * @param end
+     *            The ending code point offset.
+     * @return The substring of the primary data.
+     * @throws IndexOutOfBoundsException
+     *             In case the offsets exceed the primary data.
+     */
+    public String substring (int start, int end) {
+        if (start < 0 || end < start || end > this.codePoints)
+            throw new IndexOutOfBoundsException(
+                    "Offsets " + start + "-" + end + " exceed primary data");
+
+        final int first = start / this.chunkSize;
+        final int last = Math.max(first, (end - 1) / this.chunkSize);
+        final String window = this.load(first, last);
+        final int offset = first * this.chunkSize;
+        return codePointSubstring(window, start - offset, end - offset);
+    };
+
+
+    /**
+     * Get the primary data starting at a code point offset.
+     *
+     * @param start
+     *            The starting code point offset.
+     * @return The substring of the primary data.
+     */
+    public String substring (int start) {
+        return this.substring(start, this.codePoints);
+    };
+
+
+    @Override
+    public String toString () {
+        return this.substring(0, this.codePoints);
+    };
+
+
+    // Load a window of chunks
+    private String load (final int first, final int last) {
+        if (first >= this.firstChunk && last <= this.lastChunk) {
+            final int skip = (first - this.firstChunk) * this.chunkSize;
+            return this.window.substring(this.window.offsetByCodePoints(0,
+                    skip));
+        };
+
+        final StringBuilder sb = new StringBuilder(
+                (last - first + 1) * this.chunkSize);
+        try {
+            this.reader.document(this.localDocID, new StoredFieldVisitor() {
+                int chunk = 0;
+
+                @Override
+                public Status needsField (FieldInfo fieldInfo) {
+                    if (!fieldInfo.name.equals(chunkField))
+                        return Status.NO;
+                    final int c = chunk++;
+                    if (c < first)
+                        return Status.NO;
+                    if (c > last)
+                        return Status.STOP;
+                    return Status.YES;
+                };
+
+
+                @Override
+                public void stringField (FieldInfo fieldInfo, String value) {
+                    sb.append(value);
+                };
+            });
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to read primary data", e);
+        };
+
+        this.firstChunk = first;
+        this.lastChunk = last;
+        this.window = sb.toString();
+        return this.window;
+    };
+
+
+    /**
+     * Visitor loading the stored fields of a document
+     * without reading chunked primary data.
+     * The primary data of a given field can be retrieved
+     * afterwards using {@link #getPrimaryData()}.
+     */
+    public static class Loader extends StoredFieldVisitor {
+        private final DocumentStoredFieldVisitor visitor;
+        private final String infoField;
+        private byte[] info;
+        private LeafReader reader;
+        private int localDocID;
+
+        /**
+         * Construct a new loader.
+         *
+         * @param fields
+         *            The fields to load or <tt>null</tt>
+         *            to load all fields.
+         * @param field
+         *            The primary data field or <tt>null</tt>
+         *            if no primary data is requested.
+         */
+        public Loader (Set<String> fields, String field) {
+            this.visitor = fields == null ? new DocumentStoredFieldVisitor()
+                    : new DocumentStoredFieldVisitor(fields);
+            this.infoField = field == null ? null : field + INFO_SUFFIX;
+        };
+
+
+        /**
+         * Load the stored fields of a document.
+         *
+         * @param reader
+         *            The {@link LeafReader}.
+         * @param localDocID
+         *            The local document ID.
+         * @return The loader for chaining.
+         * @throws IOException
+         */
+        public Loader load (LeafReader reader, int localDocID)
+                throws IOException {
+            this.reader = reader;
+            this.localDocID = localDocID;
+            reader.document(localDocID, this);
+            return this;
+        };
+
+
+        @Override
+        public Status needsField (FieldInfo fieldInfo) throws IOException {
+
+            // Chunks are always the last stored fields
+            if (fieldInfo.name.endsWith(CHUNK_SUFFIX))
+                return Status.STOP;
+
+            if (fieldInfo.name.endsWith(INFO_SUFFIX))
+                return fieldInfo.name.equals(this.infoField) ? Status.YES
+                        : Status.NO;
+
+            return this.visitor.needsField(fieldInfo);
+        };
+
+
+        @Override
+        public void binaryField (FieldInfo fieldInfo, byte[] value)
+                throws IOException {
+            if (fieldInfo.name.equals(this.infoField))
+                this.info = value;
+            else
+                this.visitor.binaryField(fieldInfo, value);
+        };
+
+
+        @Override
+        public void stringField (FieldInfo fieldInfo, String value)
+                throws IOException {
+            this.visitor.stringField(fieldInfo, value);
+        };
+
+
+        @Override
+        public void intField (FieldInfo fieldInfo, int value) {
+            this.visitor.intField(fieldInfo, value);
+        };
+
+
+        @Override
+        public void longField (FieldInfo fieldInfo, long value) {
+            this.visitor.longField(fieldInfo, value);
+        };
+
+
+        @Override
+        public void floatField (FieldInfo fieldInfo, float value) {
+            this.visitor.floatField(fieldInfo, value);
+        };
+
+
+        @Override
+        public void doubleField (FieldInfo fieldInfo, double value) {
+            this.visitor.doubleField(fieldInfo, value);
+        };
+
+
+        /**
+         * Get the loaded {@link Document}.
+         *
+         * @return The {@link Document}.
+         */
+        public Document getDocument () {
+            return this.visitor.getDocument();
+        };
+
+
+        /**
+         * Get the chunked primary data of the requested field.
+         *
+         * @return The {@link PrimaryData} or <tt>null</tt>,
+         *         in case the primary data is not stored in chunks.
+         */
+        public PrimaryData getPrimaryData () {
+            if (this.info == null)
+                return null;
+            return new PrimaryData(this.reader, this.localDocID,
+                    this.infoField.substring(0,
+                            this.infoField.length() - INFO_SUFFIX.length()),
+                    this.info);
+        };
+    };
+};
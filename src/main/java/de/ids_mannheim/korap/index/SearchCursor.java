@@ -0,0 +1,120 @@
+package de.ids_mannheim.korap.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * Cursor to continue a search after the last match of a page.
+ *
+ * <p>
+ * The cursor remembers the position of the spans after the last
+ * match of a page, i.e. the leaf, the document, and the number of
+ * spans enumerated in this document, together with the number of
+ * matches and documents counted so far. A search for the following
+ * page can then skip all leaves before the position and advance the
+ * spans directly to the document, instead of enumerating all
+ * former matches again.
+ *
+ * <p>
+ * Cursors are only valid for the same query, collection and
+ * items per resource on an unchanged index. They are passed as
+ * opaque strings and contain the fingerprint of the index reader,
+ * so they are invalidated as soon as the reader changes.
+ *
+ * @author diewald
+ */
+public record SearchCursor(String fingerprint, int queryHash, int collHash,
+                           short itemsPerResource, int leaf, int localDocID,
+                           int docSpans, long matchCount,
+                           long matchDocCount) {
+
+    // Version of the serialization
+    private static final byte VERSION = 1;
+
+
+    /**
+     * Check, if the cursor can be used to continue a search.
+     *
+     * @param fingerprint
+     *            The fingerprint of the current index reader.
+     * @param queryHash
+     *            The hash of the rewritten query.
+     * @param collHash
+     *            The hash of the collection filter.
+     * @param itemsPerResource
+     *            The number of items per resource.
+     * @return <tt>true</tt> in case the cursor is valid.
+     */
+    public boolean isValid (String fingerprint, int queryHash, int collHash,
+                            short itemsPerResource) {
+        return this.fingerprint.equals(fingerprint)
+                && this.queryHash == queryHash && this.collHash == collHash
+                && this.itemsPerResource == itemsPerResource;
+    };
+
+
+    /**
+     * Serialize the cursor as an opaque, URL safe string.
+     *
+     * @return The serialized cursor.
+     */
+    public String encode () {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeUTF(this.fingerprint);
+            out.writeInt(this.queryHash);
+            out.writeInt(this.collHash);
+            out.writeShort(this.itemsPerResource);
+            out.writeInt(this.leaf);
+            out.writeInt(this.localDocID);
+            out.writeInt(this.docSpans);
+            out.writeLong(this.matchCount);
+            out.writeLong(this.matchDocCount);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        };
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(bytes.toByteArray());
+    };
+
+
+    /**
+     * Deserialize a cursor.
+     *
+     * @param cursor
+     *            The serialized cursor.
+     * @return The {@link SearchCursor} or <tt>null</tt>
+     *         in case the cursor is malformed.
+     */
+    public static SearchCursor decode (String cursor) {
+        if (cursor == null || cursor.isEmpty())
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                Base64.getUrlDecoder().decode(cursor)))) {
+            if (in.readByte() != VERSION)
+                return null;
+
+            final SearchCursor sc = new SearchCursor(in.readUTF(),
+                    in.readInt(), in.readInt(), in.readShort(), in.readInt(),
+                    in.readInt(), in.readInt(), in.readLong(), in.readLong());
+
+            // Check for trailing data and invalid positions
+            if (in.available() != 0 || sc.leaf < 0 || sc.localDocID < 0
+                    || sc.docSpans < 1 || sc.matchCount < 0
+                    || sc.matchDocCount < 0 || sc.matchCount > Integer.MAX_VALUE)
+                return null;
+
+            return sc;
+        }
+        catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    };
+};
@@ -0,0 +1,228 @@
+package de.ids_mannheim.korap.index;
+
+import java.io.IOException;
+
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteArrayDataOutput;
+import org.apache.lucene.util.BitUtil;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Table of the character offsets of all token positions
+ * of a document, stored as a binary DocValues field.
+ *
+ * <p>
+ * The offsets are identical to the payloads of the
+ * <tt>_&lt;pos&gt;</tt> terms, but stored contiguously,
+ * so the offsets of a window of tokens can be read at once
+ * without seeking the term dictionary for every position.
+ *
+ * <p>
+ * The table is split into blocks of {@value #BLOCK_SIZE} positions.
+ * It starts with the number of positions (vInt) and the byte offsets
+ * of all blocks relative to the first block (int), followed by
+ * the blocks. Every position is encoded as the token length
+ * plus one (vInt, <tt>0</tt> for positions without offsets),
+ * followed by the zigzag encoded distance of the start offset to
+ * the end offset of the former position in the block (vInt).
+ *
+ * @author diewald
+ */
+public final class TokenOffsets {
+
+    // Suffix of the DocValues field
+    public static final String SUFFIX = "#offsets";
+
+    // Number of positions per block
+    public static final int BLOCK_SIZE = 64;
+
+
+    private TokenOffsets () {};
+
+
+    /**
+     * Add the token offset table of a token stream to a document.
+     * Nothing is added, in case the stream has no offsets.
+     *
+     * @param doc
+     *            The {@link Document}.
+     * @param field
+     *            The name of the token stream field.
+     * @param ts
+     *            The {@link MultiTermTokenStream}.
+     */
+    public static void addField (Document doc, String field,
+                                 MultiTermTokenStream ts) {
+        final BytesRef table = encode(ts);
+        if (table != null)
+            doc.add(new BinaryDocValuesField(field + SUFFIX, table));
+    };
+
+
+    /**
+     * Encode the token offsets of a token stream.
+     *
+     * @param ts
+     *            The {@link MultiTermTokenStream}.
+     * @return The encoded table or <tt>null</tt>, in case
+     *         the stream has no offsets.
+     */
+    public static BytesRef encode (MultiTermTokenStream ts) {
+        final int size = ts.getSize();
+        final int[] starts = new int[size];
+        final int[] ends = new int[size];
+        int n = 0;
+
+        for (int i = 0; i < size; i++) {
+            for (MultiTerm mt : ts.get(i).terms) {
+                final int pos = position(mt.term);
+                if (pos < 0 || pos >= size)
+                    continue;
+
+                // Offsets are stored in the payload of the term
+                if (mt.start != mt.end) {
+                    if (mt.payload != null)
+                        continue;
+                    starts[pos] = mt.start;
+                    ends[pos] = mt.end;
+                }
+                else if (mt.payload != null && mt.payload.length == 8) {
+                    starts[pos] = readInt(mt.payload.bytes,
+                            mt.payload.offset);
+                    ends[pos] = readInt(mt.payload.bytes,
+                            mt.payload.offset + 4);
+                }
+                else {
+                    continue;
+                };
+
+                // Invalid offsets are only available as terms
+                if (ends[pos] < starts[pos]) {
+                    starts[pos] = 0;
+                    ends[pos] = 0;
+                    continue;
+                };
+
+                // Mark position as existing
+                ends[pos]++;
+                n = Math.max(n, pos + 1);
+            };
+        };
+
+        if (n == 0)
+            return null;
+
+        final int blocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        final byte[] data = new byte[n * 10];
+        final ByteArrayDataOutput out = new ByteArrayDataOutput(data);
+        final int[] blockOffsets = new int[blocks];
+
+        try {
+            int prevEnd = 0;
+            for (int pos = 0; pos < n; pos++) {
+                if (pos % BLOCK_SIZE == 0) {
+                    blockOffsets[pos / BLOCK_SIZE] = out.getPosition();
+                    prevEnd = 0;
+                };
+
+                // Position has no offsets
+                if (ends[pos] == 0) {
+                    out.writeVInt(0);
+                    continue;
+                };
+
+                final int end = ends[pos] - 1;
+                out.writeVInt(end - starts[pos] + 1);
+                out.writeVInt(BitUtil.zigZagEncode(starts[pos] - prevEnd));
+                prevEnd = end;
+            };
+
+            final byte[] table = new byte[5 + blocks * 4 + out.getPosition()];
+            final ByteArrayDataOutput header = new ByteArrayDataOutput(table);
+            header.writeVInt(n);
+            for (int offset : blockOffsets)
+                header.writeInt(offset);
+            header.writeBytes(data, 0, out.getPosition());
+            return new BytesRef(table, 0, header.getPosition());
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    };
+
+
+    /**
+     * Read the block of token offsets containing a position.
+     * The block starts at the position
+     * <tt>pos - pos % {@value #BLOCK_SIZE}</tt>.
+     *
+     * @param table
+     *            The encoded table of a document.
+     * @param pos
+     *            The requested position.
+     * @param offsets
+     *            Array of at least <tt>2 * {@value #BLOCK_SIZE}</tt>
+     *            integers to be filled with pairs of start and end
+     *            offsets. Positions without offsets have
+     *            the end offset <tt>-1</tt>.
+     * @return The number of positions read, <tt>0</tt>
+     *         in case the table doesn't contain the position.
+     */
+    public static int readBlock (BytesRef table, int pos, int[] offsets) {
+        if (table == null || table.length == 0 || pos < 0)
+            return 0;
+
+        final ByteArrayDataInput in = new ByteArrayDataInput(table.bytes,
+                table.offset, table.length);
+        final int n = in.readVInt();
+        if (pos >= n)
+            return 0;
+
+        final int blocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        final int block = pos / BLOCK_SIZE;
+        final int dataStart = in.getPosition() + blocks * 4;
+
+        in.setPosition(in.getPosition() + block * 4);
+        in.setPosition(dataStart + in.readInt());
+
+        final int length = Math.min(n - block * BLOCK_SIZE, BLOCK_SIZE);
+        int prevEnd = 0;
+        for (int i = 0; i < length; i++) {
+            final int chars = in.readVInt();
+            if (chars == 0) {
+                offsets[i << 1] = 0;
+                offsets[(i << 1) + 1] = -1;
+                continue;
+            };
+            final int start = prevEnd + BitUtil.zigZagDecode(in.readVInt());
+            prevEnd = start + chars - 1;
+            offsets[i << 1] = start;
+            offsets[(i << 1) + 1] = prevEnd;
+        };
+        return length;
+    };
+
+
+    // Get the position of a position term or -1
+    private static int position (String term) {
+        if (term == null || term.length() < 2 || term.charAt(0) != '_')
+            return -1;
+        int pos = 0;
+        for (int i = 1; i < term.length(); i++) {
+            final char c = term.charAt(i);
+            if (c < '0' || c > '9' || pos > (Integer.MAX_VALUE - 9) / 10)
+                return -1;
+            pos = pos * 10 + (c - '0');
+        };
+        return pos;
+    };
+
+
+    // Read a big endian integer
+    private static int readInt (byte[] b, int o) {
+        return ((b[o] & 0xFF) << 24) | ((b[o + 1] & 0xFF) << 16)
+                | ((b[o + 2] & 0xFF) << 8) | (b[o + 3] & 0xFF);
+    };
+};
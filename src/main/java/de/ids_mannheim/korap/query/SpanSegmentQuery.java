@@ -1,16 +1,22 @@
 package de.ids_mannheim.korap.query;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.spans.SpanMultiTermQueryWrapper;
+import org.apache.lucene.search.spans.SpanOrQuery;
 import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
 import org.apache.lucene.search.spans.Spans;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.ToStringUtils;
 
+import de.ids_mannheim.korap.query.spans.MultipleSegmentSpans;
 import de.ids_mannheim.korap.query.spans.SegmentSpans;
 
 /**
@@ -25,6 +31,9 @@ import de.ids_mannheim.korap.query.spans.SegmentSpans;
  * &quot;tt/p:NN&quot;)));
  * </pre>
  * 
+ * Nested segment queries of terms are intersected at once
+ * using {@link MultipleSegmentSpans}.
+ * 
  * @author margaretha
  */
 public class SpanSegmentQuery extends SimpleSpanQuery {
@@ -72,11 +81,65 @@ public class SpanSegmentQuery extends SimpleSpanQuery {
     @Override
     public Spans getSpans (LeafReaderContext context, Bits acceptDocs,
             Map<Term, TermContext> termContexts) throws IOException {
+        final List<SpanQuery> operands = new ArrayList<SpanQuery>();
+        if (this.collectOperands(operands))
+            return (Spans) new MultipleSegmentSpans(this, operands, context,
+                    acceptDocs, termContexts);
+
         return (Spans) new SegmentSpans(this, context, acceptDocs,
                 termContexts);
     }
 
 
+    /**
+     * Collects the operands of this query and all nested segment
+     * queries, that can be intersected independent of their order.
+     * 
+     * @param operands
+     *            the list of operands
+     * @return <code>true</code> if the operands can be intersected
+     *         at once, otherwise <code>false</code>.
+     */
+    private boolean collectOperands (List<SpanQuery> operands) {
+        // Relations are matched by their ids
+        if (isRelation)
+            return false;
+
+        for (SpanQuery clause : new SpanQuery[] { firstClause,
+                secondClause }) {
+            if (clause instanceof SpanSegmentQuery) {
+                if (!((SpanSegmentQuery) clause).collectOperands(operands))
+                    return false;
+            }
+            else if (isTermOperand(clause)) {
+                operands.add(clause);
+            }
+            else {
+                return false;
+            };
+        };
+        return true;
+    }
+
+
+    // Check, if the operand is a term or an alternation of terms,
+    // so its spans are sorted and have no ids to match
+    private static boolean isTermOperand (SpanQuery clause) {
+        if (clause instanceof SpanTermQuery
+                || clause instanceof SpanMultiTermQueryWrapper)
+            return true;
+
+        if (clause instanceof SpanOrQuery) {
+            for (SpanQuery sq : ((SpanOrQuery) clause).getClauses()) {
+                if (!isTermOperand(sq))
+                    return false;
+            };
+            return true;
+        };
+        return false;
+    }
+
+
     @Override
     public SpanSegmentQuery clone () {
         SpanSegmentQuery spanSegmentQuery = new SpanSegmentQuery(
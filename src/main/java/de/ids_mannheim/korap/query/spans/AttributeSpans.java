@@ -2,7 +2,6 @@ package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -81,7 +80,7 @@ public class AttributeSpans extends SimpleSpans {
         super(spanAttributeQuery, context, acceptDocs, termContexts);
         this.hasSpanId = true;
 
-        candidateList = new ArrayList<>();
+        candidateList = new CandidateQueue<>();
         hasMoreSpans = firstSpans.next();
         if (hasMoreSpans) {
             currentDoc = firstSpans.doc();
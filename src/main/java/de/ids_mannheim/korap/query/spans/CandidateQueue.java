@@ -0,0 +1,291 @@
+package de.ids_mannheim.korap.query.spans;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * Array backed list of candidates, used by span enumerations
+ * to collect candidates at the end and consume them from the
+ * beginning.
+ *
+ * <p>
+ * In contrast to {@link java.util.ArrayList}, the elements are
+ * stored in a ring buffer, so removing the first element
+ * (e.g. by <tt>remove(0)</tt> or by an iterator) is done in
+ * constant time instead of shifting all following elements.
+ * Insertions and removals in the middle of the queue shift
+ * the elements of the shorter side only.
+ * {@link #sort(Comparator)} sorts the buffer in place and
+ * {@link #removeIf(Predicate)} compacts the buffer in a single pass.
+ * The buffer is reused after {@link #clear()}.
+ *
+ * @author diewald
+ *
+ * @param <E>
+ *            The type of the candidates.
+ */
+public class CandidateQueue<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final Object[] EMPTY = new Object[0];
+
+    private Object[] elements;
+    private int head = 0;
+    private int size = 0;
+
+
+    /**
+     * Construct a new empty queue.
+     */
+    public CandidateQueue () {
+        this.elements = EMPTY;
+    };
+
+
+    /**
+     * Construct a new empty queue with an initial capacity.
+     *
+     * @param capacity
+     *            The initial capacity.
+     */
+    public CandidateQueue (int capacity) {
+        this.elements = capacity > 0 ? new Object[capacity] : EMPTY;
+    };
+
+
+    @Override
+    public int size () {
+        return this.size;
+    };
+
+
+    @Override
+    public boolean isEmpty () {
+        return this.size == 0;
+    };
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get (int index) {
+        this.checkIndex(index, this.size);
+        return (E) this.elements[this.slot(index)];
+    };
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set (int index, E element) {
+        this.checkIndex(index, this.size);
+        final int i = this.slot(index);
+        final E old = (E) this.elements[i];
+        this.elements[i] = element;
+        return old;
+    };
+
+
+    @Override
+    public boolean add (E element) {
+        this.ensureCapacity(this.size + 1);
+        this.elements[this.slot(this.size)] = element;
+        this.size++;
+        this.modCount++;
+        return true;
+    };
+
+
+    @Override
+    public void add (int index, E element) {
+        this.checkIndex(index, this.size + 1);
+        this.ensureCapacity(this.size + 1);
+        final int length = this.elements.length;
+
+        // Shift the leading elements to the left
+        if (index < this.size >> 1) {
+            this.head = (this.head - 1 + length) % length;
+            for (int i = 0; i < index; i++)
+                this.elements[this.slot(i)] = this.elements[this.slot(i + 1)];
+        }
+
+        // Shift the trailing elements to the right
+        else {
+            for (int i = this.size; i > index; i--)
+                this.elements[this.slot(i)] = this.elements[this.slot(i - 1)];
+        };
+
+        this.elements[this.slot(index)] = element;
+        this.size++;
+        this.modCount++;
+    };
+
+
+    @Override
+    public boolean addAll (Collection<? extends E> c) {
+        this.ensureCapacity(this.size + c.size());
+        for (E e : c)
+            this.add(e);
+        return !c.isEmpty();
+    };
+
+
+    @Override
+    public E remove (int index) {
+        final E old = this.get(index);
+
+        // Shift the leading elements to the right
+        if (index < this.size >> 1) {
+            for (int i = index; i > 0; i--)
+                this.elements[this.slot(i)] = this.elements[this.slot(i - 1)];
+            this.elements[this.head] = null;
+            this.head = this.slot(1);
+        }
+
+        // Shift the trailing elements to the left
+        else {
+            for (int i = index; i < this.size - 1; i++)
+                this.elements[this.slot(i)] = this.elements[this.slot(i + 1)];
+            this.elements[this.slot(this.size - 1)] = null;
+        };
+
+        this.size--;
+        if (this.size == 0)
+            this.head = 0;
+        this.modCount++;
+        return old;
+    };
+
+
+    /**
+     * Get the first element of the queue without removing it.
+     *
+     * @return The first element or <tt>null</tt>,
+     *         in case the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E peek () {
+        return this.size == 0 ? null : (E) this.elements[this.head];
+    };
+
+
+    /**
+     * Remove the first element of the queue.
+     *
+     * @return The first element or <tt>null</tt>,
+     *         in case the queue is empty.
+     */
+    public E poll () {
+        return this.size == 0 ? null : this.remove(0);
+    };
+
+
+    /**
+     * Remove the first element of the queue.
+     *
+     * @return The first element.
+     * @throws NoSuchElementException
+     *             in case the queue is empty.
+     */
+    public E removeFirst () {
+        if (this.size == 0)
+            throw new NoSuchElementException();
+        return this.remove(0);
+    };
+
+
+    @Override
+    public void clear () {
+        if (this.size == 0)
+            return;
+
+        // Release references without shrinking the buffer
+        for (int i = 0; i < this.size; i++)
+            this.elements[this.slot(i)] = null;
+        this.head = 0;
+        this.size = 0;
+        this.modCount++;
+    };
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean removeIf (Predicate<? super E> filter) {
+        int kept = 0;
+        for (int i = 0; i < this.size; i++) {
+            final Object e = this.elements[this.slot(i)];
+            if (!filter.test((E) e)) {
+                this.elements[this.slot(kept++)] = e;
+            };
+        };
+
+        if (kept == this.size)
+            return false;
+
+        for (int i = kept; i < this.size; i++)
+            this.elements[this.slot(i)] = null;
+        this.size = kept;
+        this.modCount++;
+        return true;
+    };
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void sort (Comparator<? super E> c) {
+        this.compact();
+        Arrays.sort((E[]) this.elements, 0, this.size, c);
+        this.modCount++;
+    };
+
+
+    // Get the buffer position of the element at the index
+    private int slot (int index) {
+        final int i = this.head + index;
+        return i < this.elements.length ? i : i - this.elements.length;
+    };
+
+
+    // Move all elements to the beginning of the buffer
+    private void compact () {
+        if (this.head == 0)
+            return;
+
+        if (this.head + this.size <= this.elements.length) {
+            System.arraycopy(this.elements, this.head, this.elements, 0,
+                    this.size);
+            Arrays.fill(this.elements, Math.max(this.size, this.head),
+                    this.head + this.size, null);
+        }
+        else {
+            final Object[] copy = new Object[this.elements.length];
+            for (int i = 0; i < this.size; i++)
+                copy[i] = this.elements[this.slot(i)];
+            this.elements = copy;
+        };
+        this.head = 0;
+    };
+
+
+    // Grow the buffer
+    private void ensureCapacity (int capacity) {
+        if (capacity <= this.elements.length)
+            return;
+
+        final Object[] copy = new Object[Math.max(capacity,
+                Math.max(8, this.elements.length << 1))];
+        for (int i = 0; i < this.size; i++)
+            copy[i] = this.elements[this.slot(i)];
+        this.elements = copy;
+        this.head = 0;
+    };
+
+
+    private void checkIndex (int index, int size) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", Size: " + size);
+    };
+};
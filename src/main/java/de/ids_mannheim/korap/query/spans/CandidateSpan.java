@@ -20,6 +20,11 @@ public class CandidateSpan implements Comparable<CandidateSpan>, Cloneable {
     private Collection<byte[]> payloads;
     private int position;
 
+    // Payloads stored in a payload arena, materialized on request
+    private byte[] payloadChunk;
+    private int payloadOffset, payloadCount;
+    private static final byte[] NO_PAYLOADS = new byte[0];
+
     // Child spans are used in multiple distance queries with unordered constraint
     private CandidateSpan childSpan;
     private CandidateSpan secondChildSpan;
@@ -42,15 +47,50 @@ public class CandidateSpan implements Comparable<CandidateSpan>, Cloneable {
      * @throws IOException
      */
     public CandidateSpan (Spans span) throws IOException {
+        this(span, (PayloadArena) null);
+    }
+
+
+    /**
+     * Constructs a CandidateSpan for the given Span, storing its
+     * payloads in the given {@link PayloadArena} instead of copying
+     * them into a new list. The payloads are copied from the arena
+     * on the first request.
+     * 
+     * @param span
+     *            a Span
+     * @param arena
+     *            the payload arena of the span enumeration or
+     *            <code>null</code> to copy the payloads
+     * @throws IOException
+     */
+    public CandidateSpan (Spans span, PayloadArena arena) throws IOException {
         this.doc = span.doc();
         this.start = span.start();
         this.end = span.end();
         this.cost = span.cost();
 
-        this.payloads = new ArrayList<>();
-        if (span.isPayloadAvailable()) {
-            setPayloads(span.getPayload());
+        if (arena == null) {
+            this.payloads = new ArrayList<>();
+            if (span.isPayloadAvailable()) {
+                setPayloads(span.getPayload());
+            }
+        }
+        else {
+            Collection<byte[]> payload = null;
+            if (span.isPayloadAvailable())
+                payload = span.getPayload();
+
+            if (payload == null || payload.isEmpty()) {
+                this.payloadChunk = NO_PAYLOADS;
+            }
+            else {
+                this.payloadOffset = arena.store(payload);
+                this.payloadChunk = arena.chunk();
+                this.payloadCount = payload.size();
+            }
         }
+
         if (span instanceof SimpleSpans) {
             SimpleSpans temp = (SimpleSpans) span;
             this.spanId = temp.getSpanId();
@@ -82,6 +122,26 @@ public class CandidateSpan implements Comparable<CandidateSpan>, Cloneable {
     }
 
 
+    /**
+     * Constructs a CandidateSpan for the given Span and element
+     * position, storing its payloads in the given
+     * {@link PayloadArena}.
+     * 
+     * @param span
+     *            a Span
+     * @param position
+     *            an element position
+     * @param arena
+     *            the payload arena of the span enumeration
+     * @throws IOException
+     */
+    public CandidateSpan (Spans span, int position, PayloadArena arena)
+            throws IOException {
+        this(span, arena);
+        this.position = position;
+    }
+
+
     /**
      * Constructs a CandidateSpan from all the given variables which
      * are
@@ -111,6 +171,16 @@ public class CandidateSpan implements Comparable<CandidateSpan>, Cloneable {
 
     @Override
     protected CandidateSpan clone () throws CloneNotSupportedException {
+
+        // Share the immutable payloads in the arena
+        if (this.payloadChunk != null) {
+            CandidateSpan cs = new CandidateSpan(this.start, this.end,
+                    this.doc, this.cost, null);
+            cs.payloadChunk = this.payloadChunk;
+            cs.payloadOffset = this.payloadOffset;
+            cs.payloadCount = this.payloadCount;
+            return cs;
+        }
         return new CandidateSpan(this.start, this.end, this.doc, this.cost,
                 this.payloads);
     }
@@ -185,6 +255,11 @@ public class CandidateSpan implements Comparable<CandidateSpan>, Cloneable {
      * @return the payloads
      */
     public Collection<byte[]> getPayloads () {
+        if (payloadChunk != null) {
+            payloads = PayloadArena.read(payloadChunk, payloadOffset,
+                    payloadCount);
+            payloadChunk = null;
+        }
         return payloads;
     }
 
@@ -197,6 +272,7 @@ public class CandidateSpan implements Comparable<CandidateSpan>, Cloneable {
      */
     public void setPayloads (Collection<byte[]> payloads) {
 
+        this.payloadChunk = null;
         this.payloads = new ArrayList<>();
         for (byte[] b : payloads) {
             if (b == null)
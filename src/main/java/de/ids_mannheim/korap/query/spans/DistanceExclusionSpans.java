@@ -158,7 +158,7 @@ public class DistanceExclusionSpans extends DistanceSpans {
         if (collectPayloads && firstSpans.isPayloadAvailable())
             matchPayload.addAll(firstSpans.getPayload());
 
-        setMatchFirstSpan(new CandidateSpan(firstSpans));
+        setMatchFirstSpan(new CandidateSpan(firstSpans, payloadArena));
     }
 
 
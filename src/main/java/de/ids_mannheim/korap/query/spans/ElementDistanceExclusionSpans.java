@@ -1,7 +1,6 @@
 package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -79,8 +78,8 @@ public class ElementDistanceExclusionSpans extends DistanceSpans {
 
         elementPosition = 0;
         this.isOrdered = query.isOrdered();
-        candidateList = new ArrayList<CandidateSpan>();
-        targetList = new ArrayList<CandidateSpan>();
+        candidateList = new CandidateQueue<CandidateSpan>();
+        targetList = new CandidateQueue<CandidateSpan>();
         
         if (hasMoreSpans)
             currentDocNum = firstSpans.doc();
@@ -161,7 +160,8 @@ public class ElementDistanceExclusionSpans extends DistanceSpans {
         if (candidateList.isEmpty()) {
             if (isFirstSpanInElement()) {
                 setMatchProperties(
-                        new CandidateSpan(firstSpans, elementPosition));
+                        new CandidateSpan(firstSpans, elementPosition,
+                                payloadArena));
                 hasMoreSpans = firstSpans.next();
                 return true;
             }
@@ -239,7 +239,7 @@ public class ElementDistanceExclusionSpans extends DistanceSpans {
 
         if (isFirstSpanInElement()) {
             CandidateSpan target = new CandidateSpan(firstSpans,
-                    elementPosition);
+                    elementPosition, payloadArena);
             hasMoreSpans = firstSpans.next();
             // Checking if the secondspans in the *left* side are not within the
             // distance range
@@ -280,7 +280,8 @@ public class ElementDistanceExclusionSpans extends DistanceSpans {
                     && firstSpans.doc() == currentDocNum) {
                 if (advanceElementTo(firstSpans)) {
                     targetList.add(
-                            new CandidateSpan(firstSpans, elementPosition));
+                            new CandidateSpan(firstSpans, elementPosition,
+                                    payloadArena));
                 }
                 hasMoreSpans = firstSpans.next();
                 continue;
@@ -288,7 +289,8 @@ public class ElementDistanceExclusionSpans extends DistanceSpans {
             // collects only second spans occurring inside an element
             if (advanceElementTo(secondSpans)) {
                 candidateList
-                        .add(new CandidateSpan(secondSpans, elementPosition));
+                        .add(new CandidateSpan(secondSpans, elementPosition,
+                                payloadArena));
             }
             hasMoreSecondSpans = secondSpans.next();
         }
@@ -307,7 +309,8 @@ public class ElementDistanceExclusionSpans extends DistanceSpans {
                 && secondSpans.start() < firstSpans.end()) {
             if (advanceElementTo(secondSpans)) {
                 candidateList
-                        .add(new CandidateSpan(secondSpans, elementPosition));
+                        .add(new CandidateSpan(secondSpans, elementPosition,
+                                payloadArena));
                 filterCandidateList(elementPosition);
             }
             hasMoreSecondSpans = secondSpans.next();
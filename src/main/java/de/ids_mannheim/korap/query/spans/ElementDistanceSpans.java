@@ -115,7 +115,8 @@ public class ElementDistanceSpans extends OrderedDistanceSpans {
                 && firstSpans.start() < secondSpans.end()) {
             if (advanceElementTo(firstSpans)) {
                 candidateList
-                        .add(new CandidateSpan(firstSpans, elementPosition));
+                        .add(new CandidateSpan(firstSpans, elementPosition,
+                                payloadArena));
                 filterCandidateList(elementPosition);
             }
             hasMoreFirstSpans = firstSpans.next();
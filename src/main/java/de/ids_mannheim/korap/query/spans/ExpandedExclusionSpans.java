@@ -84,7 +84,7 @@ public class ExpandedExclusionSpans extends SimpleSpans {
         this.notClause = secondSpans;
         this.hasMoreNotClause = notClause.next();
 
-        candidateSpans = new ArrayList<CandidateSpan>();
+        candidateSpans = new CandidateQueue<CandidateSpan>();
         hasMoreSpans = firstSpans.next();
     }
 
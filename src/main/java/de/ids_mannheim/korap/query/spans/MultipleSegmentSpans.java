@@ -0,0 +1,470 @@
+package de.ids_mannheim.korap.query.spans;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.util.Bits;
+
+import de.ids_mannheim.korap.index.Deadline;
+import de.ids_mannheim.korap.query.SpanSegmentQuery;
+
+/**
+ * MultipleSegmentSpans is an enumeration of Span matches in which
+ * multiple child spans have exactly the same start and end
+ * positions. It replaces a chain of nested {@link SegmentSpans},
+ * e.g. for <tt>[orth=der &amp; pos=ART &amp; morph=nom]</tt>.
+ *
+ * <p>
+ * The child spans are ordered by their cost in the leaf, i.e. the
+ * number of documents they occur in, so documents are leapfrogged
+ * starting with the rarest child spans. In a shared document, the
+ * positions of the child spans are buffered in sorted arrays, one
+ * child spans after the other, and the positions common to all
+ * buffered child spans are intersected with the next buffer using
+ * exponential search. Child spans are not buffered anymore, as soon
+ * as no common positions remain in the document. Buffers are reused
+ * for all documents.
+ *
+ * <p>
+ * Matches are independent of the order of the child spans:
+ * For every span of the first child spans, a match is returned,
+ * in case all other child spans have a span with the same positions.
+ * Payloads are collected in the order of the child spans in the
+ * query, taking the first span with the positions of the other child
+ * spans.
+ *
+ * @author diewald
+ */
+public class MultipleSegmentSpans extends SimpleSpans {
+
+    // Child spans in the order of the query
+    private final Spans[] spans;
+
+    // Indices of child spans in the order of their costs
+    private final int[] ordered;
+
+    // Buffered positions and payloads of the current document
+    private final SpanBuffer[] buffers;
+    private final long cost;
+
+    // Sorted positions shared by all child spans in the current
+    // document
+    private long[] common = new long[16];
+    private int commonSize = 0;
+    private int commonIndex = 0;
+
+    // Index of the current span in the buffers
+    private final int[] cursors;
+    private int doc = -1;
+
+
+    /**
+     * Creates MultipleSegmentSpans from the given
+     * {@link SpanSegmentQuery} and its operands.
+     *
+     * @param spanSegmentQuery
+     *            a SpanSegmentQuery
+     * @param operands
+     *            the operands of the query and its nested
+     *            segment queries
+     * @param context
+     * @param acceptDocs
+     * @param termContexts
+     * @throws IOException
+     */
+    public MultipleSegmentSpans (SpanSegmentQuery spanSegmentQuery,
+                                 List<SpanQuery> operands,
+                                 LeafReaderContext context, Bits acceptDocs,
+                                 Map<Term, TermContext> termContexts)
+            throws IOException {
+        super(spanSegmentQuery);
+        collectPayloads = true;
+
+        final int size = operands.size();
+        this.spans = new Spans[size];
+        this.buffers = new SpanBuffer[size];
+        this.cursors = new int[size];
+        final long[] costs = new long[size];
+        for (int i = 0; i < size; i++) {
+            this.spans[i] = operands.get(i).getSpans(context, acceptDocs,
+                    termContexts);
+            this.buffers[i] = new SpanBuffer();
+            costs[i] = this.spans[i].cost();
+        };
+
+        // Order by the number of documents in the leaf,
+        // the order is stable for spans with equal costs
+        final Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(costs[a], costs[b]));
+        this.ordered = new int[size];
+        for (int i = 0; i < size; i++)
+            this.ordered[i] = order[i];
+        this.cost = costs[this.ordered[0]];
+
+        // Start with the rarest spans, so the enumeration
+        // is stopped early, in case they don't occur at all
+        hasMoreSpans = true;
+        for (int i : this.ordered) {
+            if (!this.spans[i].next()) {
+                hasMoreSpans = false;
+                break;
+            };
+        };
+    }
+
+
+    @Override
+    public boolean next () throws IOException {
+        isStartEnumeration = false;
+        matchPayload.clear();
+
+        // Every span of the first child spans is a match
+        if (this.commonIndex < this.commonSize) {
+            final SpanBuffer first = this.buffers[0];
+            final int k = this.cursors[0] + 1;
+            if (k < first.size
+                    && first.positions[k] == this.common[this.commonIndex]) {
+                this.cursors[0] = k;
+                this.setMatch();
+                return true;
+            };
+            this.commonIndex++;
+        };
+
+        if (this.commonIndex < this.commonSize) {
+            this.seekCommon();
+            this.setMatch();
+            return true;
+        };
+        return this.advance(this.doc + 1);
+    }
+
+
+    @Override
+    public boolean skipTo (int target) throws IOException {
+        // Skip beyond the current match
+        if (this.doc >= target)
+            return this.next();
+
+        isStartEnumeration = false;
+        matchPayload.clear();
+        return this.advance(target);
+    }
+
+
+    /**
+     * Advances to the first match in a document
+     * greater than or equal to the target.
+     *
+     * @return <code>true</code> if a match is found,
+     *         <code>false</code> otherwise.
+     * @throws IOException
+     */
+    private boolean advance (int target) throws IOException {
+        this.commonSize = 0;
+        this.commonIndex = 0;
+
+        while (hasMoreSpans) {
+            if (!this.alignDocs(target))
+                return false;
+
+            this.doc = this.spans[this.ordered[0]].doc();
+            target = this.doc + 1;
+
+            if (this.intersect()) {
+                this.seekCommon();
+                this.setMatch();
+                return true;
+            };
+        };
+        return false;
+    }
+
+
+    /**
+     * Leapfrogs all child spans to the same document.
+     *
+     * @return <code>true</code> if such a document exists.
+     * @throws IOException
+     */
+    private boolean alignDocs (int target) throws IOException {
+        for (Spans s : this.spans) {
+            if (s.doc() > target)
+                target = s.doc();
+        };
+
+        for (int i = 0; i < this.ordered.length;) {
+            final Spans s = this.spans[this.ordered[i]];
+            if (s.doc() < target) {
+                deadline.check();
+                if (!s.skipTo(target)) {
+                    hasMoreSpans = false;
+                    return false;
+                };
+            };
+
+            // Restart with the rarest spans
+            if (s.doc() > target) {
+                target = s.doc();
+                i = 0;
+                continue;
+            };
+            i++;
+        };
+        return true;
+    }
+
+
+    /**
+     * Intersects the positions of all child spans
+     * in the current document, starting with the rarest.
+     *
+     * @return <code>true</code> if common positions exist in the
+     *         document.
+     * @throws IOException
+     */
+    private boolean intersect () throws IOException {
+        final SpanBuffer lead = this.buffers[this.ordered[0]];
+        if (!lead.load(this.spans[this.ordered[0]], this.doc, deadline))
+            hasMoreSpans = false;
+
+        // Unique positions of the rarest spans
+        if (this.common.length < lead.size)
+            this.common = new long[lead.size];
+        int size = 0;
+        for (int k = 0; k < lead.size; k++) {
+            if (size == 0 || this.common[size - 1] != lead.positions[k])
+                this.common[size++] = lead.positions[k];
+        };
+
+        for (int i = 1; i < this.ordered.length && size > 0; i++) {
+            final SpanBuffer buffer = this.buffers[this.ordered[i]];
+            if (!buffer.load(this.spans[this.ordered[i]], this.doc,
+                    deadline))
+                hasMoreSpans = false;
+
+            int kept = 0;
+            for (int k = 0, from = 0; k < size; k++) {
+                from = buffer.gallop(this.common[k], from);
+                if (from == buffer.size)
+                    break;
+                if (buffer.positions[from] == this.common[k])
+                    this.common[kept++] = this.common[k];
+            };
+            size = kept;
+        };
+
+        this.commonSize = size;
+        this.commonIndex = 0;
+        Arrays.fill(this.cursors, 0);
+        return size > 0;
+    }
+
+
+    // Move all cursors to the current common position
+    private void seekCommon () {
+        final long position = this.common[this.commonIndex];
+        for (int i = 0; i < this.buffers.length; i++) {
+            this.cursors[i] = this.buffers[i].gallop(position,
+                    this.cursors[i]);
+        };
+    }
+
+
+    // Set the match to the current common position
+    private void setMatch () {
+        final long position = this.common[this.commonIndex];
+        matchDocNumber = this.doc;
+        matchStartPosition = (int) (position >>> 32);
+        matchEndPosition = (int) position;
+
+        // Collect payloads in the order of the query
+        if (collectPayloads) {
+            for (int i = 0; i < this.buffers.length; i++)
+                this.buffers[i].addPayloads(this.cursors[i], matchPayload);
+        };
+    }
+
+
+    @Override
+    public long cost () {
+        return this.cost;
+    }
+
+
+    /*
+     * Reusable buffer of the positions and payloads of spans
+     * in a document, sorted by start and end positions.
+     */
+    private static final class SpanBuffer {
+        // Positions as (start << 32 | end)
+        long[] positions = new long[16];
+        int size = 0;
+
+        // Payloads of span k are the chunks
+        // chunkStarts[k] to chunkStarts[k + 1]
+        int[] chunkStarts = new int[17];
+        int[] chunkOffsets = new int[16];
+        int[] chunkLengths = new int[16];
+        byte[] arena = new byte[256];
+        int chunks = 0, arenaSize = 0;
+
+
+        /*
+         * Read all spans of the document and advance the spans
+         * to the next document. Returns false, in case the spans
+         * are exhausted.
+         */
+        boolean load (Spans s, int doc, Deadline deadline)
+                throws IOException {
+            this.size = 0;
+            this.chunks = 0;
+            this.arenaSize = 0;
+            boolean sorted = true;
+            boolean more = true;
+
+            while (more && s.doc() == doc) {
+                deadline.check();
+                final long position = ((long) s.start() << 32)
+                        | (s.end() & 0xFFFFFFFFL);
+
+                if (this.size == this.positions.length) {
+                    final int length = this.size << 1;
+                    this.positions = Arrays.copyOf(this.positions, length);
+                    this.chunkStarts = Arrays.copyOf(this.chunkStarts,
+                            length + 1);
+                };
+
+                if (this.size > 0 && this.positions[this.size - 1] > position)
+                    sorted = false;
+
+                this.positions[this.size] = position;
+                this.chunkStarts[this.size] = this.chunks;
+                if (s.isPayloadAvailable()) {
+                    for (byte[] payload : s.getPayload())
+                        this.addChunk(payload);
+                };
+                this.size++;
+                this.chunkStarts[this.size] = this.chunks;
+                more = s.next();
+            };
+
+            // Spans may only be sorted by start positions
+            if (!sorted)
+                this.sort();
+
+            return more;
+        };
+
+
+        // Get the first index >= from with a position >= target
+        int gallop (long target, int from) {
+            if (from >= this.size || this.positions[from] >= target)
+                return from;
+
+            // Exponential search for the upper bound
+            int low = from, step = 1, high = from + 1;
+            while (high < this.size && this.positions[high] < target) {
+                low = high;
+                step <<= 1;
+                high = from + step;
+            };
+            if (high > this.size)
+                high = this.size;
+
+            // Binary search for the first position >= target
+            // in (low, high]
+            low++;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (this.positions[mid] < target)
+                    low = mid + 1;
+                else
+                    high = mid;
+            };
+            return low;
+        };
+
+
+        // Add copies of the payloads of span k
+        void addPayloads (int k, Collection<byte[]> payloads) {
+            for (int c = this.chunkStarts[k]; c < this.chunkStarts[k
+                    + 1]; c++) {
+                payloads.add(Arrays.copyOfRange(this.arena,
+                        this.chunkOffsets[c],
+                        this.chunkOffsets[c] + this.chunkLengths[c]));
+            };
+        };
+
+
+        private void addChunk (byte[] payload) {
+            if (this.chunks == this.chunkOffsets.length) {
+                this.chunkOffsets = Arrays.copyOf(this.chunkOffsets,
+                        this.chunks << 1);
+                this.chunkLengths = Arrays.copyOf(this.chunkLengths,
+                        this.chunks << 1);
+            };
+            if (this.arenaSize + payload.length > this.arena.length) {
+                this.arena = Arrays.copyOf(this.arena, Math.max(
+                        this.arenaSize + payload.length,
+                        this.arena.length << 1));
+            };
+            System.arraycopy(payload, 0, this.arena, this.arenaSize,
+                    payload.length);
+            this.chunkOffsets[this.chunks] = this.arenaSize;
+            this.chunkLengths[this.chunks] = payload.length;
+            this.arenaSize += payload.length;
+            this.chunks++;
+        };
+
+
+        // Stable insertion sort of spans by positions,
+        // as spans are mostly sorted
+        private void sort () {
+            final int[] starts = Arrays.copyOf(this.chunkStarts,
+                    this.size + 1);
+            final int[] index = new int[this.size];
+            for (int k = 0; k < this.size; k++)
+                index[k] = k;
+
+            for (int k = 1; k < this.size; k++) {
+                final long position = this.positions[k];
+                final int idx = index[k];
+                int j = k - 1;
+                while (j >= 0 && this.positions[j] > position) {
+                    this.positions[j + 1] = this.positions[j];
+                    index[j + 1] = index[j];
+                    j--;
+                };
+                this.positions[j + 1] = position;
+                index[j + 1] = idx;
+            };
+
+            // Reorder the payload chunks
+            final int[] offsets = Arrays.copyOf(this.chunkOffsets,
+                    this.chunks);
+            final int[] lengths = Arrays.copyOf(this.chunkLengths,
+                    this.chunks);
+            int c = 0;
+            for (int k = 0; k < this.size; k++) {
+                this.chunkStarts[k] = c;
+                for (int o = starts[index[k]]; o < starts[index[k] + 1]; o++) {
+                    this.chunkOffsets[c] = offsets[o];
+                    this.chunkLengths[c] = lengths[o];
+                    c++;
+                };
+            };
+            this.chunkStarts[this.size] = c;
+        };
+    };
+}
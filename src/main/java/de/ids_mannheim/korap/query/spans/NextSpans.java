@@ -2,7 +2,6 @@ package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -56,8 +55,8 @@ public class NextSpans extends SimpleSpans {
         super(spanNextQuery, context, acceptDocs, termContexts);
         collectPayloads = spanNextQuery.isCollectPayloads();
         hasMoreSpans = secondSpans.next();
-        matchList = new ArrayList<>();
-        candidateList = new ArrayList<>();
+        matchList = new CandidateQueue<>();
+        candidateList = new CandidateQueue<>();
     }
 
 
@@ -180,19 +179,18 @@ public class NextSpans extends SimpleSpans {
         if (DEBUG) {
             log.debug("CandidateList: {}", candidateList.toString());
         };
-        Iterator<CandidateSpan> i = candidateList.iterator();
-        CandidateSpan cs;
-        while (i.hasNext()) {
-            cs = i.next();
-
-            if (cs.getStart() == firstSpans.end()) {
+        final int start = firstSpans.start();
+        final int end = firstSpans.end();
+        for (int i = 0; i < candidateList.size(); i++) {
+            CandidateSpan cs = candidateList.get(i);
+            if (cs.getStart() == end) {
                 addMatch(cs);
             }
-            else if (cs.getEnd() < firstSpans.end() 
-                    && cs.getStart() <firstSpans.start()){
-                i.remove();
-            }
         }
+
+        // Remove outdated candidates in a single pass
+        candidateList.removeIf(cs -> cs.getStart() != end
+                && cs.getEnd() < end && cs.getStart() < start);
     }
 
 
@@ -226,8 +224,10 @@ public class NextSpans extends SimpleSpans {
                               firstSpans.doc(), secondSpans.doc(), candidateListDocNum);
                 };
                 
-                candidateList.add(new CandidateSpan(secondSpans));
-                addMatch(new CandidateSpan(secondSpans));
+                CandidateSpan cs = new CandidateSpan(secondSpans,
+                        payloadArena);
+                candidateList.add(cs);
+                addMatch(cs);
             }
             hasMoreSpans = secondSpans.next();
         }
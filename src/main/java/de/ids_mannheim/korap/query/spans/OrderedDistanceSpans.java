@@ -1,7 +1,6 @@
 package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -49,7 +48,7 @@ public abstract class OrderedDistanceSpans extends DistanceSpans {
 
         hasMoreFirstSpans = firstSpans.next();
 
-        candidateList = new ArrayList<>();
+        candidateList = new CandidateQueue<>();
         candidateListIndex = -1;
         if (hasMoreFirstSpans){
             candidateListDocNum = firstSpans.doc();
@@ -140,7 +139,7 @@ public abstract class OrderedDistanceSpans extends DistanceSpans {
             boolean isDistanceZero) throws IOException {
 
         setMatchFirstSpan(candidateSpan);
-        setMatchSecondSpan(new CandidateSpan(secondSpans));
+        setMatchSecondSpan(new CandidateSpan(secondSpans, payloadArena));
 
         if (isDistanceZero) {
             matchStartPosition = Math.min(candidateSpan.getStart(),
@@ -0,0 +1,125 @@
+package de.ids_mannheim.korap.query.spans;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Append-only storage for payloads of {@link CandidateSpan}s,
+ * shared by all candidates of a span enumeration.
+ *
+ * <p>
+ * Instead of copying every payload of a candidate into a new
+ * <tt>byte[]</tt> and a new list, the payloads are copied into
+ * a chunk of the arena, as a sequence of
+ *
+ * <pre>
+ * int    length of the payload or -1 for null
+ * byte[] payload
+ * </pre>
+ *
+ * The candidate only refers to the chunk, the offset and the
+ * number of payloads, and materializes the payloads on request.
+ * As most candidates are discarded without becoming part of a match,
+ * their payloads are never materialized.
+ * Written chunk regions are never overwritten, so chunks are freed
+ * by the garbage collector as soon as no candidate refers to them.
+ *
+ * @author diewald
+ */
+public class PayloadArena {
+
+    // Size of chunks, larger payloads get a chunk of their own
+    private static final int CHUNK_SIZE = 8192;
+
+    private byte[] chunk;
+    private int pos = 0;
+
+
+    /**
+     * Store payloads in the arena.
+     * The chunk the payloads were written to can be retrieved
+     * by {@link #chunk()} afterwards.
+     *
+     * @param payloads
+     *            The payloads to store.
+     * @return The offset of the payloads in the chunk.
+     */
+    public int store (Collection<byte[]> payloads) {
+        int length = 0;
+        for (byte[] b : payloads)
+            length += 4 + (b == null ? 0 : b.length);
+
+        if (this.chunk == null || this.pos + length > this.chunk.length) {
+            this.chunk = new byte[Math.max(CHUNK_SIZE, length)];
+            this.pos = 0;
+        };
+
+        final int offset = this.pos;
+        int p = offset;
+        for (byte[] b : payloads) {
+            p = writeInt(this.chunk, p, b == null ? -1 : b.length);
+            if (b != null) {
+                System.arraycopy(b, 0, this.chunk, p, b.length);
+                p += b.length;
+            };
+        };
+        this.pos = p;
+        return offset;
+    };
+
+
+    /**
+     * Get the chunk the last payloads were stored in.
+     *
+     * @return The current chunk.
+     */
+    public byte[] chunk () {
+        return this.chunk;
+    };
+
+
+    /**
+     * Materialize payloads stored in a chunk.
+     *
+     * @param chunk
+     *            The chunk of the payloads.
+     * @param offset
+     *            The offset of the payloads in the chunk.
+     * @param count
+     *            The number of payloads.
+     * @return A new list of copies of the payloads.
+     */
+    public static List<byte[]> read (byte[] chunk, int offset, int count) {
+        final List<byte[]> payloads = new ArrayList<>(Math.max(count, 1));
+        int p = offset;
+        for (int i = 0; i < count; i++) {
+            final int length = readInt(chunk, p);
+            p += 4;
+            if (length < 0) {
+                payloads.add(null);
+                continue;
+            };
+            final byte[] b = new byte[length];
+            System.arraycopy(chunk, p, b, 0, length);
+            payloads.add(b);
+            p += length;
+        };
+        return payloads;
+    };
+
+
+    private static int writeInt (byte[] b, int p, int value) {
+        b[p] = (byte) (value >>> 24);
+        b[p + 1] = (byte) (value >>> 16);
+        b[p + 2] = (byte) (value >>> 8);
+        b[p + 3] = (byte) value;
+        return p + 4;
+    };
+
+
+    private static int readInt (byte[] b, int p) {
+        return ((b[p] & 0xFF) << 24) | ((b[p + 1] & 0xFF) << 16)
+                | ((b[p + 2] & 0xFF) << 8) | (b[p + 3] & 0xFF);
+    };
+};
@@ -97,7 +97,7 @@ public class RelationSpans extends RelationBaseSpans {
         sourceClass = relationSpanQuery.getSourceClass();
         targetClass = relationSpanQuery.getTargetClass();
 
-        candidateList = new ArrayList<>();
+        candidateList = new CandidateQueue<>();
         relationTermSpan = firstSpans;
         hasMoreSpans = relationTermSpan.next();
     }
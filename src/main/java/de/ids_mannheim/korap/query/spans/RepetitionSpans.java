@@ -56,8 +56,8 @@ public class RepetitionSpans extends SimpleSpans {
         super(query, context, acceptDocs, termContexts);
         this.min = query.getMin();
         this.max = query.getMax();
-        matchList = new ArrayList<CandidateSpan>();
-        candidates = new ArrayList<CandidateSpan>();
+        matchList = new CandidateQueue<CandidateSpan>();
+        candidates = new CandidateQueue<CandidateSpan>();
         hasMoreSpans = firstSpans.next();
     }
 
@@ -116,7 +116,7 @@ public class RepetitionSpans extends SimpleSpans {
             candidates.remove(0);
         }
         else {
-            startSpan = new CandidateSpan(firstSpans);
+            startSpan = new CandidateSpan(firstSpans, payloadArena);
         }
 
         List<CandidateSpan> adjacentSpans = new ArrayList<CandidateSpan>();
@@ -148,7 +148,7 @@ public class RepetitionSpans extends SimpleSpans {
             };
 
             if (firstSpans.start() > prevSpan.getEnd()) {
-                candidates.add(new CandidateSpan(firstSpans));
+                candidates.add(new CandidateSpan(firstSpans, payloadArena));
                 break;
             }
 
@@ -157,13 +157,13 @@ public class RepetitionSpans extends SimpleSpans {
              *     for "ab{2,3}c" and a match like "abbbbbbbbbbbbbbbbbbbbbbbbbbc".
              */
             else if (firstSpans.start() == prevSpan.getEnd()) {
-                prevSpan = new CandidateSpan(firstSpans);
+                prevSpan = new CandidateSpan(firstSpans, payloadArena);
                 adjacentSpans.add(prevSpan);
             }
 
             // firstSpan.start() < prevSpan.getEnd()
             else {
-                candidates.add(new CandidateSpan(firstSpans));
+                candidates.add(new CandidateSpan(firstSpans, payloadArena));
             }
         }
         return adjacentSpans;
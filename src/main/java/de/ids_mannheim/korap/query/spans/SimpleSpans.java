@@ -14,6 +14,7 @@ import org.apache.lucene.util.Bits;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.ids_mannheim.korap.index.Deadline;
 import de.ids_mannheim.korap.query.SimpleSpanQuery;
 
 /**
@@ -40,6 +41,12 @@ public abstract class SimpleSpans extends Spans {
 
     protected byte payloadTypeIdentifier;
 
+    // Deadline of the request, polled while skipping documents
+    protected final Deadline deadline = Deadline.current();
+
+    // Storage for payloads of candidates collected by this enumeration
+    protected final PayloadArena payloadArena = new PayloadArena();
+
 
     public SimpleSpans () {
         collectPayloads = true;
@@ -69,6 +76,20 @@ public abstract class SimpleSpans extends Spans {
     }
 
 
+    /**
+     * Constructs SimpleSpans for the given {@link SimpleSpanQuery},
+     * without creating the enumerations of its clauses.
+     * 
+     * @param simpleSpanQuery
+     *            a SimpleSpanQuery
+     */
+    protected SimpleSpans (SimpleSpanQuery simpleSpanQuery) {
+        this();
+        query = simpleSpanQuery;
+        collectPayloads = query.isCollectPayloads();
+    }
+
+
     /**
      * If the current x and y are not in the same document, to skip
      * the
@@ -82,6 +103,7 @@ public abstract class SimpleSpans extends Spans {
      */
     protected boolean ensureSameDoc (Spans x, Spans y) throws IOException {
         while (hasMoreSpans && x.doc() != y.doc()) {
+            deadline.check();
             if (x.doc() < y.doc()) {
                 if (!x.skipTo(y.doc())) {
                     hasMoreSpans = false;
@@ -97,7 +97,7 @@ public class SpansWithAttribute extends SimpleSpans {
             LeafReaderContext context, Bits acceptDocs,
             Map<Term, TermContext> termContexts) throws IOException {
 
-        attributeList = new ArrayList<AttributeSpans>();
+        attributeList = new CandidateQueue<AttributeSpans>();
         notAttributeList = new ArrayList<AttributeSpans>();
 
         List<SpanQuery> attributeList = swaq.getClauseList();
@@ -1,7 +1,6 @@
 package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -77,7 +76,7 @@ public class TokenDistanceSpans extends OrderedDistanceSpans {
      * 
      */
     private void copyPossibleCandidates () {
-        List<CandidateSpan> temp = new ArrayList<>();
+        List<CandidateSpan> temp = new CandidateQueue<>();
         for (CandidateSpan cs : candidateList) {
             if (cs.getEnd() + maxDistance > secondSpans.start())
                 temp.add(cs);
@@ -95,7 +94,7 @@ public class TokenDistanceSpans extends OrderedDistanceSpans {
                 && firstSpans.start() < secondSpans.end()) {
 
             if (firstSpans.end() + maxDistance > secondSpans.start())
-                candidateList.add(new CandidateSpan(firstSpans));
+                candidateList.add(new CandidateSpan(firstSpans, payloadArena));
 
             hasMoreFirstSpans = firstSpans.next();
         }
@@ -1,7 +1,6 @@
 package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -53,9 +52,9 @@ public abstract class UnorderedDistanceSpans extends DistanceSpans {
         minDistance = query.getMinDistance();
         maxDistance = query.getMaxDistance();
 
-        firstSpanList = new ArrayList<CandidateSpan>();
-        secondSpanList = new ArrayList<CandidateSpan>();
-        matchList = new ArrayList<CandidateSpan>();
+        firstSpanList = new CandidateQueue<CandidateSpan>();
+        secondSpanList = new CandidateQueue<CandidateSpan>();
+        matchList = new CandidateQueue<CandidateSpan>();
 
         hasMoreFirstSpans = firstSpans.next();
         hasMoreSecondSpans = secondSpans.next();
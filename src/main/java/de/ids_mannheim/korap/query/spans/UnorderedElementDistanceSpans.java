@@ -1,7 +1,6 @@
 package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -59,7 +58,7 @@ public class UnorderedElementDistanceSpans extends UnorderedDistanceSpans {
                 termContexts);
         hasMoreElements = elements.next();
         elementPosition = 0;
-        elementList = new ArrayList<CandidateSpan>();
+        elementList = new CandidateQueue<CandidateSpan>();
     }
 
 
@@ -128,7 +127,8 @@ public class UnorderedElementDistanceSpans extends UnorderedDistanceSpans {
         while (hasMoreSpan && span.doc() == currentDocNum) {
             position = findElementPosition(span);
             if (position != -1) {
-                list.add(new CandidateSpan(span, position));
+                list.add(new CandidateSpan(span, position, payloadArena));
+
                 hasMoreSpan = span.next();
                 return hasMoreSpan;
             }
@@ -182,7 +182,8 @@ public class UnorderedElementDistanceSpans extends UnorderedDistanceSpans {
                     && span.end() <= elements.end()) {
                 return true;
             }
-            elementList.add(new CandidateSpan(elements, elementPosition));
+            elementList.add(new CandidateSpan(elements, elementPosition,
+                    payloadArena));
             hasMoreElements = elements.next();
             elementPosition++;
         }
@@ -203,7 +204,8 @@ public class UnorderedElementDistanceSpans extends UnorderedDistanceSpans {
             while (hasMoreCandidates && candidate.doc() == target.getDoc()) {
                 position = findElementPosition(candidate);
                 if (position != -1) {
-                    cs = new CandidateSpan(candidate, position);
+                    cs = new CandidateSpan(candidate, position, payloadArena);
+
 
                     if (isWithinMaxDistance(target, cs)) {
                         candidateList.add(cs);
@@ -249,7 +251,7 @@ public class UnorderedElementDistanceSpans extends UnorderedDistanceSpans {
     protected List<CandidateSpan> findMatches (CandidateSpan target,
             List<CandidateSpan> candidateList, boolean isTargetFirstSpan) {
 
-        List<CandidateSpan> matches = new ArrayList<>();
+        List<CandidateSpan> matches = new CandidateQueue<>();
 
         int actualDistance;
         int targetPos = target.getPosition();
@@ -1,7 +1,6 @@
 package de.ids_mannheim.korap.query.spans;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -50,8 +49,8 @@ public class UnorderedTokenDistanceSpans extends UnorderedDistanceSpans {
         if (firstSpanList.isEmpty() && secondSpanList.isEmpty()) {
             if (hasMoreFirstSpans && hasMoreSecondSpans
                     && ensureSameDoc(firstSpans, secondSpans)) {
-                firstSpanList.add(new CandidateSpan(firstSpans));
-                secondSpanList.add(new CandidateSpan(secondSpans));
+                firstSpanList.add(new CandidateSpan(firstSpans, payloadArena));
+                secondSpanList.add(new CandidateSpan(secondSpans, payloadArena));
                 currentDocNum = firstSpans.doc();
                 hasMoreFirstSpans = firstSpans.next();
                 hasMoreSecondSpans = secondSpans.next();
@@ -63,12 +62,12 @@ public class UnorderedTokenDistanceSpans extends UnorderedDistanceSpans {
         }
         else if (firstSpanList.isEmpty() && hasMoreFirstSpans
                 && firstSpans.doc() == currentDocNum) {
-            firstSpanList.add(new CandidateSpan(firstSpans));
+            firstSpanList.add(new CandidateSpan(firstSpans, payloadArena));
             hasMoreFirstSpans = firstSpans.next();
         }
         else if (secondSpanList.isEmpty() && hasMoreSecondSpans
                 && secondSpans.doc() == currentDocNum) {
-            secondSpanList.add(new CandidateSpan(secondSpans));
+            secondSpanList.add(new CandidateSpan(secondSpans, payloadArena));
             hasMoreSecondSpans = secondSpans.next();
         }
         return true;
@@ -84,7 +83,7 @@ public class UnorderedTokenDistanceSpans extends UnorderedDistanceSpans {
             CandidateSpan target = targetList.get(0);
             while (hasMoreCandidates && candidate.doc() == target.getDoc()
                     && isWithinMaxDistance(target, candidate)) {
-                candidateList.add(new CandidateSpan(candidate));
+                candidateList.add(new CandidateSpan(candidate, payloadArena));
                 hasMoreCandidates = candidate.next();
             }
         }
@@ -125,7 +124,7 @@ public class UnorderedTokenDistanceSpans extends UnorderedDistanceSpans {
     protected List<CandidateSpan> findMatches (CandidateSpan target,
             List<CandidateSpan> candidateList, boolean isTargetFirstSpan) {
 
-        List<CandidateSpan> matches = new ArrayList<>();
+        List<CandidateSpan> matches = new CandidateQueue<>();
         int actualDistance;
         CandidateSpan match;
         for (CandidateSpan cs : candidateList) {
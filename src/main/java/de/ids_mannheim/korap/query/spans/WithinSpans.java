@@ -3,7 +3,6 @@ package de.ids_mannheim.korap.query.spans;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.Map;
 
 import org.apache.lucene.index.LeafReaderContext;
@@ -55,6 +54,9 @@ public class WithinSpans extends Spans {
     private Collection<byte[]> matchPayload;
     private Collection<byte[]> embeddedPayload;
 
+    // Reusable payload list of the current embedded span
+    private final ArrayList<byte[]> embeddedPayloadBuffer = new ArrayList<>(4);
+
     // Indicates that the wrap and the embedded spans are in the same doc
     private boolean inSameDoc = false;
 
@@ -93,7 +95,7 @@ public class WithinSpans extends Spans {
     private boolean tryMatch = true;
 
     // Two buffers for storing candidates
-    private LinkedList<WithinSpan> spanStore1, spanStore2;
+    private final SpanStore spanStore1, spanStore2;
 
 
     /**
@@ -121,7 +123,7 @@ public class WithinSpans extends Spans {
             log.trace("Construct WithinSpans");
 
         // Init copies
-        this.matchPayload = new LinkedList<byte[]>();
+        this.matchPayload = new ArrayList<byte[]>(4);
 
         // Get spans
         this.wrapSpans = spanWithinQuery.wrap().getSpans(context, acceptDocs,
@@ -132,8 +134,8 @@ public class WithinSpans extends Spans {
         this.flag = flag;
 
         // SpanStores for backtracking
-        this.spanStore1 = new LinkedList<WithinSpan>();
-        this.spanStore2 = new LinkedList<WithinSpan>();
+        this.spanStore1 = new SpanStore();
+        this.spanStore2 = new SpanStore();
 
         // kept for toString() only.
         this.query = spanWithinQuery;
@@ -203,25 +205,20 @@ public class WithinSpans extends Spans {
                 if (DEBUG)
                     log.trace("In the next embedded branch");
 
-                WithinSpan current = null;
-                WithinSpan candidate;
+                boolean fetch = false;
 
                 // Skip stale entries, stop at future documents
                 while (!this.spanStore2.isEmpty()) {
-                    candidate = spanStore2.peekFirst();
-                    if (candidate.doc < this.wrapDoc) {
+                    if (spanStore2.doc() < this.wrapDoc) {
                         spanStore2.removeFirst();
                     }
-                    else if (candidate.doc == this.wrapDoc) {
-                        current = spanStore2.removeFirst();
-                        break;
-                    }
                     else {
+                        fetch = spanStore2.doc() == this.wrapDoc;
                         break;
                     }
                 }
 
-                if (current == null) {
+                if (!fetch) {
 
                     // Future-doc entries remain: advance wrap instead
                     if (!this.spanStore2.isEmpty()) {
@@ -320,22 +317,23 @@ public class WithinSpans extends Spans {
                     /**
                      * TODO: Change this to a single embedded object!
                      */
-                    this.embeddedStart = current.start;
-                    this.embeddedEnd = current.end;
-                    this.embeddedDoc = current.doc;
-
-                    if (current.payload != null) {
-                        this.embeddedPayload = new ArrayList<byte[]>(
-                                current.payload.size());
-                        this.embeddedPayload.addAll(current.payload);
+                    this.embeddedStart = spanStore2.start();
+                    this.embeddedEnd = spanStore2.end();
+                    this.embeddedDoc = spanStore2.doc();
+
+                    if (spanStore2.hasPayload()) {
+                        this.embeddedPayloadBuffer.clear();
+                        this.embeddedPayloadBuffer.addAll(spanStore2.payload());
+                        this.embeddedPayload = this.embeddedPayloadBuffer;
                     }
                     else {
                         this.embeddedPayload = null;
                     };
+                    spanStore2.removeFirst();
 
                     if (DEBUG)
                         log.trace("Fetch current from SpanStore 2: {}",
-                                current.toString());
+                                _currentEmbedded().toString());
 
                     this.tryMatch = true;
                 };
@@ -353,25 +351,16 @@ public class WithinSpans extends Spans {
 
             // shift the stored spans
             if (!this.spanStore1.isEmpty()) {
-                if (DEBUG) {
-                    log.trace(
-                            "Move everything from SpanStore 1 to SpanStore 2:");
-                    for (WithinSpan i : this.spanStore1) {
-                        log.trace("     | {}", i.toString());
-                    };
-                };
+                if (DEBUG)
+                    log.trace("Move everything from SpanStore 1 {} "
+                            + "to SpanStore 2 {}", this.spanStore1,
+                            this.spanStore2);
 
-                // Move everything to spanStore2
-                this.spanStore2.addAll(0,
-                        (LinkedList<WithinSpan>) this.spanStore1.clone());
-                this.spanStore1.clear();
+                // Move everything to the front of spanStore2
+                this.spanStore2.prependAll(this.spanStore1);
 
-                if (DEBUG) {
-                    log.trace("SpanStore 2 now is:");
-                    for (WithinSpan i : this.spanStore2) {
-                        log.trace("     | {}", i.toString());
-                    };
-                };
+                if (DEBUG)
+                    log.trace("SpanStore 2 now is {}", this.spanStore2);
 
             }
             else if (DEBUG) {
@@ -975,34 +964,26 @@ public class WithinSpans extends Spans {
     // Store the current embedded span in the first spanStore
     private void storeEmbedded () throws IOException {
 
-        // Create a current copy
-        WithinSpan embedded = new WithinSpan();
-        embedded.start = this.embeddedStart != -1 ? this.embeddedStart
-                : this.embeddedSpans.start();
-        embedded.end = this.embeddedEnd != -1 ? this.embeddedEnd
-                : this.embeddedSpans.end();
-        embedded.doc = this.embeddedDoc;
-
-        // Copy payloads
-        if (this.embeddedPayload != null) {
-            embedded.payload = new ArrayList<byte[]>(
-                    this.embeddedPayload.size());
-            embedded.payload.addAll(this.embeddedPayload);
-        }
-        else if (this.embeddedSpans.isPayloadAvailable()) {
-            embedded.payload = new ArrayList<byte[]>(3);
-            Collection<byte[]> payload = this.embeddedSpans.getPayload();
-
-            this.embeddedPayload = new ArrayList<byte[]>(payload.size());
-            this.embeddedPayload.addAll(payload);
-            embedded.payload.addAll(payload);
+        // Remember payloads
+        if (this.embeddedPayload == null
+                && this.embeddedSpans.isPayloadAvailable()) {
+            this.embeddedPayloadBuffer.clear();
+            this.embeddedPayloadBuffer
+                    .addAll(this.embeddedSpans.getPayload());
+            this.embeddedPayload = this.embeddedPayloadBuffer;
         };
 
-        this.spanStore1.add(embedded);
+        // Store a current copy
+        this.spanStore1.add(this.embeddedDoc,
+                this.embeddedStart != -1 ? this.embeddedStart
+                        : this.embeddedSpans.start(),
+                this.embeddedEnd != -1 ? this.embeddedEnd
+                        : this.embeddedSpans.end(),
+                this.embeddedPayload);
 
         if (DEBUG)
             log.trace("Pushed to spanStore 1 {} (in storeEmbedded)",
-                    embedded.toString());
+                    this.spanStore1);
     };
 
 
@@ -1215,6 +1196,166 @@ public class WithinSpans extends Spans {
     };
 
 
+    /*
+     * Buffer of embedded spans, implemented as a ring buffer
+     * of positions. Payload lists are kept per slot and reused,
+     * so the buffer doesn't allocate after growing to the maximum
+     * number of stored spans.
+     */
+    private static final class SpanStore {
+        private int[] docs = new int[8], starts = new int[8],
+                ends = new int[8];
+        private boolean[] hasPayload = new boolean[8];
+        private ArrayList<?>[] payloads = new ArrayList<?>[8];
+        private int head = 0, size = 0;
+
+
+        boolean isEmpty () {
+            return this.size == 0;
+        };
+
+
+        // Document of the first span
+        int doc () {
+            return this.docs[this.head];
+        };
+
+
+        // Start position of the first span
+        int start () {
+            return this.starts[this.head];
+        };
+
+
+        // End position of the first span
+        int end () {
+            return this.ends[this.head];
+        };
+
+
+        // Check if the first span has payloads
+        boolean hasPayload () {
+            return this.hasPayload[this.head];
+        };
+
+
+        // Payloads of the first span
+        @SuppressWarnings("unchecked")
+        ArrayList<byte[]> payload () {
+            return (ArrayList<byte[]>) this.payloads[this.head];
+        };
+
+
+        // Append a span
+        void add (int doc, int start, int end, Collection<byte[]> payload) {
+            if (this.size == this.docs.length)
+                this.grow();
+
+            final int i = (this.head + this.size) & (this.docs.length - 1);
+            this.docs[i] = doc;
+            this.starts[i] = start;
+            this.ends[i] = end;
+            this.hasPayload[i] = payload != null;
+            if (payload != null)
+                this.slotPayload(i).addAll(payload);
+            this.size++;
+        };
+
+
+        // Remove the first span
+        void removeFirst () {
+            if (this.payloads[this.head] != null)
+                this.payloads[this.head].clear();
+            this.head = (this.head + 1) & (this.docs.length - 1);
+            this.size--;
+        };
+
+
+        // Move all spans of another store to the front of this store
+        void prependAll (SpanStore other) {
+            while (this.size + other.size > this.docs.length)
+                this.grow();
+
+            final int mask = this.docs.length - 1;
+            final int otherMask = other.docs.length - 1;
+            for (int n = other.size - 1; n >= 0; n--) {
+                final int j = (other.head + n) & otherMask;
+                this.head = (this.head - 1) & mask;
+                this.docs[this.head] = other.docs[j];
+                this.starts[this.head] = other.starts[j];
+                this.ends[this.head] = other.ends[j];
+                this.hasPayload[this.head] = other.hasPayload[j];
+
+                // Swap payload lists, so no list is shared
+                final ArrayList<?> list = this.payloads[this.head];
+                this.payloads[this.head] = other.payloads[j];
+                other.payloads[j] = list;
+            };
+            this.size += other.size;
+            other.clear();
+        };
+
+
+        void clear () {
+            for (int n = 0; n < this.size; n++) {
+                final ArrayList<?> list = this.payloads[(this.head + n)
+                        & (this.docs.length - 1)];
+                if (list != null)
+                    list.clear();
+            };
+            this.head = 0;
+            this.size = 0;
+        };
+
+
+        // Get the cleared payload list of a slot
+        @SuppressWarnings("unchecked")
+        private ArrayList<byte[]> slotPayload (int i) {
+            if (this.payloads[i] == null)
+                this.payloads[i] = new ArrayList<byte[]>(2);
+            return (ArrayList<byte[]>) this.payloads[i];
+        };
+
+
+        // Double the capacity, keeping the order
+        private void grow () {
+            final int length = this.docs.length;
+            final int cap = length << 1;
+            final int[] docs = new int[cap], starts = new int[cap],
+                    ends = new int[cap];
+            final boolean[] hasPayload = new boolean[cap];
+            final ArrayList<?>[] payloads = new ArrayList<?>[cap];
+            for (int n = 0; n < length; n++) {
+                final int i = (this.head + n) & (length - 1);
+                docs[n] = this.docs[i];
+                starts[n] = this.starts[i];
+                ends[n] = this.ends[i];
+                hasPayload[n] = this.hasPayload[i];
+                payloads[n] = this.payloads[i];
+            };
+            this.docs = docs;
+            this.starts = starts;
+            this.ends = ends;
+            this.hasPayload = hasPayload;
+            this.payloads = payloads;
+            this.head = 0;
+        };
+
+
+        public String toString () {
+            final StringBuilder sb = new StringBuilder("[");
+            for (int n = 0; n < this.size; n++) {
+                final int i = (this.head + n) & (this.docs.length - 1);
+                if (n > 0)
+                    sb.append(", ");
+                sb.append(this.starts[i]).append('-').append(this.ends[i])
+                        .append('(').append(this.docs[i]).append(')');
+            };
+            return sb.append(']').toString();
+        };
+    };
+
+
     // This was formerly the default candidate span class,
     // before it was refactored out
     private class WithinSpan implements Comparable<WithinSpan>, Cloneable {
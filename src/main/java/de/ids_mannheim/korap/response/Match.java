@@ -9,11 +9,8 @@ import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import org.apache.lucene.index.LeafReaderContext;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.index.TermContext;
-import org.apache.lucene.search.spans.SpanTermQuery;
-import org.apache.lucene.search.spans.Spans;
 import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.FixedBitSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,8 +26,10 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 
 import de.ids_mannheim.korap.index.AbstractDocument;
+import de.ids_mannheim.korap.index.Deadline;
+import de.ids_mannheim.korap.index.ElementLoader;
+import de.ids_mannheim.korap.index.MarkerLoader;
 import de.ids_mannheim.korap.index.PositionsToOffset;
-import de.ids_mannheim.korap.query.SpanElementQuery;
 import de.ids_mannheim.korap.response.match.HighlightCombinator;
 import de.ids_mannheim.korap.response.match.HighlightCombinatorElement;
 import de.ids_mannheim.korap.response.match.MatchIdentifier;
@@ -909,28 +908,39 @@ public class Match extends AbstractDocument {
 	// Retrieve markers in a certain area
 	public List<int[]> retrieveMarkers (String marker) {
 		if (this.positionsToOffset != null) {
-			return this.retrieveMarkers(
+			return this.retrieveMarkers(new MarkerLoader(
 				this.positionsToOffset.getLeafReader(),
-				(Bits) null,
 				"tokens",
 				marker
-				);
+				));
 		};
 
 		return null;
 	};
 
 	// Retrieve markers in a certain area
-    // THIS IS NOT VERY CLEVER - MAKE IT MORE CLEVER!
     public List<int[]> retrieveMarkers (LeafReaderContext atomic,
 										   Bits bitset,
 										   String field,
 										   String marker) {
 
+        // The document is not accepted
+        if (bitset != null && !bitset.get(this.localDocID))
+            return new ArrayList<>(0);
+
+        return this.retrieveMarkers(new MarkerLoader(atomic, field, marker));
+    };
+
+	// Retrieve markers in a certain area,
+    // based on the buffered markers of the document.
+    // In case the loader is shared by all matches of a leaf
+    // in document order, the markers are read in a single pass.
+    public List<int[]> retrieveMarkers (MarkerLoader markers) {
+
 		// List of relevant pagebreaks - only used for pagebreak markers!
 		List<int[]> pagebreaks = new ArrayList<>(24);
 
-		int charOffset = 0, pagenumber = 0, start = 0;
+		int start = 0;
 
         int minStartPos = this.getStartPos() - KrillProperties.maxTokenContextSize;
         int maxEndPos = this.getEndPos() + KrillProperties.maxTokenContextSize;
@@ -953,59 +963,40 @@ public class Match extends AbstractDocument {
             // Store character offsets in ByteBuffer
             ByteBuffer bb = ByteBuffer.allocate(256);
 
-			// Store last relevant marker in byte array
-			byte[] b = null;
+			// Index of the last relevant marker
+			int b = -1;
 
-			SpanTermQuery stq = new SpanTermQuery(new Term(field, marker));
+			// Stop in case the request is aborted
+			final Deadline deadline = Deadline.current();
 
-			if (DEBUG)
-				log.trace("Check markers with {}", stq.toString());
+            final int size = markers.load(this.localDocID);
 
-			Spans markerSpans = stq.getSpans(
-				atomic, bitset, new HashMap<Term, TermContext>()
-				);
+			// Iterate over all markers of the document
+			for (int i = 0; i < size; i++) {
+
+				if (deadline.poll())
+					break;
 
-			// Iterate over all markers
-			while (markerSpans.next() == true) {
+                final int pos = markers.position(i);
 
 				if (DEBUG) {
 					log.debug("There is a marker at {}/{} and we are at {}",
-							  markerSpans.doc(),
-							  markerSpans.start(),
+							  this.localDocID,
+							  pos,
                               this.localDocID);
 				};
-				
-				// Current marker is not in the correct document
-                if (markerSpans.doc() != this.localDocID) {
-                    if (markerSpans.doc() < this.localDocID) {
-                        markerSpans.skipTo(this.localDocID);
-                        
-                        // No pagebreaks in this document
-                        if (markerSpans.doc() != this.localDocID)
-                            break;
-                    }
-                    else {
-                        break;
-                    };
-                    continue;
-                };
-
-				if (DEBUG)
-					log.debug("The marker occurs in the document");
 
 				// There is a marker found - check,
 				// if it is in the correct area
-				if (markerSpans.start() < minStartPos) {
+				if (pos < minStartPos) {
                     
 					// Only the first payload is relevant
-					b = markerSpans.getPayload().iterator().next();
-					start = markerSpans.start();
+					b = i;
+					start = pos;
 
                     if (DEBUG)
-						log.debug("Marker start position is before match at {}:{}",
-								  markerSpans.start(),
-                                  b);
-					
+						log.debug("Marker start position is before match at {}",
+								  pos);
 				}
 
 				// This captures all markers starting in the potential (i.e. maximum) context of the match
@@ -1013,86 +1004,18 @@ public class Match extends AbstractDocument {
 
                     // b is already defined!
                     // This may be due to the last next
-					if (b != null) {
-						bb.rewind();
-						bb.put(b);
-						bb.rewind();
-
-						pagenumber = bb.getInt();
-                        charOffset = bb.getInt();
-                        
-                        // This marker is a pagebreak
-                        if (pagenumber != 0) {
-                            if (DEBUG)
-						    	log.debug("Add pagebreak to list: {}-{}", charOffset, pagenumber);
-						
-						    // Add all pagebreaks for later counting
-						    pagebreaks.add(new int[]{charOffset, pagenumber});
-                        
-						    if (start >= minStartPos) {
-    							if (DEBUG)
-	    							log.debug("Add marker to rendering: {}-{}",
-		    								  charOffset,
-			    							  pagenumber);
-				    			this.addPagebreak(charOffset, pagenumber);
-					    	};
-                        }
-                        
-                        // This marker is no pagebreak
-                        else {
-                            int bytelength = bb.getInt();
-                            byte[] anno = new byte[bytelength];
-                            bb.get(anno, 0, bytelength);
-                            String annoStr = new String(anno, StandardCharsets.UTF_8);
-                            this.addMarker(charOffset, annoStr);
-                        }
-
-                        b = null;
+					if (b != -1) {
+                        this._addMarker(bb, markers.payload(b),
+                                start >= minStartPos, pagebreaks);
+                        b = -1;
 					};
 
 					// b wasn't used yet
-					if (markerSpans.start() <= maxEndPos) {
+					if (pos <= maxEndPos) {
 
 						// Set new marker
-						// Only the first payload is relevant
-						b = markerSpans.getPayload().iterator().next();
-						bb.rewind();
-						bb.put(b);
-						bb.rewind();
-							
-						pagenumber = bb.getInt();
-						charOffset = bb.getInt();
-                       
-                        // This marker is a pagebreak
-                        if (pagenumber != 0) {
-                            if (DEBUG)
-						    	log.debug("Add pagebreak to list: {}-{}", charOffset, pagenumber);
-						
-						    // This is the first pagebreak!
-						    pagebreaks.add(new int[]{charOffset, pagenumber});
-                        
-						    if (start >= minStartPos) {
-
-                                
-    							if (DEBUG)
-	    							log.debug("Add pagebreak to rendering: {}-{}",
-		    								  charOffset,
-			    							  pagenumber);
-				    			this.addPagebreak(charOffset, pagenumber);
-					    	};
-                        }
-
-                        // This marker is no pagebreak
-                        else {
-                            int bytelength = bb.getInt();
-
-                            byte[] anno = new byte[bytelength];
-                            bb.get(anno);
-                            String annoStr = new String(anno, StandardCharsets.UTF_8);
-                            this.addMarker(charOffset, annoStr);
-                        }
-
-                        b = null;
+                        this._addMarker(bb, markers.payload(i),
+                                start >= minStartPos, pagebreaks);
 					}
 
 					// Pagebreak beyond the current position
@@ -1103,43 +1026,9 @@ public class Match extends AbstractDocument {
 			};
 
             // That's identical to the above approach and should only occur once
-            if (b != null) {
-                bb.rewind();
-                bb.put(b);
-                bb.rewind();
-
-                pagenumber = bb.getInt();
-                charOffset = bb.getInt();
-
-                // This marker is a pagebreak
-                if (pagenumber != 0) {
-
-                    if (DEBUG)
-                        log.debug("Add pagebreak to list: {}-{}", charOffset, pagenumber);
-						
-                    // This is a remembered pagebreak!
-                    pagebreaks.add(new int[]{charOffset, pagenumber});
-
-                    if (start >= minStartPos) {
-                                            
-                        if (DEBUG)
-                            log.debug("Add pagebreak to rendering: {}-{}",
-                                      charOffset,
-                                      pagenumber);
-                        this.addPagebreak(charOffset, pagenumber);
-                    };
-                }
-                // This marker is no pagebreak
-                else {
-                    int bytelength = bb.getInt();
-                    
-                    byte[] anno = new byte[bytelength];
-                    bb.get(anno);
-                    String annoStr = new String(anno, StandardCharsets.UTF_8);
-                    this.addMarker(charOffset, annoStr);
-                }
-                
-                b = null;
+            if (b != -1) {
+                this._addMarker(bb, markers.payload(b), start >= minStartPos,
+                        pagebreaks);
             };
 		}
 		catch (Exception e) {
@@ -1169,6 +1058,44 @@ public class Match extends AbstractDocument {
 		return pagebreaks;
 	};
 
+
+    // Add a marker or pagebreak based on its payload
+    private void _addMarker (ByteBuffer bb, BytesRef payload, boolean render,
+                             List<int[]> pagebreaks) {
+        bb.rewind();
+        bb.put(payload.bytes, payload.offset, payload.length);
+        bb.rewind();
+
+        int pagenumber = bb.getInt();
+        int charOffset = bb.getInt();
+
+        // This marker is a pagebreak
+        if (pagenumber != 0) {
+            if (DEBUG)
+                log.debug("Add pagebreak to list: {}-{}", charOffset, pagenumber);
+
+            // Add all pagebreaks for later counting
+            pagebreaks.add(new int[]{charOffset, pagenumber});
+
+            if (render) {
+                if (DEBUG)
+                    log.debug("Add pagebreak to rendering: {}-{}",
+                              charOffset,
+                              pagenumber);
+                this.addPagebreak(charOffset, pagenumber);
+            };
+        }
+
+        // This marker is no pagebreak
+        else {
+            int bytelength = bb.getInt();
+            byte[] anno = new byte[bytelength];
+            bb.get(anno, 0, bytelength);
+            String annoStr = new String(anno, StandardCharsets.UTF_8);
+            this.addMarker(charOffset, annoStr);
+        };
+    };
+
     // Expand the context to a span
     public void expandContextToSpan (String element) {
 
@@ -1177,9 +1104,8 @@ public class Match extends AbstractDocument {
         int[] spanContext = new int[] { 0, 0, 0, 0 };
         
         if (this.positionsToOffset != null) {
-            spanContext = this.expandContextToSpan(
-                    this.positionsToOffset.getLeafReader(), (Bits) null,
-                    "tokens", element);
+            spanContext = this.expandContextToSpan(this.positionsToOffset
+                    .getElementLoader("tokens", element));
         }
         
         if (spanContext[0] >= 0
@@ -1249,73 +1175,49 @@ public class Match extends AbstractDocument {
 	
 
     // Expand the context to a span
-    // THIS IS NOT VERY CLEVER - MAKE IT MORE CLEVER!
     public int[] expandContextToSpan (LeafReaderContext atomic, Bits bitset,
             String field, String element) {
+        return this.expandContextToSpan(
+                new ElementLoader(atomic, bitset, field, element));
+    };
 
-        try {
-            // Store character offsets in ByteBuffer
-            ByteBuffer bb = ByteBuffer.allocate(24);
-
-            SpanElementQuery cquery = new SpanElementQuery(field, element);
 
-            Spans contextSpans = cquery.getSpans(atomic, bitset,
-                    new HashMap<Term, TermContext>());
+    // Expand the context to a span,
+    // based on the buffered elements of the document.
+    // In case the loader is shared by all matches of a leaf
+    // in document order, the elements are read in a single pass.
+    public int[] expandContextToSpan (ElementLoader elements) {
 
+        try {
             int newStart = -1, newEnd = -1;
             int newStartChar = -1, newEndChar = -1;
 
             if (DEBUG)
                 log.trace(
-                        "Extend match to context boundary with {} in docID {}",
-                        cquery.toString(), this.localDocID);
+                        "Extend match to context boundary in docID {}",
+                        this.localDocID);
 
-            while (true) {
+            final int size = elements.load(this.localDocID);
 
-                // Game over
-                if (contextSpans.next() != true)
-                    break;
-
-                if (contextSpans.doc() != this.localDocID) {
-                    contextSpans.skipTo(this.localDocID);
-                    if (contextSpans.doc() != this.localDocID)
-                        break;
-                };
+            for (int i = 0; i < size; i++) {
+                final int start = elements.start(i);
+                final int end = elements.end(i);
 
                 // There's a <context> found -- I'm curious,
                 // if it's closer to the match than everything before
-                if (contextSpans.start() <= this.getStartPos()
-                        && contextSpans.end() >= this.getStartPos()) {
+                if (start <= this.getStartPos()
+                        && end >= this.getStartPos()) {
 
                     // Set as newStart
-                    newStart = contextSpans.start() > newStart
-                            ? contextSpans.start() : newStart;
+                    newStart = start > newStart ? start : newStart;
 
                     if (DEBUG)
                         log.trace("NewStart is at {}", newStart);
 
                     // Get character offset (start)
-                    if (contextSpans.isPayloadAvailable()) {
-                        try {
-                            bb.rewind();
-                            for (byte[] b : contextSpans.getPayload()) {
-
-                                // Not an element span
-                                if (b[0] != (byte) 64)
-                                    continue;
-
-                                bb.rewind();
-                                bb.put(b);
-                                bb.position(1);
-                                newStartChar = bb.getInt();
-                                newEndChar = bb.getInt();
-                                break;
-                            };
-                        }
-                        catch (Exception e) {
-                            log.warn("Some problems with ByteBuffer: {}",
-                                     e.getMessage());
-                        };
+                    if (elements.hasChars(i)) {
+                        newStartChar = elements.startChar(i);
+                        newEndChar = elements.endChar(i);
                     };
                 }
                 else {
@@ -1324,30 +1226,12 @@ public class Match extends AbstractDocument {
                 };
 
                 // There's an s found, that ends after the match
-                if (contextSpans.end() >= this.getEndPos()) {
-                    newEnd = contextSpans.end();
+                if (end >= this.getEndPos()) {
+                    newEnd = end;
 
                     // Get character offset (end)
-                    if (newEndChar == 0 && contextSpans.isPayloadAvailable()) {
-                        try {
-                            bb.rewind();
-                            for (byte[] b : contextSpans.getPayload()) {
-
-                                // Not an element span
-                                if (b[0] != (byte) 64)
-                                    continue;
-
-                                bb.rewind();
-                                bb.put(b);
-                                bb.position(1);
-                                newEndChar = bb.getInt(1);
-                                break;
-                            };
-                        }
-                        catch (Exception e) {
-                            log.warn(e.getMessage());
-                        };
-                    };
+                    if (newEndChar == 0 && elements.hasChars(i))
+                        newEndChar = elements.startChar(i);
                     break;
                 };
             };
@@ -1689,8 +1573,8 @@ public class Match extends AbstractDocument {
                 log.debug("Context defined by span");
             
             int[] spanContext = this.expandContextToSpan(
-                this.positionsToOffset.getLeafReader(), (Bits) null,
-                "tokens", this.context.getSpanContext());
+                this.positionsToOffset.getElementLoader(
+                    "tokens", this.context.getSpanContext()));
             startContext = spanContext[0];
             endContext = spanContext[1];
             startContextChar = spanContext[2];
@@ -1758,7 +1642,7 @@ public class Match extends AbstractDocument {
             this.startMore = false;
         }
         
-        Integer[] offsets;
+        int start, end;
         ArrayNode tokens;
         int i;
 
@@ -1766,13 +1650,14 @@ public class Match extends AbstractDocument {
         if (startContext < this.startPos) {
             tokens = json.putArray("left");
             for (i = startContext; i < this.startPos; i++) {
-                offsets = pto.span(ldid,i);
-                if (offsets == null) {
+                end = pto.end(ldid, i);
+                if (end == -1) {
                     continue;
                 }
+                start = pto.start(ldid, i);
                 tokens.add(
                     codePointSubstring(this.tempSnippet,
-                                       offsets[0]- startContextChar, offsets[1] - startContextChar)
+                                       start - startContextChar, end - startContextChar)
                     );
             };
         };
@@ -1781,13 +1666,14 @@ public class Match extends AbstractDocument {
 
         // Create right context token list
         for (i = this.startPos; i < this.endPos; i++) {
-            offsets = pto.span(ldid,i);
-            if (offsets == null) {
+            end = pto.end(ldid, i);
+            if (end == -1) {
                 continue;
             }
+            start = pto.start(ldid, i);
             tokens.add(
                 codePointSubstring(this.tempSnippet,
-                                   offsets[0]- startContextChar, offsets[1] - startContextChar)
+                                   start - startContextChar, end - startContextChar)
                 );
         };
 
@@ -1795,17 +1681,18 @@ public class Match extends AbstractDocument {
         if (endContext > this.endPos) {
             tokens = null;
             for (i = this.endPos; i < endContext; i++) {
-                offsets = pto.span(ldid,i);
-                if (offsets == null) {
+                end = pto.end(ldid, i);
+                if (end == -1) {
                     break;
                 };
+                start = pto.start(ldid, i);
 
                 if (tokens == null)
                     tokens = json.putArray("right");
                 
                 tokens.add(
                     codePointSubstring(this.tempSnippet,
-                        offsets[0]- startContextChar, offsets[1] - startContextChar)
+                        start - startContextChar, end - startContextChar)
                     );
             };
         };
@@ -2433,8 +2320,8 @@ public class Match extends AbstractDocument {
             this.endMore = false;
 
             int[] spanContext = this.expandContextToSpan(
-                    this.positionsToOffset.getLeafReader(), (Bits) null,
-                    "tokens", this.context.getSpanContext());
+                    this.positionsToOffset.getElementLoader("tokens",
+                            this.context.getSpanContext()));
             startOffset = spanContext[0];
             endOffset = spanContext[1];
             startOffsetChar = spanContext[2];
@@ -2649,9 +2536,8 @@ public class Match extends AbstractDocument {
         // Retrieve positions
         for (int i = this.getStartPos(); i < this.getEndPos(); i++) {
             ArrayNode token = tokens.addArray();
-            for (int offset : pto.span(this.localDocID, i)) {
-                token.add(offset);
-            };
+            token.add(pto.start(this.localDocID, i));
+            token.add(pto.end(this.localDocID, i));
         };
 
         return json;
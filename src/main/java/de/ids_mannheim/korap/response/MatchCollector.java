@@ -4,7 +4,16 @@ import de.ids_mannheim.korap.response.Match;
 import de.ids_mannheim.korap.response.Response;
 import java.util.*;
 
+/**
+ * Collects the number of matches per document.
+ * Documents may be added concurrently, e.g. when
+ * collecting from multiple index segments in parallel.
+ */
 public class MatchCollector extends Response {
+
+    // Recommended number of documents passed in one batch
+    public static final int BATCH_SIZE = 1000;
+
     public int totalResultDocs = 0;
 
 
@@ -13,12 +22,25 @@ public class MatchCollector extends Response {
       private long totalTexts;
     */
 
-    public void add (final int uniqueDocID, final int matchcount) {
+    public synchronized void add (final int uniqueDocID, final int matchcount) {
         this.totalResultDocs++;
         this.incrTotalResults(matchcount);
     };
 
 
+    /**
+     * Add a batch of documents with their match counts.
+     * 
+     * @param matches
+     *            A list of pairs of unique document identifiers
+     *            and match counts.
+     */
+    public synchronized void add (final List<int[]> matches) {
+        for (int[] match : matches)
+            this.add(match[0], match[1]);
+    };
+
+
     public MatchCollector setTotalResultDocs (int i) {
         this.totalResultDocs = i;
         return this;
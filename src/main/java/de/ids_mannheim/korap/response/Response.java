@@ -2,12 +2,16 @@ package de.ids_mannheim.korap.response;
 
 import static de.ids_mannheim.korap.util.KrillString.quote;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.HashMap;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -167,7 +171,8 @@ public class Response extends Notifications {
      * based on a timeout.
      * 
      * <p>
-     * Will add a warning (682) to the output.
+     * Will add a warning (682) to the output,
+     * in case the time was not already exceeded.
      * 
      * @param timeout
      *            Either <tt>true</tt> or <tt>false</tt>,
@@ -175,7 +180,7 @@ public class Response extends Notifications {
      * @return Response object for chaining
      */
     public Response setTimeExceeded (boolean timeout) {
-        if (timeout)
+        if (timeout && !this.timeExceeded)
             this.addWarning(682, "Response time exceeded");
         this.timeExceeded = timeout;
         return this;
@@ -604,6 +609,62 @@ public class Response extends Notifications {
             msg = ", " + quote(e.getLocalizedMessage());
         };
 
+        return _errorJson(msg);
+    };
+
+
+    /**
+     * Serialize response as JSON to an output stream.
+     * The output is identical to {@link #toJsonString()},
+     * but is written directly to the stream, without
+     * creating an intermediate string.
+     * The stream is flushed but not closed.
+     * 
+     * @param out
+     *            The {@link OutputStream} to write to.
+     * @throws IOException
+     */
+    public void toJson (OutputStream out) throws IOException {
+        final JsonGenerator gen = mapper.getFactory().createGenerator(out,
+                JsonEncoding.UTF8);
+        gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        try {
+            this.writeJson(gen);
+        }
+        catch (IOException e) {
+            throw e;
+        }
+        catch (Exception e) {
+
+            // Nothing was written yet
+            if (!gen.getOutputContext().inRoot()
+                    || gen.getOutputBuffered() != 0)
+                throw new IOException(e);
+            gen.writeRaw(_errorJson(", " + quote(e.getLocalizedMessage())));
+        };
+
+        gen.close();
+    };
+
+
+    /**
+     * Serialize response as JSON to a {@link JsonGenerator}.
+     * Subclasses with large responses may override this
+     * to write parts of the response without creating the
+     * full {@link JsonNode} tree first.
+     * 
+     * @param gen
+     *            The {@link JsonGenerator} to write to.
+     * @throws IOException
+     */
+    public void writeJson (JsonGenerator gen) throws IOException {
+        mapper.writeTree(gen, this.toJsonNode());
+    };
+
+
+    // Error message in case the response can't be serialized
+    private static String _errorJson (String msg) {
         return "{\"errors\":[" + "[620, " + "\"Unable to generate JSON\"" + msg
                 + "]" + "]}";
     };
@@ -2,12 +2,14 @@ package de.ids_mannheim.korap.response;
 
 import com.fasterxml.jackson.annotation.*;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 
+import de.ids_mannheim.korap.index.Deadline;
 import de.ids_mannheim.korap.index.PositionsToOffset;
 
 // Remove:
@@ -20,8 +22,10 @@ import de.ids_mannheim.korap.Krill;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /*
   TODO: Reuse the Krill code for data serialization!
@@ -54,6 +58,12 @@ public final class Result extends Krill {
 
     private JsonNode request;
 
+    // Cursor for the following page
+    private String cursor;
+
+    // Deadline of the search, snippets are built within
+    private Deadline deadline;
+
     // Logger
     // This is Match instead of Result!
     private final static Logger log = LoggerFactory.getLogger(Match.class);
@@ -237,6 +247,47 @@ public final class Result extends Krill {
     };
 
 
+    /**
+     * Set the number of the first match in the result set,
+     * in case it is not known before searching.
+     * 
+     * @param startIndex
+     *            The index number of the first match.
+     * @return {@link Result} object for chaining.
+     */
+    public Result setStartIndex (int startIndex) {
+        this.startIndex = startIndex;
+        return this;
+    };
+
+
+    /**
+     * Get the cursor to continue the search
+     * with the following page.
+     * 
+     * @return The cursor or <tt>null</tt>, in case no
+     *         cursor was requested or there are no
+     *         more matches.
+     */
+    public String getCursor () {
+        return this.cursor;
+    };
+
+
+    /**
+     * Set the cursor to continue the search
+     * with the following page.
+     * 
+     * @param cursor
+     *            The serialized cursor.
+     * @return {@link Result} object for chaining.
+     */
+    public Result setCursor (String cursor) {
+        this.cursor = cursor;
+        return this;
+    };
+
+
     /**
      * Get the context parameters of the search by means of a
      * {@link SearchContext} object.
@@ -263,15 +314,60 @@ public final class Result extends Krill {
     };
 
 
+    /**
+     * Set the deadline of the search.
+     * Snippets of the matches are built lazily on serialization,
+     * but within the time budget of the search. In case the
+     * deadline expires, the snippets are incomplete and the
+     * result is marked as timed out.
+     * 
+     * @param deadline
+     *            The {@link Deadline} of the search.
+     * @return {@link Result} object for chaining.
+     */
+    @JsonIgnore
+    public Result setDeadline (Deadline deadline) {
+        this.deadline = deadline;
+        return this;
+    };
+
+
+    // Build the snippets of all matches within the deadline,
+    // before the meta data is serialized
+    private void _buildSnippets () {
+        final Deadline deadline = this.deadline;
+        if (deadline == null || this.matches == null)
+            return;
+
+        // Snippets are cached by the matches
+        this.deadline = null;
+
+        Deadline.set(deadline);
+        try {
+            for (Match km : this.matches) {
+                if (km.hasSnippet)
+                    km.getSnippetHTML();
+                if (km.hasTokens)
+                    km.getSnippetTokens();
+            };
+        }
+        finally {
+            Deadline.clear();
+        };
+
+        if (deadline.isExpired())
+            this.setTimeExceeded(true);
+    };
+
+
     /**
      * Serialize the result set as a {@link JsonNode}.
      * 
      * @return {@link JsonNode} representation of the search results.
      */
     public JsonNode toJsonNode () {
-        ObjectNode json = (ObjectNode) mapper.valueToTree(super.toJsonNode());
-
-        this._addMeta(json);
+        this._buildSnippets();
+        ObjectNode json = this._headNode();
 
         // Add matches
         if (this.matches != null) {
@@ -289,6 +385,61 @@ public final class Result extends Krill {
     };
 
 
+    /**
+     * Serialize the result set to a {@link JsonGenerator}.
+     * The output is identical to {@link #toJsonString()}, but
+     * the matches are written one by one, so the tree of
+     * the whole result page is never built.
+     * 
+     * @param gen
+     *            The {@link JsonGenerator} to write to.
+     * @throws IOException
+     */
+    @Override
+    public void writeJson (JsonGenerator gen) throws IOException {
+        this._buildSnippets();
+        ObjectNode json = this._headNode();
+
+        gen.writeStartObject();
+
+        boolean matchesWritten = false;
+        for (Map.Entry<String, JsonNode> field : json.properties()) {
+
+            // Matches replace a field with the same name in place
+            if (this.matches != null && field.getKey().equals("matches")) {
+                this._writeMatches(gen);
+                matchesWritten = true;
+                continue;
+            };
+
+            gen.writeFieldName(field.getKey());
+            mapper.writeTree(gen, field.getValue());
+        };
+
+        if (this.matches != null && !matchesWritten)
+            this._writeMatches(gen);
+
+        gen.writeEndObject();
+    };
+
+
+    // Write all matches as an array
+    private void _writeMatches (JsonGenerator gen) throws IOException {
+        gen.writeArrayFieldStart("matches");
+        for (Match km : this.getMatches())
+            km.writeJson(gen);
+        gen.writeEndArray();
+    };
+
+
+    // Serialize the result set without matches
+    private ObjectNode _headNode () {
+        ObjectNode json = (ObjectNode) mapper.valueToTree(super.toJsonNode());
+        this._addMeta(json);
+        return json;
+    };
+
+
     /**
      * Stringifies the matches to give a brief overview on
      * the result. Mainly used for testing.
@@ -359,6 +510,10 @@ public final class Result extends Krill {
         // This may override count
         meta.put("itemsPerPage", this.itemsPerPage);
 
+        // Cursor for the following page
+        if (this.cursor != null)
+            meta.put("cursor", this.cursor);
+
         if (json.has("meta")) {
             ((ObjectNode) json.get("meta")).setAll(meta);
         }
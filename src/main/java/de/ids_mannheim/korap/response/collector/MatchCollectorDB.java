@@ -19,8 +19,8 @@ public final class MatchCollectorDB extends MatchCollector {
     private final static Logger log = LoggerFactory.getLogger(Node.class);
 
     /*
-     * Todo: In case there are multiple threads searching,
-     * the list should be synchrinized Collections.synchronizedList()
+     * Adding, committing and closing is synchronized,
+     * as multiple threads may collect matches at the same time.
      */
     private String databaseType;
     private final List matchCollector;
@@ -47,7 +47,7 @@ public final class MatchCollectorDB extends MatchCollector {
     /*
      * Add matches till the bufferSize exceeds - then commit to the database.
      */
-    public void add (int UID, int matchCount) {
+    public synchronized void add (int UID, int matchCount) {
         if (this.docCollect == bufferSize)
             this.commit();
 
@@ -97,7 +97,7 @@ public final class MatchCollectorDB extends MatchCollector {
 
 
     /* TODO: Ensure the commit was successful! */
-    public void commit () {
+    public synchronized void commit () {
         if (this.pool == null)
             return;
 
@@ -170,7 +170,7 @@ public final class MatchCollectorDB extends MatchCollector {
     /*
      * Close collector and connection
      */
-    public void close () {
+    public synchronized void close () {
         this.commit();
         try {
             this.connection.close();
@@ -184,7 +184,7 @@ public final class MatchCollectorDB extends MatchCollector {
     /*
      * Close collector and probably connection
      */
-    public void close (boolean close) {
+    public synchronized void close (boolean close) {
         if (close)
             this.close();
 
@@ -45,6 +45,7 @@ public class Node {
     private static int port = -1;
     private static String path = null;
     private static String name = "unknown";
+    private static String warmUpFile = null;
 
     // Logger
     private final static Logger log = LoggerFactory.getLogger(Node.class);
@@ -95,6 +96,10 @@ public class Node {
                 case "-d":
                     path = argv[i + 1];
                     break;
+                case "--warmup":
+                case "-w":
+                    warmUpFile = argv[i + 1];
+                    break;
             };
         };
 
@@ -111,6 +116,9 @@ public class Node {
         if (name.equals("unknown"))
             name = prop.getProperty("krill.server.name", name);
 
+        if (warmUpFile == null)
+            warmUpFile = prop.getProperty("krill.cache.warmup");
+
         BASE_URI = UriBuilder.fromUri(prop.getProperty("krill.server.baseURI",
                 "http://localhost:9876/"));
 
@@ -151,6 +159,9 @@ public class Node {
      * <dt>--dir</dt>
      * <dd>Set the index directory for the Krill node</dd>
      * 
+     * <dt>--warmup</dt>
+     * <dd>Replay a query log at startup to warm up the caches</dd>
+     * 
      * </dl>
      * 
      * @param argv
@@ -184,6 +195,11 @@ public class Node {
             System.out.println("\nHello. My name is " + getName()
                     + " and I am a Krill node");
             System.out.println("listening on " + getListener() + ".");
+
+            // Fill the caches in the background
+            if (warmUpFile != null)
+                warmUp(warmUpFile);
+
             Thread.currentThread().join();
         }
         catch (Exception e) {
@@ -192,6 +208,38 @@ public class Node {
     };
 
 
+    /**
+     * Replay a query log in the background to warm up
+     * the caches of the index.
+     * 
+     * @param file
+     *            The query log with one KoralQuery
+     *            request per line.
+     */
+    public static void warmUp (String file) {
+        final Thread warmUp = new Thread(() -> {
+            final KrillIndex index = getIndex();
+            if (index == null)
+                return;
+
+            log.info("Warming up caches with {}", file);
+            final long t1 = System.currentTimeMillis();
+            try (BufferedReader queries = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+                final int replayed = index.warmUp(queries);
+                log.info("Warmed up caches with {} queries in {} ms",
+                        replayed, System.currentTimeMillis() - t1);
+            }
+            catch (IOException e) {
+                log.error("Unable to warm up caches with {}: {}", file,
+                        e.getLocalizedMessage());
+            };
+        }, "warmUp");
+        warmUp.setDaemon(true);
+        warmUp.start();
+    };
+
+
     /**
      * Get the name of the node.
      * The name is unique in the cluster and should be persistent.
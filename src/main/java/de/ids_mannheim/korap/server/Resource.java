@@ -13,6 +13,11 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.UriInfo;
 import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.CompletionCallback;
+import jakarta.ws.rs.container.ConnectionCallback;
+import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.ext.ReaderInterceptor;
 import jakarta.ws.rs.ext.ReaderInterceptorContext;
 import jakarta.ws.rs.ext.WriterInterceptor;
@@ -23,6 +28,7 @@ import de.ids_mannheim.korap.server.Node;
 import de.ids_mannheim.korap.Krill;
 import de.ids_mannheim.korap.KrillIndex;
 import de.ids_mannheim.korap.KrillCollection;
+import de.ids_mannheim.korap.cache.VirtualCorpusCache;
 import de.ids_mannheim.korap.response.Result;
 import de.ids_mannheim.korap.response.Match;
 import de.ids_mannheim.korap.response.Response;
@@ -37,6 +43,12 @@ import java.util.regex.Matcher;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+import org.glassfish.grizzly.CloseListener;
+import org.glassfish.grizzly.CloseType;
+import org.glassfish.grizzly.Closeable;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.http.server.Request;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -88,6 +100,9 @@ public class Resource {
 
         // TODO: Name the number of documents in the index
         kresp.addMessage(680, "Server is up and running!");
+
+        // Statistics of the named VC cache
+        kresp.addJsonNode("vcCache", VirtualCorpusCache.getStatistics());
         return kresp.toJsonString();
     };
 
@@ -324,24 +339,72 @@ public class Resource {
     /**
      * Search the lucene index.
      * 
+     * The result is streamed to the client (passing
+     * all writer interceptors), without serializing it
+     * to a string first.
+     * 
+     * The search is cancelled, in case the client
+     * disconnects before the result is written.
+     * 
      * @param json
      *            JSON-LD string with search and potential meta
      *            filters.
+     * @param response
+     *            The suspended response to resume with the result.
+     * @param request
+     *            The underlying HTTP request, may be <tt>null</tt>.
      */
     @POST
     @Path("/search")
     @Produces(MediaType.APPLICATION_JSON)
     @Consumes(MediaType.APPLICATION_JSON)
-    public String search (String json) {
+    public void search (String json, @Suspended final AsyncResponse response,
+            @Context final Request request) {
 
-        Response kresp = _initResponse();
-        if (kresp.hasErrors())
-            return kresp.toJsonString();
+        final Response kresp = _initResponse();
+        if (kresp.hasErrors()) {
+            response.resume((StreamingOutput) out -> kresp.toJson(out));
+            return;
+        };
+
+        final Krill ks = new Krill(json);
+        _cancelOnDisconnect(ks, response, request);
 
         // Search index
         // Reuse Response
-        Result kr = new Krill(json).apply(Node.getIndex());
-        return kr.toJsonString();
+        final Result kr = ks.apply(Node.getIndex());
+        response.resume((StreamingOutput) out -> kr.toJson(out));
+    };
+
+
+    // Cancel the search, when the client disconnects
+    private static void _cancelOnDisconnect (final Krill ks,
+            final AsyncResponse response, final Request request) {
+
+        // The container reports disconnects when the
+        // response can't be written
+        response.register((ConnectionCallback) r -> ks.cancel());
+
+        // The connection reports disconnects while the
+        // search is running
+        if (request == null || request.getContext() == null)
+            return;
+
+        final Connection<?> connection = request.getContext()
+                .getConnection();
+        if (connection == null)
+            return;
+
+        final CloseListener<Closeable, CloseType> listener = (closeable,
+                type) -> ks.cancel();
+        connection.addCloseListener(listener);
+        response.register((CompletionCallback) t -> connection
+                .removeCloseListener(listener));
+
+        // The connection may have been closed before the
+        // listener was added
+        if (!connection.isOpen())
+            ks.cancel();
     };
 
 
@@ -29,10 +29,22 @@ public class KrillProperties {
     public static int kwicMaxToken = -1;
     public static int defaultSearchContextLength = 6;
     public static int maxTextSize = DEFAULT_MAX_STRING_LEN; // Default max text size
+    public static int searchThreads = 1;
+    public static int indexThreads = 1;
+    public static int indexQueueSize = 0;
+    public static double indexRamBufferSize = 16.0;
+    public static String indexMergePolicy = "tiered";
+    public static int indexMergeFactor = 0;
+    public static int primaryDataChunkSize = 0;
+    public static boolean indexTokenOffsets = false;
     
     public static boolean matchExpansionIncludeContextSize = false;
     
     public static String namedVCPath = "";
+    public static long namedVCCacheSize = 256L * 1024 * 1024; // 256 MB
+    public static int namedVCRefreshThreads = 1;
+    public static String countCacheDir = "";
+    public static long countCacheSize = 100_000;
     public static boolean isTest = false;
 
     public static String secret = "";
@@ -108,6 +120,17 @@ public class KrillProperties {
         String maxCharContextSize = prop.getProperty("krill.context.max.char");
         String defaultSearchContextLength = prop.getProperty("krill.search.context.default");
         String maxTextSizeValue = prop.getProperty("krill.index.textSize.max");
+        String searchThreads = prop.getProperty("krill.search.threads");
+        String indexThreads = prop.getProperty("krill.index.threads");
+        String indexQueueSize = prop.getProperty("krill.index.queue.size");
+        String indexRamBufferSize = prop.getProperty("krill.index.ramBufferSize");
+        String indexMergeFactor = prop.getProperty("krill.index.merge.factor");
+        String primaryDataChunkSize = prop
+                .getProperty("krill.index.primaryData.chunkSize");
+        String namedVCCacheSize = prop.getProperty("krill.namedVC.cache.size");
+        String namedVCRefreshThreads = prop
+                .getProperty("krill.namedVC.refresh.threads");
+        String countCacheSize = prop.getProperty("krill.cache.count.size");
 
         try {
             if (maxTokenMatchSize != null) {
@@ -138,6 +161,42 @@ public class KrillProperties {
                 }
 
             }
+            if (searchThreads != null) {
+                KrillProperties.searchThreads = Integer
+                        .parseInt(searchThreads);
+            }
+            if (indexThreads != null) {
+                KrillProperties.indexThreads = Integer
+                        .parseInt(indexThreads);
+            }
+            if (indexQueueSize != null) {
+                KrillProperties.indexQueueSize = Integer
+                        .parseInt(indexQueueSize);
+            }
+            if (indexRamBufferSize != null) {
+                KrillProperties.indexRamBufferSize = Double
+                        .parseDouble(indexRamBufferSize);
+            }
+            if (indexMergeFactor != null) {
+                KrillProperties.indexMergeFactor = Integer
+                        .parseInt(indexMergeFactor);
+            }
+            if (primaryDataChunkSize != null) {
+                KrillProperties.primaryDataChunkSize = Integer
+                        .parseInt(primaryDataChunkSize);
+            }
+            if (namedVCCacheSize != null) {
+                KrillProperties.namedVCCacheSize = Long
+                        .parseLong(namedVCCacheSize);
+            }
+            if (namedVCRefreshThreads != null) {
+                KrillProperties.namedVCRefreshThreads = Integer
+                        .parseInt(namedVCRefreshThreads);
+            }
+            if (countCacheSize != null) {
+                KrillProperties.countCacheSize = Long
+                        .parseLong(countCacheSize);
+            }
             if (leftContextMaxShrink != null) {
                 if (leftContextMaxShrink.equals("max")) {
                     KrillProperties.leftContextMaxShrink = KrillProperties.maxTokenContextSize;
@@ -191,7 +250,16 @@ public class KrillProperties {
         isTest = Boolean.parseBoolean(p);
         
         namedVCPath = prop.getProperty("krill.namedVC", "");
+
+        countCacheDir = prop.getProperty("krill.cache.count.dir", "").trim();
+
+        indexMergePolicy = prop
+                .getProperty("krill.index.mergePolicy", indexMergePolicy)
+                .trim().toLowerCase();
         
+        indexTokenOffsets = Boolean.parseBoolean(prop.getProperty(
+                "krill.index.tokenOffsets", String.valueOf(indexTokenOffsets)));
+
         String matchExpansion = prop.getProperty(
                 "krill.match." + "expansion.includeContextSize", "false");
         matchExpansionIncludeContextSize = Boolean.parseBoolean(matchExpansion);
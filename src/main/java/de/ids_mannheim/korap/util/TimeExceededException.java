@@ -0,0 +1,26 @@
+package de.ids_mannheim.korap.util;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown when a request exceeds its time out
+ * or was cancelled.
+ * As it is an {@link IOException}, it can be thrown from
+ * span enumerations.
+ * 
+ * @author diewald
+ */
+public class TimeExceededException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Construct a new TimeExceededException.
+     * 
+     * @param message
+     *            Exception message.
+     */
+    public TimeExceededException (String message) {
+        super(message);
+    };
+};
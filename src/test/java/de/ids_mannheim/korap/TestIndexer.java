@@ -26,6 +26,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.ids_mannheim.korap.index.Indexer;
+import de.ids_mannheim.korap.util.KrillProperties;
 
 /**
  * @author margaretha
@@ -242,6 +243,36 @@ public class TestIndexer {
         assertTrue(outputStream.toString().contains("Added or updated 6 files"));
     }
 
+    @Test
+    public void testMultipleThreads () throws IOException {
+        String outputDir = getTestOutputPath("test-threads-index");
+        int configured = KrillProperties.indexThreads;
+        Indexer.main(new String[] { "-c", "src/test/resources/krill.properties",
+                                    "-i", "src/test/resources/wiki",
+                                    "-o", outputDir, "-t", "4"});
+        assertTrue(outputStream.toString().startsWith("Added or updated 19 files."));
+
+        // The command line does not change the configuration
+        assertEquals(configured, KrillProperties.indexThreads);
+
+        KrillIndex ki = new KrillIndex(Paths.get(outputDir));
+        assertEquals(19, ki.numberOf("documents"));
+        ki.close();
+    }
+
+    @Test
+    public void testMultipleThreadsArchives () throws IOException {
+        String outputDir = getTestOutputPath("test-threads-archive-index");
+        Indexer.main(new String[] { "-c", "src/test/resources/krill.properties",
+                                    "-i", "src/test/resources/rei/rei_sample_krill.zip;src/test/resources/rei/rei_sample_krill.tar.gz",
+                                    "-o", outputDir, "-a", "-t", "3"});
+        assertTrue(outputStream.toString().startsWith("Added 6 files."));
+
+        KrillIndex ki = new KrillIndex(Paths.get(outputDir));
+        assertEquals(6, ki.numberOf("documents"));
+        ki.close();
+    }
+
     @Test
     public void testProgressOption () throws IOException {
         java.io.PrintStream originalErr = System.err;
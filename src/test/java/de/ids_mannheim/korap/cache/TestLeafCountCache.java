@@ -0,0 +1,194 @@
+package de.ids_mannheim.korap.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import de.ids_mannheim.korap.Krill;
+import de.ids_mannheim.korap.KrillIndex;
+import de.ids_mannheim.korap.query.QueryBuilder;
+import de.ids_mannheim.korap.response.Result;
+
+@RunWith(JUnit4.class)
+public class TestLeafCountCache {
+
+    private static final String QUERY = "{\"query\":{\"@type\":\"koral:token\","
+            + "\"wrap\":{\"@type\":\"koral:term\",\"layer\":\"orth\","
+            + "\"key\":\"der\",\"match\":\"match:eq\"}}}";
+
+
+    @Test
+    public void persistCounts () throws IOException {
+        File dir = Files.createTempDirectory("krill-count-cache").toFile();
+
+        LeafCountCache cache = new LeafCountCache(dir, 100);
+        assertNull(cache.get("abc-0", "q1"));
+        cache.put("abc-0", "q1", new LeafCountCache.Counts(5, 2), true);
+        cache.put("abc-0", "q2", new LeafCountCache.Counts(7, 3), false);
+        cache.put("def-1", "q1", new LeafCountCache.Counts(1, 1), true);
+        assertEquals(7, cache.get("abc-0", "q2").matchCount());
+
+        cache = new LeafCountCache(dir, 100);
+        assertEquals(new LeafCountCache.Counts(5, 2), cache.get("abc-0", "q1"));
+        assertEquals(new LeafCountCache.Counts(1, 1), cache.get("def-1", "q1"));
+        assertNull(cache.get("abc-0", "q2"));
+        assertNull(cache.get("def-1", "q2"));
+
+        // Truncated entries are ignored
+        try (FileOutputStream out = new FileOutputStream(
+                new File(dir, "abc-0"), true)) {
+            out.write(new byte[] { 0, 0, 0, 20, 1, 2 });
+        };
+        cache = new LeafCountCache(dir, 100);
+        assertEquals(new LeafCountCache.Counts(5, 2), cache.get("abc-0", "q1"));
+    };
+
+
+    @Test
+    public void persistedCountsAreIndexed () throws IOException {
+        File dir = Files.createTempDirectory("krill-count-cache").toFile();
+        File f = new File(dir, "abc-0");
+
+        // Counts evicted from memory are read from disk
+        LeafCountCache cache = new LeafCountCache(dir, 1);
+        for (int i = 0; i < 50; i++)
+            cache.put("abc-0", "q" + i, new LeafCountCache.Counts(i, 1), true);
+        long length = f.length();
+        for (int i = 0; i < 50; i++)
+            assertEquals(i, cache.get("abc-0", "q" + i).matchCount());
+
+        // Persisted counts are not appended again
+        cache = new LeafCountCache(dir, 1);
+        for (int i = 0; i < 50; i++)
+            cache.put("abc-0", "q" + i, new LeafCountCache.Counts(i, 1), true);
+        assertEquals(length, f.length());
+
+        // Changed counts are appended
+        cache.put("abc-0", "q3", new LeafCountCache.Counts(9, 1), true);
+        assertTrue(f.length() > length);
+        assertEquals(9, cache.get("abc-0", "q3").matchCount());
+
+        // Repeated keys are removed on load
+        cache = new LeafCountCache(dir, 1);
+        assertEquals(9, cache.get("abc-0", "q3").matchCount());
+        assertEquals(length, f.length());
+        assertEquals(49, cache.get("abc-0", "q49").matchCount());
+    };
+
+
+    @Test
+    public void outdatedCountsAreDeleted () throws IOException {
+        File dir = Files.createTempDirectory("krill-count-cache").toFile();
+        File f = new File(dir, "abc-0");
+
+        // File written by another Krill version
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(f))) {
+            out.writeInt(0x4B4C4343);
+            out.writeShort(2);
+            out.writeUTF("0.0.0-outdated");
+            out.writeUTF("abc-0");
+        };
+
+        LeafCountCache cache = new LeafCountCache(dir, 100);
+        assertNull(cache.get("abc-0", "q1"));
+        assertFalse(f.exists());
+
+        cache.put("abc-0", "q1", new LeafCountCache.Counts(5, 2), true);
+        cache = new LeafCountCache(dir, 100);
+        assertEquals(new LeafCountCache.Counts(5, 2), cache.get("abc-0", "q1"));
+    };
+
+
+    @Test
+    public void refreshStaleLeaves () throws IOException {
+        Path indexDir = Files.createTempDirectory("krill-count-index");
+        File cacheDir = Files.createTempDirectory("krill-count-cache")
+                .toFile();
+        KrillIndex ki = new KrillIndex(indexDir);
+        ki.setCountCache(new LeafCountCache(cacheDir, 100));
+        int uid = 1;
+        for (String i : new String[] { "00001", "00002", "00003" }) {
+            ki.addDoc(uid++,
+                    getClass().getResourceAsStream("/wiki/" + i + ".json.gz"),
+                    true);
+            ki.commit();
+        };
+
+        Krill ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+        Result kr = ki.count(ks);
+        assertEquals(3, kr.getTotalResources());
+        assertEquals(3, cacheDir.list().length);
+
+        String deleted = null;
+        for (LeafReaderContext context : ki.reader().leaves()) {
+            if (context.reader().document(0).get("UID").equals("2"))
+                deleted = LeafCountCache.leafFingerprint(context.reader());
+        };
+        assertTrue(new File(cacheDir, deleted).exists());
+
+        // Deletions change the leaf
+        ki.delDoc(2);
+        ki.commit();
+
+        ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+        kr = ki.count(ks);
+        assertEquals(2, kr.getTotalResources());
+        assertFalse(new File(cacheDir, deleted).exists());
+        ki.close();
+    };
+
+
+    @Test
+    public void warmUpQueries () throws IOException {
+        Path indexDir = Files.createTempDirectory("krill-count-index");
+        File cacheDir = Files.createTempDirectory("krill-count-cache")
+                .toFile();
+        KrillIndex ki = new KrillIndex(indexDir);
+        for (String i : new String[] { "00001", "00002", "00003" }) {
+            ki.addDoc(getClass().getResourceAsStream("/wiki/" + i + ".json.gz"),
+                    true);
+            ki.commit();
+        };
+        ki.close();
+
+        // Restart with a warmed up cache
+        ki = new KrillIndex(indexDir);
+        ki.setCountCache(new LeafCountCache(cacheDir, 100));
+        assertEquals(1, ki.warmUp(new BufferedReader(new StringReader(
+                "# Query log\n\n" + QUERY + "\n{\"query\":{}}\n"))));
+        ki.close();
+
+        ki = new KrillIndex(indexDir);
+        ki.setCountCache(new LeafCountCache(cacheDir, 100));
+        Result kr = ki.count(new Krill(QUERY));
+        assertEquals("Some results were cached",
+                kr.getMessage(0).getMessage());
+        assertEquals(kr.getTotalResults(),
+                Long.parseLong(kr.getMessage(0).toJsonNode().at("/1").asText()));
+
+        // Searches use the warmed up counts
+        Krill ks = new Krill(QUERY);
+        ks.getMeta().setCutOff(false).setCount(10);
+        Result krs = ks.apply(ki);
+        assertEquals(kr.getTotalResults(), krs.getTotalResults());
+        assertEquals(kr.getTotalResources(), krs.getTotalResources());
+        assertEquals(10, krs.getMatches().size());
+        ki.close();
+    };
+};
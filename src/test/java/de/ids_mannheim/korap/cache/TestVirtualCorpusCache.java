@@ -1,18 +1,26 @@
 package de.ids_mannheim.korap.cache;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.lucene.util.FixedBitSet;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.junit.Test;
 import org.junit.Before;
 import org.junit.After;
@@ -99,6 +107,104 @@ public class TestVirtualCorpusCache {
     }
 
 
+    @Test
+    public void testRetrieveFromDisk () throws IOException, QueryException {
+        String vcId = "named-vc1";
+        VirtualCorpusCache.store(vcId, ki);
+        Map<String, DocBits> stored = VirtualCorpusCache.retrieve(vcId);
+        assertEquals(2, stored.size());
+
+        // Retrieve memory mapped files
+        VirtualCorpusCache.map.clear();
+        Map<String, DocBits> mapped = VirtualCorpusCache.retrieve(vcId);
+        assertEquals(2, mapped.size());
+        for (String leafFingerprint : stored.keySet()) {
+            DocBits docBits = stored.get(leafFingerprint);
+            DocBits mappedDocBits = mapped.get(leafFingerprint);
+            assertEquals(docBits.getType(), mappedDocBits.getType());
+            assertEquals(docBits.cardinality(), mappedDocBits.cardinality());
+            assertArrayEquals(docBits.getBits(), mappedDocBits.getBits());
+        }
+
+        // Corrupt the last byte of the serialized bits of a file,
+        // as empty bits are not serialized
+        String leafFingerprint = null;
+        for (String fp : stored.keySet()) {
+            if (stored.get(fp).cardinality() > 0)
+                leafFingerprint = fp;
+        }
+        assertNotNull(leafFingerprint);
+        File f = new File(VirtualCorpusCache.CACHE_LOCATION + "/" + vcId
+                + "/" + leafFingerprint);
+        long length = f.length();
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.seek(length - 1);
+            int last = raf.read();
+            raf.seek(length - 1);
+            raf.write(last ^ 0xFF);
+        }
+        assertEquals(length, f.length());
+
+        // The corruption is detected by the checksum
+        try {
+            VirtualCorpusCache.mapFile(f);
+            fail("Corrupted file should be rejected");
+        }
+        catch (IOException e) {
+            assertEquals("Checksum mismatch", e.getMessage());
+        }
+
+        // Corrupted files are treated as not being cached
+        VirtualCorpusCache.map.clear();
+        mapped = VirtualCorpusCache.retrieve(vcId);
+        assertEquals(1, mapped.size());
+        assertFalse(mapped.containsKey(leafFingerprint));
+        assertFalse(f.exists());
+
+        // Files with another fingerprint are ignored as well
+        File other = new File(VirtualCorpusCache.CACHE_LOCATION + "/" + vcId
+                + "/" + "unknown");
+        Files.copy(new File(VirtualCorpusCache.CACHE_LOCATION + "/" + vcId
+                + "/" + mapped.keySet().iterator().next()).toPath(),
+                other.toPath());
+        VirtualCorpusCache.map.clear();
+        mapped = VirtualCorpusCache.retrieve(vcId);
+        assertEquals(1, mapped.size());
+        assertFalse(other.exists());
+
+        VirtualCorpusCache.delete(vcId);
+        assertFalse(VirtualCorpusCache.contains(vcId));
+    }
+
+
+    @Test
+    public void testCacheStatistics () throws IOException, QueryException {
+        String vcId = "named-vc4";
+        ObjectNode stats = VirtualCorpusCache.getStatistics();
+        long hits = stats.get("hits").asLong();
+        long misses = stats.get("misses").asLong();
+        long loads = stats.get("loads").asLong();
+
+        VirtualCorpusCache.store(vcId, ki);
+        stats = VirtualCorpusCache.getStatistics();
+        assertEquals(misses + 1, stats.get("misses").asLong());
+        assertEquals(loads + 1, stats.get("loads").asLong());
+        assertEquals(hits + 1, stats.get("hits").asLong());
+        assertTrue(stats.get("weight").asLong() > 0);
+
+        // Reload from disk
+        VirtualCorpusCache.map.clear();
+        assertEquals(2, VirtualCorpusCache.retrieve(vcId).size());
+        assertEquals(2, VirtualCorpusCache.retrieve(vcId).size());
+        stats = VirtualCorpusCache.getStatistics();
+        assertEquals(misses + 2, stats.get("misses").asLong());
+        assertEquals(hits + 2, stats.get("hits").asLong());
+        assertEquals(loads + 2, stats.get("loads").asLong());
+
+        VirtualCorpusCache.delete(vcId);
+    }
+
+
     @Test
     public void testReferToUncachedVC () throws IOException, QueryException {
         String vcId = "named-vc1";
@@ -163,20 +269,70 @@ public class TestVirtualCorpusCache {
 
 
     @Test
-    public void testCleanUpVC () throws QueryException, IOException {
-        VirtualCorpusCache.CAPACITY = 3;
+    public void testRefreshOnReaderReopen ()
+            throws IOException, InterruptedException {
+        String vcId = "named-vc1";
+        KrillIndex ki = createIndex();
+        Krill krill = new Krill(queryRefJson2);
+        Result result = krill.apply(ki);
+        assertEquals(27, result.getTotalResults());
+
+        Set<String> fp1 = ki.getAllLeafFingerprints();
+        assertEquals(fp1, VirtualCorpusCache.map.get(vcId).keySet());
 
+        // Add a new leaf and update an existing one
+        ki.addDoc(5, getClass().getResourceAsStream("/wiki/00005.json.gz"),
+                true);
+        ki.delDoc(2);
+        ki.commit();
+
+        // Reopening the reader refreshes the VC in the background
+        Set<String> fp2 = ki.getAllLeafFingerprints();
+        assertNotEquals(fp1, fp2);
+
+        assertTrue(VirtualCorpusCache.awaitRefresh(5, TimeUnit.SECONDS));
+        assertEquals(fp2, VirtualCorpusCache.map.get(vcId).keySet());
+
+        // Outdated leaves are removed from disk
+        File dir = new File(VirtualCorpusCache.CACHE_LOCATION + "/" + vcId);
+        assertEquals(fp2, Set.of(dir.list()));
+
+        krill = new Krill(queryRefJson2);
+        result = krill.apply(ki);
+        assertEquals(17, result.getTotalResults());
+        assertFalse(VirtualCorpusCache.vcToCleanUp.contains(vcId));
+
+        ki.close();
+        VirtualCorpusCache.delete(vcId);
+    }
+
+
+    @Test
+    public void testCleanUpVC () throws QueryException, IOException {
         VirtualCorpusCache.store("named-vc1", ki);
         VirtualCorpusCache.store("named-vc2", ki);
         VirtualCorpusCache.store("named-vc3", ki);
         VirtualCorpusCache.store("named-vc4", ki);
 
-        assertEquals(3, VirtualCorpusCache.map.size());
+        assertEquals(4, VirtualCorpusCache.map.size());
         assertEquals(4, VirtualCorpusCache.vcToCleanUp.size());
 
-        Krill krill = new Krill(queryRefJson2);
-        Result result = krill.apply(ki);
-        assertEquals(27, result.getTotalResults());
+        // Evict all VCs from memory
+        long maxWeight = VirtualCorpusCache.MAX_WEIGHT;
+        try {
+            VirtualCorpusCache.setMaxWeight(0);
+            VirtualCorpusCache.getStatistics();
+            assertEquals(0, VirtualCorpusCache.map.size());
+            assertTrue(VirtualCorpusCache.contains(named_vc1));
+
+            // VCs are reloaded from disk
+            Krill krill = new Krill(queryRefJson2);
+            Result result = krill.apply(ki);
+            assertEquals(27, result.getTotalResults());
+        }
+        finally {
+            VirtualCorpusCache.setMaxWeight(maxWeight);
+        }
 
         VirtualCorpusCache.reset();
         assertFalse(VirtualCorpusCache.contains(named_vc1));
@@ -476,6 +632,49 @@ public class TestVirtualCorpusCache {
     }
 
 
+    @Test
+    public void testRedefineVC () throws IOException, QueryException {
+        String vcId = named_vc1;
+        VirtualCorpusCache.store(vcId, ki);
+        Map<String, DocBits> stored = VirtualCorpusCache.retrieve(vcId);
+
+        CollectionBuilder cb = new CollectionBuilder();
+        KrillCollection kc = new KrillCollection(ki);
+        kc.fromBuilder(cb.referTo(vcId));
+        assertTrue(kc.refersToNamedVC());
+        assertEquals(2, kc.numberOf("documents"));
+
+        // References are detected structurally
+        kc = new KrillCollection(ki);
+        kc.fromBuilder(cb.andGroup().with(cb.term("textClass", "vcFilter(x)")));
+        assertFalse(kc.refersToNamedVC());
+        kc.fromBuilder(cb.orGroup().with(cb.term("textClass", "x"))
+                .with(cb.referTo(vcId).not()));
+        assertTrue(kc.refersToNamedVC());
+
+        // Redefine the VC without any documents
+        Map<String, DocBits> empty = new ConcurrentHashMap<>();
+        for (Map.Entry<String, DocBits> e : stored.entrySet()) {
+            int numbits = e.getValue().length();
+            empty.put(e.getKey(), new DocBits(
+                    new long[FixedBitSet.bits2words(numbits)], numbits));
+        };
+        VirtualCorpusCache.store(vcId, empty);
+
+        kc = new KrillCollection(ki);
+        kc.fromBuilder(cb.referTo(vcId));
+        assertEquals(0, kc.numberOf("documents"));
+
+        // Deleting the VC recalculates it from its definition
+        VirtualCorpusCache.delete(vcId);
+        kc = new KrillCollection(ki);
+        kc.fromBuilder(cb.referTo(vcId));
+        assertEquals(2, kc.numberOf("documents"));
+
+        VirtualCorpusCache.delete(vcId);
+    }
+
+
     @Test
     public void testCollectionWithVCRefAndPubDate ()
             throws IOException, QueryException {
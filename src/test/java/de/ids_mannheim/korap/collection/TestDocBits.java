@@ -1,11 +1,18 @@
 package de.ids_mannheim.korap.collection;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Random;
 
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.BitDocIdSet;
 import org.apache.lucene.util.FixedBitSet;
 import org.junit.Test;
@@ -35,4 +42,125 @@ public class TestDocBits {
             assertEquals(bitset.length(), bitDocIdSet.bits().length());
         }
     }
+
+
+    @Test
+    public void testSparseDocBits () throws IOException {
+        FixedBitSet bitset = new FixedBitSet(200_000);
+        bitset.set(0);
+        bitset.set(17);
+        bitset.set(65_536);
+        bitset.set(199_999);
+
+        DocBits docBits = new DocBits(bitset.getBits(), bitset.length());
+        assertEquals(DocBits.SPARSE, docBits.getType());
+        assertEquals(4, docBits.cardinality());
+        assertTrue(docBits.ramBytesUsed() < 200);
+        checkDocBits(bitset, docBits);
+    }
+
+
+    @Test
+    public void testDenseDocBits () throws IOException {
+        FixedBitSet bitset = new FixedBitSet(1000);
+        bitset.set(0, 1000);
+        bitset.clear(500);
+
+        DocBits docBits = new DocBits(bitset.getBits(), bitset.length());
+        assertEquals(DocBits.DENSE, docBits.getType());
+        assertEquals(999, docBits.cardinality());
+        checkDocBits(bitset, docBits);
+    }
+
+
+    @Test
+    public void testRoaringDocBits () throws IOException {
+        Random random = new Random(42);
+        FixedBitSet bitset = new FixedBitSet(300_000);
+
+        // Dense block
+        for (int i = 0; i < 65_536; i++) {
+            if (random.nextInt(4) != 0)
+                bitset.set(i);
+        }
+
+        // Sparse block
+        for (int i = 65_536; i < 131_072; i += 1000)
+            bitset.set(i);
+
+        // Empty block and incomplete last block
+        for (int i = 262_144; i < 300_000; i += 7)
+            bitset.set(i);
+
+        DocBits docBits = new DocBits(bitset.getBits(), bitset.length());
+        assertEquals(DocBits.ROARING, docBits.getType());
+        assertEquals(bitset.cardinality(), docBits.cardinality());
+        assertTrue(docBits.ramBytesUsed() < 8L * bitset.getBits().length);
+        checkDocBits(bitset, docBits);
+    }
+
+
+    // Check iteration, advancing, and serialization
+    private void checkDocBits (FixedBitSet bitset, DocBits docBits)
+            throws IOException {
+        assertArrayEquals(bitset.getBits(), docBits.getBits());
+        assertEquals(bitset.length(),
+                docBits.createBitDocIdSet().bits().length());
+
+        checkIterator(bitset, docBits);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        long length = docBits.write(new DataOutputStream(bos));
+        assertEquals(bos.size(), length);
+
+        // Wrap the serialization in a direct buffer with an offset,
+        // like a memory mapped file
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bos.size() + 16);
+        buffer.position(16);
+        buffer.put(bos.toByteArray());
+        buffer.position(16);
+
+        DocBits wrapped = DocBits.wrap(buffer, docBits.getType(),
+                docBits.length(), docBits.cardinality());
+        assertEquals(docBits.getType(), wrapped.getType());
+        assertEquals(docBits.cardinality(), wrapped.cardinality());
+        assertEquals(docBits.length(), wrapped.length());
+        assertArrayEquals(bitset.getBits(), wrapped.getBits());
+        assertTrue(wrapped.ramBytesUsed() < docBits.ramBytesUsed());
+        checkIterator(bitset, wrapped);
+    }
+
+
+    @Test(expected = IOException.class)
+    public void testTruncatedDocBits () throws IOException {
+        DocBits.wrap(ByteBuffer.allocate(64), DocBits.DENSE, 1000, 1000);
+    }
+
+
+    private void checkIterator (FixedBitSet bitset, DocBits docBits)
+            throws IOException {
+        DocIdSetIterator iter = docBits.createDocIdSet().iterator();
+        int doc;
+        int count = 0;
+        int expected = bitset.nextSetBit(0);
+        while ((doc = iter.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+            assertEquals(expected, doc);
+            count++;
+            expected = (doc + 1 < bitset.length())
+                    ? bitset.nextSetBit(doc + 1)
+                    : DocIdSetIterator.NO_MORE_DOCS;
+        }
+        assertEquals(bitset.cardinality(), count);
+
+        // Advance with gaps
+        iter = docBits.createDocIdSet().iterator();
+        for (int target = 3; target < bitset.length(); target += 9_973) {
+            if (target <= iter.docID())
+                continue;
+            int next = bitset.nextSetBit(target);
+            assertEquals(next, iter.advance(target));
+            if (next == DocIdSetIterator.NO_MORE_DOCS)
+                break;
+        }
+    }
 }
@@ -2,13 +2,17 @@ package de.ids_mannheim.korap.collection;
 
 import static de.ids_mannheim.korap.TestSimple.getJsonString;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.util.FixedBitSet;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -20,6 +24,7 @@ import de.ids_mannheim.korap.index.FieldDocument;
 import de.ids_mannheim.korap.query.QueryBuilder;
 import de.ids_mannheim.korap.response.Result;
 import de.ids_mannheim.korap.response.SearchContext;
+import de.ids_mannheim.korap.util.QueryException;
 import de.ids_mannheim.korap.util.StatusCodes;
 
 
@@ -490,6 +495,40 @@ public class TestKrillCollectionIndex {
     };
 
 
+    @Test
+    public void testCollectionBitsCache () throws IOException, QueryException {
+        ki = new KrillIndex();
+        ki.addDoc(createDoc1());
+        ki.addDoc(createDoc2());
+        ki.addDoc(createDoc3());
+        ki.commit();
+        CollectionBuilder cb = new CollectionBuilder();
+        LeafReaderContext atomic = ki.reader().leaves().get(0);
+
+        KrillCollection kc1 = new KrillCollection(ki);
+        kc1.fromBuilder(cb.term("author", "Frank").not());
+        KrillCollection kc2 = new KrillCollection(ki);
+        kc2.fromBuilder(cb.term("author", "Frank").not());
+
+        // Equal collections share the cached bit vector
+        FixedBitSet bits = kc1.bits(atomic);
+        assertEquals(2, bits.cardinality());
+        assertSame(bits, kc2.bits(atomic));
+        assertEquals(2, kc2.docCount());
+
+        kc2.fromBuilder(cb.term("author", "Frank"));
+        assertNotSame(bits, kc2.bits(atomic));
+        assertEquals(1, kc2.docCount());
+
+        // Deletions are respected
+        ki.delDocs("author", "Peter");
+        ki.commit();
+        atomic = ki.reader().leaves().get(0);
+        assertEquals(1, kc1.bits(atomic).cardinality());
+        assertEquals(1, kc1.docCount());
+    };
+
+
     @Test
     public void testIndexWithDateRanges () throws IOException {
         ki = new KrillIndex();
@@ -374,4 +374,51 @@ public class TestElementIndex {
         assertEquals(5, ki.numberOf("documents"));
         assertEquals("totalResults", kr.getTotalResults(), 7);
     };
+
+
+    @Test
+    public void testElementLoader () throws IOException {
+        KrillIndex ki = new KrillIndex();
+        for (int i = 0; i < 3; i++) {
+            FieldDocument fd = new FieldDocument();
+            fd.addTV("base", "abcdef",
+                    "[(0-1)s:a" + (i == 1 ? "" : "|<>:s$<b>64<i>0<i>3<i>3<b>0")
+                            + "][(1-2)s:b][(2-3)s:c][(3-4)s:d"
+                            + (i == 1 ? "" : "|<>:s$<b>64<i>3<i>6<i>6<b>0")
+                            + "][(4-5)s:e][(5-6)s:f]");
+            ki.addDoc(fd);
+        };
+        ki.commit();
+
+        ElementLoader loader = new ElementLoader(
+                ki.reader().leaves().get(0), null, "base", "s");
+
+        assertEquals(2, loader.load(0));
+        assertEquals(0, loader.start(0));
+        assertEquals(3, loader.end(0));
+        assertEquals(3, loader.start(1));
+        assertEquals(6, loader.end(1));
+        assertEquals(3, loader.startChar(1));
+        assertEquals(6, loader.endChar(1));
+        assertEquals(0, loader.load(1));
+        assertEquals(2, loader.load(2));
+        assertEquals(6, loader.end(1));
+
+        // Documents in descending order
+        assertEquals(2, loader.load(0));
+        assertEquals(3, loader.end(0));
+
+        // Aborted loads are not reused
+        Deadline deadline = new Deadline(60_000);
+        deadline.cancel();
+        Deadline.set(deadline);
+        try {
+            assertEquals(0, loader.load(2));
+        }
+        finally {
+            Deadline.clear();
+        };
+        assertEquals(2, loader.load(2));
+        assertEquals(6, loader.end(1));
+    };
 };
@@ -2,6 +2,7 @@ package de.ids_mannheim.korap.index;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.fail;
 
@@ -31,6 +32,7 @@ import de.ids_mannheim.korap.query.wrap.SpanQueryWrapper;
 import de.ids_mannheim.korap.response.Match;
 import de.ids_mannheim.korap.response.MetaFields;
 import de.ids_mannheim.korap.response.Result;
+import de.ids_mannheim.korap.util.KrillProperties;
 import de.ids_mannheim.korap.util.QueryException;
 
 import org.apache.lucene.document.Document;
@@ -213,6 +215,72 @@ public class TestFieldDocument {
     };
 
 
+    @Test
+    public void indexChunkedPrimaryData () throws Exception {
+        int chunkSize = KrillProperties.primaryDataChunkSize;
+        KrillIndex plain = new KrillIndex(), ki = new KrillIndex();
+        for (String i : new String[] { "00001", "00002", "00003", "00004",
+                "00005", "00006", "02439" }) {
+            plain.addDoc(
+                    getClass().getResourceAsStream("/wiki/" + i + ".json.gz"),
+                    true);
+            KrillProperties.primaryDataChunkSize = 16;
+            try {
+                ki.addDoc(getClass()
+                        .getResourceAsStream("/wiki/" + i + ".json.gz"), true);
+            }
+            finally {
+                KrillProperties.primaryDataChunkSize = chunkSize;
+            };
+        };
+        plain.addDoc(getClass().getResourceAsStream("/goe/AGA-03828.json.gz"),
+                true);
+        KrillProperties.primaryDataChunkSize = 16;
+        try {
+            ki.addDoc(
+                    getClass().getResourceAsStream("/goe/AGA-03828.json.gz"),
+                    true);
+        }
+        finally {
+            KrillProperties.primaryDataChunkSize = chunkSize;
+        };
+        plain.commit();
+        ki.commit();
+
+        QueryBuilder kq = new QueryBuilder("tokens");
+        Krill ks = new Krill(kq.contains(kq.tag("base/s:s"), kq.nr(1,
+                kq.seq(kq.seg("mate/p:ADJA")).append(kq.seg("opennlp/p:NN")))));
+
+        KrillMeta meta = ks.getMeta();
+        meta.setCount(1);
+        meta.setCutOff(true);
+        meta.getContext().left.setCharacter(true).setLength(6);
+        meta.getContext().right.setToken(true).setLength(6);
+
+        // Snippets are identical to non-chunked primary data
+        Match km = ks.apply(ki).getMatch(0);
+        assertEquals(
+                "... okal. [[Der Buchstabe A hat in {1:deutschen Texten} eine durchschnittliche Häufigkeit von 6,51 %.]] Er ist damit der sechsthäufigste Buchstabe ...",
+                km.getSnippetBrackets());
+
+        // Chunks are not part of the meta data
+        Iterator<String> names = km.toJsonNode().fieldNames();
+        while (names.hasNext())
+            assertFalse(names.next().contains("#"));
+
+        // Match information
+        String id = "match-GOE_AGA.03828-p100-105";
+        Match chunked = ki.getMatchInfo(id, "tokens", true, null, null,
+                false, true, false, false, false);
+        km = plain.getMatchInfo(id, "tokens", true, null, null, false, true,
+                false, false, false);
+        assertTrue(chunked.getSnippetBrackets().contains("[["));
+        assertEquals(km.getSnippetBrackets(), chunked.getSnippetBrackets());
+        assertEquals(km.getPrimaryData(), chunked.getPrimaryData());
+        assertEquals(km.toJsonString(), chunked.toJsonString());
+    };
+
+
     @Test
     public void queryJSONBsp18 () throws Exception {
 
@@ -954,6 +1022,63 @@ public class TestFieldDocument {
     };
 
 
+    @Test
+    public void indexUpsertKeepsCreationDate () throws Exception {
+        KrillIndex ki = new KrillIndex();
+
+        FieldDocument fd = new FieldDocument();
+        fd.addString("textSigle", "AAA/BBB/001");
+        fd.addString("content", "Example1");
+        fd.addDate("indexCreationDate", "2015-04-01");
+        fd.addTV("tokens", "Example1",
+            "[(0-8)s:Example1|i:example1|_0$<i>0<i>8|-:tokens$<i>1]");
+        ki.addDoc(fd);
+        ki.commit();
+
+        // Add another segment
+        fd = new FieldDocument();
+        fd.addString("textSigle", "AAA/BBB/002");
+        fd.addString("content", "Example2");
+        fd.addTV("tokens", "Example2",
+            "[(0-8)s:Example2|i:example2|_0$<i>0<i>8|-:tokens$<i>1]");
+        ki.upsertDoc(fd);
+        ki.commit();
+
+        fd = new FieldDocument();
+        fd.addString("textSigle", "AAA/BBB/001");
+        fd.addString("content", "Example3");
+        fd.addTV("tokens", "Example3",
+            "[(0-8)s:Example3|i:example3|_0$<i>0<i>8|-:tokens$<i>1]");
+        ki.upsertDoc(fd);
+        ki.commit();
+
+        MetaFields mfs = ki.getFields("AAA/BBB/001");
+        assertEquals("2015-04-01", mfs.getFieldValue("indexCreationDate"));
+        assertNotEquals("2015-04-01", mfs.getFieldValue("indexLastModified"));
+        assertEquals("Example3", mfs.getFieldValue("content"));
+        assertEquals(2, ki.numberOf("documents"));
+
+        // Upsert again, now from the merged or updated segment
+        fd = new FieldDocument();
+        fd.addString("textSigle", "AAA/BBB/001");
+        fd.addString("content", "Example4");
+        fd.addTV("tokens", "Example4",
+            "[(0-8)s:Example4|i:example4|_0$<i>0<i>8|-:tokens$<i>1]");
+        ki.upsertDoc(fd);
+        ki.commit();
+
+        mfs = ki.getFields("AAA/BBB/001");
+        assertEquals("2015-04-01", mfs.getFieldValue("indexCreationDate"));
+        assertEquals("Example4", mfs.getFieldValue("content"));
+        assertEquals(2, ki.numberOf("documents"));
+
+        mfs = ki.getFields("AAA/BBB/002");
+        assertEquals(mfs.getFieldValue("indexCreationDate"),
+            mfs.getFieldValue("indexLastModified"));
+        ki.close();
+    };
+
+
     private static FieldDocument createSimpleDoc (String textSigle,
             String author, int tokenCount) {
         FieldDocument fd = new FieldDocument();
@@ -1,6 +1,7 @@
 package de.ids_mannheim.korap.index;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
 
 import org.apache.lucene.util.Version;
@@ -479,4 +480,34 @@ public class TestKrillIndex {
         fieldValues = ki.getFieldVector("tokens", kcn);
         assertEquals(0, fieldValues.size());
     };
+
+
+    @Test
+    public void indexReaderWhileWriting () throws Exception {
+        KrillIndex ki = new KrillIndex();
+        FieldDocument fd = new FieldDocument();
+        fd.addString("ID", "doc-1");
+        fd.addTV("base", "ich bau", "[(0-3)s:ich|l:ich|p:PPER|-:t$<i>2]"
+                + "[(4-7)s:bau|l:bauen|p:VVFIN]");
+        ki.addDoc(fd);
+        ki.commit();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // Opening and accessing the reader does not wait
+            // for the writer lock
+            synchronized (ki) {
+                assertEquals(1, executor
+                        .submit(() -> ki.reader().numDocs())
+                        .get(10, TimeUnit.SECONDS).intValue());
+                assertTrue(ki.isReaderOpen());
+
+                assertSame(ki.reader(), executor.submit(() -> ki.reader())
+                        .get(10, TimeUnit.SECONDS));
+            };
+        }
+        finally {
+            executor.shutdown();
+        };
+    };
 };
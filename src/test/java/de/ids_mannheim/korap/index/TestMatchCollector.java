@@ -3,6 +3,13 @@ package de.ids_mannheim.korap.index;
 import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
 
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.spans.SpanQuery;
@@ -58,7 +65,99 @@ public class TestMatchCollector {
         krill.getMeta().setCount((short) 10);
         MatchCollector mc = ki.collect(krill, new MatchCollector());
 
-        assertEquals(5, mc.getTotalResults());
+        assertEquals(7, mc.getTotalResults());
+        assertEquals(2, mc.getTotalResultDocs());
+    };
+
+
+    @Test
+    public void indexExampleParallel () throws IOException {
+        KrillIndex ki = new KrillIndex();
+
+        // One segment per document
+        for (int i = 1; i <= 4; i++) {
+            FieldDocument fd = new FieldDocument();
+            fd.addString("ID", "doc-" + i);
+            fd.setUID(i * 10);
+            fd.addTV("base", "abab", "[(0-1)s:a|i:a|_0$<i>0<i>1|-:t$<i>4]"
+                     + "[(1-2)s:b|i:b|_1$<i>1<i>2]"
+                     + "[(2-3)s:a|i:a|_2$<i>2<i>3]"
+                     + "[(3-4)s:b|i:b|_3$<i>3<i>4]");
+            ki.addDoc(fd);
+            ki.commit();
+        };
+
+        // Document without DocValues for the UID
+        FieldDocument fd = new FieldDocument();
+        fd.addString("ID", "doc-5");
+        fd.addTV("base", "b", "[(0-1)s:b|i:b|_0$<i>0<i>1|-:t$<i>1]");
+        fd.doc.add(new StoredField("UID", "50"));
+        ki.addDoc(fd);
+        ki.commit();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        ki.setSearchExecutor(executor);
+
+        final Map<Integer, Integer> counts = new ConcurrentHashMap<>();
+        MatchCollector collector = new MatchCollector() {
+            @Override
+            public synchronized void add (int uniqueDocID, int matchcount) {
+                super.add(uniqueDocID, matchcount);
+                counts.put(uniqueDocID, matchcount);
+            };
+        };
+
+        Krill krill = new Krill(new SpanTermQuery(new Term("base", "s:b")));
+        MatchCollector mc = ki.collect(krill, collector);
+
+        assertEquals(9, mc.getTotalResults());
+        assertEquals(5, mc.getTotalResultDocs());
+        assertEquals(2, (int) counts.get(10));
+        assertEquals(2, (int) counts.get(40));
+        assertEquals(1, (int) counts.get(50));
+
+        executor.shutdown();
+    };
+
+
+    @Test
+    public void indexUIDZero () throws IOException {
+        KrillIndex ki = new KrillIndex();
+
+        FieldDocument fd = new FieldDocument();
+        fd.addString("ID", "doc-1");
+        fd.setUID(1);
+        fd.addTV("base", "ab", "[(0-1)s:a|i:a|_0$<i>0<i>1|-:t$<i>2]"
+                 + "[(1-2)s:b|i:b|_1$<i>1<i>2]");
+        ki.addDoc(fd);
+
+        // The UID 0 is read from DocValues,
+        // not from the stored fields
+        fd = new FieldDocument();
+        fd.addString("ID", "doc-2");
+        fd.addTV("base", "bb", "[(0-1)s:b|i:b|_0$<i>0<i>1|-:t$<i>2]"
+                 + "[(1-2)s:b|i:b|_1$<i>1<i>2]");
+        fd.doc.add(new NumericDocValuesField("UID", 0));
+        fd.doc.add(new StoredField("UID", "7"));
+        ki.addDoc(fd);
+        ki.commit();
+
+        final Map<Integer, Integer> counts = new ConcurrentHashMap<>();
+        MatchCollector collector = new MatchCollector() {
+            @Override
+            public synchronized void add (int uniqueDocID, int matchcount) {
+                super.add(uniqueDocID, matchcount);
+                counts.put(uniqueDocID, matchcount);
+            };
+        };
+
+        Krill krill = new Krill(new SpanTermQuery(new Term("base", "s:b")));
+        MatchCollector mc = ki.collect(krill, collector);
+
+        assertEquals(3, mc.getTotalResults());
         assertEquals(2, mc.getTotalResultDocs());
+        assertEquals(1, (int) counts.get(1));
+        assertEquals(2, (int) counts.get(0));
+        assertEquals(2, counts.size());
     };
 };
@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
 
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.SpanTermQuery;
@@ -94,6 +95,35 @@ public class TestPagebreakIndex {
                      kr.getMatch(3).getSnippetBrackets());
     };
 
+    @Test
+    public void testMarkerLoader () throws IOException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(createFieldDoc1());
+        ki.addDoc(createFieldDoc0());
+        ki.addDoc(createFieldDoc1());
+        ki.commit();
+
+        LeafReaderContext atomic = ki.reader().leaves().get(0);
+        MarkerLoader pb = new MarkerLoader(atomic, "tokens", "~:base/s:pb");
+
+        assertEquals(3, pb.load(0));
+        assertEquals(0, pb.position(0));
+        assertEquals(5, pb.position(1));
+        assertEquals(8, pb.position(2));
+        assertEquals(8, pb.payload(2).length);
+        assertEquals(0, pb.load(1));
+        assertEquals(3, pb.load(2));
+        assertEquals(8, pb.position(2));
+
+        // Documents in descending order
+        assertEquals(3, pb.load(0));
+        assertEquals(5, pb.position(1));
+
+        // Unknown markers
+        assertEquals(0, new MarkerLoader(atomic, "tokens", "~:base/s:xy")
+                .load(0));
+    };
+
     @Test
     public void indexExample1 () throws Exception {
 		KrillIndex ki = new KrillIndex();
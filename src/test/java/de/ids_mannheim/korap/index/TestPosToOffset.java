@@ -1,15 +1,21 @@
 package de.ids_mannheim.korap.index;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.BytesRef;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 import de.ids_mannheim.korap.KrillIndex;
+import de.ids_mannheim.korap.util.KrillProperties;
 
 
 @RunWith(JUnit4.class)
@@ -56,4 +62,111 @@ public class TestPosToOffset {
             assertEquals("End 1,20", pto.end(1, 20), -1);
         };
     };
+
+
+    private KrillIndex batchedIndex () throws IOException {
+        KrillIndex ki = new KrillIndex();
+
+        // Two documents with 200 tokens each
+        for (int d = 0; d < 2; d++) {
+            StringBuilder text = new StringBuilder();
+            StringBuilder stream = new StringBuilder();
+            for (int i = 0; i < 200; i++) {
+                int start = text.length();
+                text.append("t").append(i).append(' ');
+                int end = start + String.valueOf(i).length() + 1;
+                stream.append("[(" + start + "-" + end + ")s:t|_" + i + "$<i>"
+                        + start + "<i>" + end + (i == 0 ? "|-:t$<i>200" : "")
+                        + "]");
+            };
+            FieldDocument fd = new FieldDocument();
+            fd.addTV("base", text.toString(), stream.toString());
+            ki.addDoc(fd);
+        };
+        ki.commit();
+        return ki;
+    };
+
+
+    private void checkBatched (KrillIndex ki) {
+        for (LeafReaderContext atomic : ki.reader().leaves()) {
+            PositionsToOffset pto = new PositionsToOffset(atomic, "base");
+
+            // Add positions in descending order
+            for (int i = 199; i >= 0; i--) {
+                pto.add(1, i);
+                pto.add(0, i);
+                pto.add(0, i);
+            };
+
+            assertEquals(0, pto.start(0, 0));
+            assertEquals(2, pto.end(0, 0));
+            assertEquals(pto.start(0, 150), pto.start(1, 150));
+            assertEquals(3 * 10 + 4 * 90 + 5 * 50, pto.start(1, 150));
+            assertEquals(3 * 10 + 4 * 90 + 5 * 50 + 4, pto.end(1, 150));
+            assertTrue(pto.exists(1, 199));
+
+            // Positions added after processing
+            pto.add(1, 500);
+            pto.add(0, 20);
+            assertEquals(-1, pto.end(1, 500));
+            assertEquals(0, pto.start(1, 500));
+            assertEquals(3 * 10 + 4 * 10, pto.start(0, 20));
+
+            pto.clear();
+            assertFalse(pto.exists(0, 20));
+            pto.add(1, 3);
+            assertEquals(9, pto.start(1, 3));
+            assertEquals(11, pto.end(1, 3));
+        };
+    };
+
+
+    @Test
+    public void indexExampleBatched () throws IOException {
+        checkBatched(batchedIndex());
+    };
+
+
+    @Test
+    public void indexExampleTokenOffsets () throws IOException {
+        boolean tokenOffsets = KrillProperties.indexTokenOffsets;
+        KrillProperties.indexTokenOffsets = true;
+        KrillIndex ki;
+        try {
+            ki = batchedIndex();
+        }
+        finally {
+            KrillProperties.indexTokenOffsets = tokenOffsets;
+        };
+
+        // Offsets are read from the table
+        for (LeafReaderContext atomic : ki.reader().leaves())
+            assertNotNull(atomic.reader()
+                    .getBinaryDocValues("base" + TokenOffsets.SUFFIX));
+
+        checkBatched(ki);
+    };
+
+
+    @Test
+    public void tokenOffsetsTable () throws IOException {
+        MultiTermTokenStream ts = new MultiTermTokenStream(
+                "[(0-1)s:a|_0$<i>0<i>1][(2-3)s:b][(4-9)s:c|_2$<i>4<i>9]"
+                        + "[(1-2)s:d|_3$<i>1<i>2]");
+        BytesRef table = TokenOffsets.encode(ts);
+
+        int[] block = new int[TokenOffsets.BLOCK_SIZE * 2];
+        assertEquals(4, TokenOffsets.readBlock(table, 3, block));
+        assertEquals(0, block[0]);
+        assertEquals(1, block[1]);
+        assertEquals(-1, block[3]);
+        assertEquals(4, block[4]);
+        assertEquals(9, block[5]);
+        assertEquals(1, block[6]);
+        assertEquals(2, block[7]);
+        assertEquals(0, TokenOffsets.readBlock(table, 4, block));
+
+        assertNull(TokenOffsets.encode(new MultiTermTokenStream("[s:a]")));
+    };
 };
@@ -5,6 +5,7 @@ import static org.junit.Assert.assertEquals;
 import java.io.IOException;
 
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.spans.SpanOrQuery;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.SpanTermQuery;
 import org.junit.Test;
@@ -177,6 +178,95 @@ public class TestSegmentIndex {
     }
 
 
+    /** Matching nested segments independent of their order */
+    @Test
+    public void testCase7 () throws IOException {
+        SpanTermQuery sb = new SpanTermQuery(new Term("base", "s:b"));
+        SpanTermQuery sc = new SpanTermQuery(new Term("base", "s:c"));
+        SpanTermQuery ib = new SpanTermQuery(new Term("base", "i:b"));
+
+        sq = new SpanSegmentQuery(new SpanSegmentQuery(sb, sc), ib);
+        assertEquals("spanSegment(spanSegment(base:s:b, base:s:c), base:i:b)",
+                sq.toString());
+        kr = ki.search(sq, (short) 10);
+        assertEquals("totalResults", kr.getTotalResults(), 2);
+        assertEquals("doc-number", 0, kr.getMatch(0).getLocalDocID());
+        assertEquals("StartPos (0)", 4, kr.getMatch(0).startPos);
+        assertEquals("EndPos (0)", 5, kr.getMatch(0).endPos);
+        assertEquals("doc-number", 1, kr.getMatch(1).getLocalDocID());
+        assertEquals("StartPos (1)", 0, kr.getMatch(1).startPos);
+        assertEquals("EndPos (1)", 1, kr.getMatch(1).endPos);
+
+        sq = new SpanSegmentQuery(ib, new SpanSegmentQuery(sc, sb));
+        kr = ki.search(sq, (short) 10);
+        assertEquals("totalResults", kr.getTotalResults(), 2);
+        assertEquals("StartPos (0)", 4, kr.getMatch(0).startPos);
+        assertEquals("StartPos (1)", 0, kr.getMatch(1).startPos);
+
+        // Missing terms
+        sq = new SpanSegmentQuery(new SpanSegmentQuery(sb, sc),
+                new SpanTermQuery(new Term("base", "s:x")));
+        kr = ki.search(sq, (short) 10);
+        assertEquals("totalResults", kr.getTotalResults(), 0);
+
+        // Every span of the first operand is a match
+        SpanOrQuery soq = new SpanOrQuery(sb, ib);
+        sq = new SpanSegmentQuery(new SpanSegmentQuery(soq, sc), sc);
+        kr = ki.search(sq, (short) 10);
+        assertEquals("totalResults", kr.getTotalResults(), 5);
+
+        sq = new SpanSegmentQuery(new SpanSegmentQuery(sc, soq), sc);
+        kr = ki.search(sq, (short) 10);
+        ki.close();
+        assertEquals("totalResults", kr.getTotalResults(), 3);
+    }
+
+
+    /** Matching nested segments in long documents */
+    @Test
+    public void testCase8 () throws IOException {
+        ki = new KrillIndex();
+        StringBuilder sb = new StringBuilder();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            text.append('x');
+            sb.append("[(").append(i).append('-').append(i + 1)
+                    .append(")s:x");
+            if (i % 2 == 0)
+                sb.append("|s:a");
+            if (i % 3 == 0)
+                sb.append("|s:b");
+            if (i % 5 == 0)
+                sb.append("|s:c");
+            sb.append("|_").append(i).append("$<i>").append(i).append("<i>")
+                    .append(i + 1).append(']');
+        };
+        fd = new FieldDocument();
+        fd.addString("ID", "doc-5");
+        fd.addTV("base", text.toString(), sb.toString());
+        ki.addDoc(fd);
+        ki.addDoc(createFieldDoc0());
+        ki.commit();
+
+        sq = new SpanSegmentQuery(
+                new SpanSegmentQuery(
+                        new SpanTermQuery(new Term("base", "s:x")),
+                        new SpanTermQuery(new Term("base", "s:c"))),
+                new SpanSegmentQuery(
+                        new SpanTermQuery(new Term("base", "s:b")),
+                        new SpanTermQuery(new Term("base", "s:a"))));
+        kr = ki.search(sq, (short) 20);
+        ki.close();
+
+        assertEquals("totalResults", kr.getTotalResults(), 10);
+        for (int i = 0; i < 10; i++) {
+            assertEquals("doc-number", 0, kr.getMatch(i).getLocalDocID());
+            assertEquals("StartPos", i * 30, kr.getMatch(i).startPos);
+            assertEquals("EndPos", i * 30 + 1, kr.getMatch(i).endPos);
+        };
+    }
+
+
     private FieldDocument createFieldDoc0 () {
         fd = new FieldDocument();
         fd.addString("ID", "doc-0");
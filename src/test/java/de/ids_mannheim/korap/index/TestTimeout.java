@@ -1,19 +1,34 @@
 package de.ids_mannheim.korap.index;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
 
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.util.Bits;
 import org.junit.Test;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import de.ids_mannheim.korap.Krill;
 import de.ids_mannheim.korap.KrillIndex;
 import de.ids_mannheim.korap.KrillMeta;
+import de.ids_mannheim.korap.query.wrap.SpanSequenceQueryWrapper;
 import de.ids_mannheim.korap.response.Result;
+import de.ids_mannheim.korap.response.SearchContext;
 import de.ids_mannheim.korap.util.StatusCodes;
+import de.ids_mannheim.korap.util.TimeExceededException;
 
 public class TestTimeout {
 
@@ -31,6 +46,13 @@ public class TestTimeout {
         assertEquals(1, kr.getWarnings().size());
         assertEquals(StatusCodes.RESPONSE_TIME_EXCEEDED,
                 kr.getWarning(0).getCode());
+
+        // Serialization does not repeat the warning
+        JsonNode res = new ObjectMapper().readTree(kr.toJsonString());
+        assertTrue(res.at("/meta/timeExceeded").asBoolean());
+        assertEquals(1, res.at("/warnings").size());
+        assertEquals(StatusCodes.RESPONSE_TIME_EXCEEDED,
+                res.at("/warnings/0/0").asInt());
     }
 
     @Test
@@ -52,4 +74,227 @@ public class TestTimeout {
     }
 
 
+    @Test
+    public void testDeadline () throws IOException {
+        assertTrue(new Deadline(-1).isExpired());
+        assertFalse(new Deadline(Long.MAX_VALUE).isExpired());
+        assertFalse(Deadline.current().isExpired());
+
+        Deadline deadline = new Deadline(60_000);
+        assertFalse(deadline.isExpired());
+        assertFalse(deadline.poll());
+        deadline.check();
+
+        deadline.cancel();
+        assertTrue(deadline.isCancelled());
+        assertTrue(deadline.isExpired());
+        assertTrue(deadline.poll());
+
+        try {
+            deadline.check();
+            fail("Deadline should be exceeded");
+        }
+        catch (TimeExceededException e) {
+            assertEquals("Request was cancelled", e.getMessage());
+        };
+
+        Deadline.set(deadline);
+        assertTrue(Deadline.current().isCancelled());
+        Deadline.clear();
+        assertFalse(Deadline.current().isCancelled());
+
+        // Forked deadlines are cancelled independently
+        deadline = new Deadline(60_000);
+        Deadline fork = deadline.fork();
+        assertEquals(60_000, fork.getTimeOut());
+        fork.cancel();
+        assertTrue(fork.isExpired());
+        assertFalse(deadline.isExpired());
+
+        // Forked deadlines expire with their parent
+        fork = deadline.fork();
+        assertFalse(fork.poll());
+        deadline.cancel();
+        assertTrue(fork.isCancelled());
+        assertTrue(fork.poll());
+        assertTrue(new Deadline(-1).fork().isExpired());
+    }
+
+
+    @Test
+    public void testCancelledRequest () throws IOException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00001.json.gz"), true);
+        ki.commit();
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00002.json.gz"), true);
+        ki.commit();
+
+        SpanQuery q = new SpanTermQuery(new Term("tokens", "s:der"));
+        Krill ks = new Krill(q);
+        assertFalse(ks.isCancelled());
+        Result kr = ks.apply(ki);
+        assertFalse(kr.hasWarnings());
+        assertTrue(kr.getTotalResults() > 0);
+
+        // Cancel before the request is applied
+        ks = new Krill(q);
+        ks.cancel();
+        assertTrue(ks.isCancelled());
+        kr = ks.apply(ki);
+        assertEquals(1, kr.getWarnings().size());
+        assertEquals(StatusCodes.RESPONSE_TIME_EXCEEDED,
+                kr.getWarning(0).getCode());
+        assertEquals(0, kr.getMatches().size());
+
+        // Cancel while enumerating nested spans
+        SpanSequenceQueryWrapper ssqw = new SpanSequenceQueryWrapper("tokens");
+        ssqw.append("s:in").append("s:der");
+        ks = new Krill(ssqw);
+        ks.cancel();
+        kr = ks.apply(ki);
+        assertEquals(1, kr.getWarnings().size());
+        assertEquals(StatusCodes.RESPONSE_TIME_EXCEEDED,
+                kr.getWarning(0).getCode());
+        assertEquals(0, kr.getMatches().size());
+    }
+
+
+    @Test
+    public void testExpiredWhileCounting () throws IOException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00001.json.gz"), true);
+        ki.commit();
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00002.json.gz"), true);
+        ki.commit();
+
+        // Expire the deadline after the hits of the page were collected
+        SpanQuery q = new SpanTermQuery(new Term("tokens", "s:der")) {
+            @Override
+            public Spans getSpans (LeafReaderContext context, Bits acceptDocs,
+                    Map<Term, TermContext> termContexts) throws IOException {
+                final Spans spans = super.getSpans(context, acceptDocs,
+                        termContexts);
+                final Deadline deadline = Deadline.current();
+                return new FilterSpans(spans) {
+                    private int count = 0;
+
+                    @Override
+                    public boolean next () throws IOException {
+                        if (++count > 30)
+                            deadline.cancel();
+                        return spans.next();
+                    };
+                };
+            };
+        };
+
+        Krill ks = new Krill(q);
+        ks.getMeta().setCutOff(false).setCount(25);
+        ks.getMeta().setContext(new SearchContext("base/s:s"));
+        Result kr = ks.apply(ki);
+        assertTrue(kr.hasTimeExceeded());
+        assertEquals(25, kr.getMatches().size());
+        assertTrue(kr.getTotalResults() < 86);
+
+        JsonNode res = new ObjectMapper().readTree(kr.toJsonString());
+        assertTrue(res.at("/meta/timeExceeded").asBoolean());
+        assertEquals(1, res.at("/warnings").size());
+        assertEquals(25, res.at("/matches").size());
+        assertTrue(res.at("/matches/0/snippet").asText().length() > 0);
+    }
+
+
+    // Spans delegating to other spans
+    private static class FilterSpans extends Spans {
+        private final Spans spans;
+
+
+        FilterSpans (Spans spans) {
+            this.spans = spans;
+        };
+
+
+        @Override
+        public boolean next () throws IOException {
+            return this.spans.next();
+        };
+
+
+        @Override
+        public boolean skipTo (int target) throws IOException {
+            return this.spans.skipTo(target);
+        };
+
+
+        @Override
+        public int doc () {
+            return this.spans.doc();
+        };
+
+
+        @Override
+        public int start () {
+            return this.spans.start();
+        };
+
+
+        @Override
+        public int end () {
+            return this.spans.end();
+        };
+
+
+        @Override
+        public Collection<byte[]> getPayload () throws IOException {
+            return this.spans.getPayload();
+        };
+
+
+        @Override
+        public boolean isPayloadAvailable () throws IOException {
+            return this.spans.isPayloadAvailable();
+        };
+
+
+        @Override
+        public long cost () {
+            return this.spans.cost();
+        };
+    };
+
+
+    @Test
+    public void testCancelledSnippets () throws IOException {
+        KrillIndex ki = new KrillIndex();
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00001.json.gz"), true);
+        ki.commit();
+
+        ObjectMapper mapper = new ObjectMapper();
+        SpanQuery q = new SpanTermQuery(new Term("tokens", "s:der"));
+
+        // Snippets are built on serialization within the deadline
+        Krill ks = new Krill(q);
+        ks.getMeta().setContext(new SearchContext("base/s:s"));
+        Result kr = ks.apply(ki);
+        assertFalse(kr.hasWarnings());
+        assertTrue(kr.getMatches().size() > 0);
+
+        JsonNode res = mapper.readTree(kr.toJsonString());
+        assertTrue(res.at("/meta/timeExceeded").isMissingNode());
+        assertTrue(res.at("/matches/0/snippet").asText().length() > 0);
+
+        // Cancel after the search, but before serialization
+        ks = new Krill(q);
+        ks.getMeta().setContext(new SearchContext("base/s:s"));
+        kr = ks.apply(ki);
+        assertFalse(kr.hasWarnings());
+        ks.cancel();
+
+        res = mapper.readTree(kr.toJsonString());
+        assertTrue(res.at("/meta/timeExceeded").asBoolean());
+        assertEquals(StatusCodes.RESPONSE_TIME_EXCEEDED,
+                res.at("/warnings/0/0").asInt());
+        assertEquals(1, res.at("/warnings").size());
+        assertEquals(kr.getMatches().size(), res.at("/matches").size());
+    }
 }
@@ -371,6 +371,48 @@ public class TestWithinIndex {
     };
 
 
+    @Test
+    public void indexExample1e () throws IOException {
+        KrillIndex ki = new KrillIndex();
+
+        // <a>t<a>t<a>t ... </a></a></a> with 20 nested elements,
+        // so many embedded spans are stored for backtracking
+        for (int d = 0; d < 2; d++) {
+            FieldDocument fd = new FieldDocument();
+            StringBuilder text = new StringBuilder();
+            StringBuilder tokens = new StringBuilder();
+            for (int i = 0; i < 20; i++) {
+                text.append("t  ");
+                tokens.append("[(").append(i * 3).append('-')
+                        .append(i * 3 + 3).append(")s:t|<>:a$<b>64<i>")
+                        .append(i * 3).append("<i>60<i>20<b>0]");
+            };
+            fd.addTV("base", text.toString(), tokens.toString());
+            ki.addDoc(fd);
+        };
+        ki.commit();
+
+        SpanQuery sq = new SpanWithinQuery(new SpanElementQuery("base", "a"),
+                new SpanTermQuery(new Term("base", "s:t")));
+
+        Result kr = ki.search(sq, (short) 500);
+        assertEquals("totalResults", 420, kr.getTotalResults());
+
+        // Every element contains all following tokens
+        int m = 0;
+        for (int i = 0; i < 20; i++) {
+            for (int j = i; j < 20 && m < kr.getMatches().size(); j++) {
+                assertEquals("StartPos (" + m + ")", i,
+                        kr.getMatch(m).startPos);
+                assertEquals("EndPos (" + m + ")", 20,
+                        kr.getMatch(m).endPos);
+                m++;
+            };
+        };
+        assertEquals(50, m);
+    };
+
+
     @Test
     public void indexExample2a () throws IOException {
         KrillIndex ki = new KrillIndex();
@@ -0,0 +1,111 @@
+package de.ids_mannheim.korap.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import de.ids_mannheim.korap.query.spans.CandidateQueue;
+import de.ids_mannheim.korap.query.spans.CandidateSpan;
+
+@RunWith(JUnit4.class)
+public class TestCandidateQueue {
+
+    @Test
+    public void candidateQueueAsQueue () {
+        CandidateQueue<Integer> q = new CandidateQueue<>(2);
+        assertNull(q.peek());
+        assertNull(q.poll());
+
+        // Wrap around the buffer
+        for (int i = 0; i < 5; i++)
+            q.add(i);
+        for (int i = 5; i < 100; i++) {
+            q.add(i);
+            assertEquals(i - 5, (int) q.poll());
+        };
+        assertEquals(5, q.size());
+        assertEquals(95, (int) q.peek());
+        assertEquals(99, (int) q.get(4));
+        assertEquals("[95, 96, 97, 98, 99]", q.toString());
+
+        Iterator<Integer> i = q.iterator();
+        i.next();
+        i.remove();
+        assertEquals(96, (int) q.removeFirst());
+        assertEquals(3, q.size());
+
+        q.clear();
+        assertTrue(q.isEmpty());
+        q.add(7);
+        assertEquals("[7]", q.toString());
+    };
+
+
+    @Test
+    public void candidateQueueAsList () {
+        Random r = new Random(42);
+        List<Integer> list = new ArrayList<>();
+        CandidateQueue<Integer> q = new CandidateQueue<>();
+
+        // Compare random operations with an ArrayList
+        for (int i = 0; i < 2000; i++) {
+            int op = r.nextInt(6);
+            if (op < 2 || list.isEmpty()) {
+                list.add(i);
+                q.add(i);
+            }
+            else if (op == 2) {
+                int index = r.nextInt(list.size() + 1);
+                list.add(index, -i);
+                q.add(index, -i);
+            }
+            else if (op == 3) {
+                int index = r.nextInt(list.size());
+                assertEquals(list.remove(index), q.remove(index));
+            }
+            else if (op == 4) {
+                assertEquals(list.remove(0), q.remove(0));
+            }
+            else {
+                int mod = r.nextInt(3) + 2;
+                list.removeIf(x -> x % mod == 0);
+                q.removeIf(x -> x % mod == 0);
+            };
+            assertEquals(list, q);
+        };
+
+        Collections.sort(list);
+        Collections.sort(q);
+        assertEquals(list, q);
+    };
+
+
+    @Test
+    public void candidateQueueSortStable () {
+        CandidateQueue<CandidateSpan> q = new CandidateQueue<>(4);
+        q.add(new CandidateSpan(9, 9, 0, 0, null));
+        q.poll();
+        q.add(new CandidateSpan(3, 4, 0, 1, null));
+        q.add(new CandidateSpan(1, 2, 0, 2, null));
+        q.add(new CandidateSpan(3, 4, 0, 3, null));
+        q.add(new CandidateSpan(0, 1, 1, 4, null));
+        q.add(new CandidateSpan(1, 2, 0, 5, null));
+
+        Collections.sort(q);
+        assertEquals(2, q.get(0).getCost());
+        assertEquals(5, q.get(1).getCost());
+        assertEquals(1, q.get(2).getCost());
+        assertEquals(3, q.get(3).getCost());
+        assertEquals(4, q.get(4).getCost());
+    };
+};
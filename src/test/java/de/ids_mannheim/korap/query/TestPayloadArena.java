@@ -0,0 +1,149 @@
+package de.ids_mannheim.korap.query;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.lucene.search.spans.Spans;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import de.ids_mannheim.korap.query.spans.CandidateSpan;
+import de.ids_mannheim.korap.query.spans.PayloadArena;
+
+@RunWith(JUnit4.class)
+public class TestPayloadArena {
+
+    @Test
+    public void payloadArenaChunks () {
+        PayloadArena arena = new PayloadArena();
+        List<byte[]> payloads = Arrays.asList(new byte[] { 1, 2 }, null,
+                new byte[0]);
+
+        int offset = arena.store(payloads);
+        byte[] chunk = arena.chunk();
+        List<byte[]> read = PayloadArena.read(chunk, offset, 3);
+        assertEquals(3, read.size());
+        assertArrayEquals(new byte[] { 1, 2 }, read.get(0));
+        assertNull(read.get(1));
+        assertEquals(0, read.get(2).length);
+
+        // Large payloads get a chunk of their own
+        byte[] large = new byte[20000];
+        large[19999] = 7;
+        int largeOffset = arena.store(Arrays.asList(large));
+        assertEquals(0, largeOffset);
+        assertEquals(7,
+                PayloadArena.read(arena.chunk(), largeOffset, 1).get(0)[19999]);
+
+        // Former chunks are unchanged
+        assertArrayEquals(new byte[] { 1, 2 },
+                PayloadArena.read(chunk, offset, 3).get(0));
+    };
+
+
+    @Test
+    public void candidateSpanWithPayloadArena () throws Exception {
+        PayloadArena arena = new PayloadArena();
+        byte[] payload = new byte[] { 0, 0, 0, 5 };
+        TestSpans spans = new TestSpans(3, 4, 2, payload);
+
+        CandidateSpan cs = new CandidateSpan(spans, arena);
+        CandidateSpan copy = new CandidateSpan(spans);
+        assertEquals(3, cs.getStart());
+        assertEquals(4, cs.getEnd());
+        assertEquals(2, cs.getDoc());
+
+        // Payloads are copied at construction
+        payload[3] = 9;
+        Collection<byte[]> payloads = cs.getPayloads();
+        assertEquals(1, payloads.size());
+        assertArrayEquals(new byte[] { 0, 0, 0, 5 }, payloads.iterator().next());
+        assertArrayEquals(copy.getPayloads().iterator().next(),
+                payloads.iterator().next());
+
+        // Materialized payloads are kept
+        assertSame(payloads, cs.getPayloads());
+        cs.getPayloads().clear();
+        assertTrue(cs.getPayloads().isEmpty());
+
+        // Spans without payloads
+        spans = new TestSpans(1, 2, 0, null);
+        cs = new CandidateSpan(spans, 5, arena);
+        assertEquals(5, cs.getPosition());
+        assertTrue(cs.getPayloads().isEmpty());
+    };
+
+
+    // Spans at a single position
+    private static class TestSpans extends Spans {
+        private final int start, end, doc;
+        private final byte[] payload;
+
+
+        TestSpans (int start, int end, int doc, byte[] payload) {
+            this.start = start;
+            this.end = end;
+            this.doc = doc;
+            this.payload = payload;
+        };
+
+
+        @Override
+        public boolean next () {
+            return false;
+        };
+
+
+        @Override
+        public boolean skipTo (int target) {
+            return false;
+        };
+
+
+        @Override
+        public int doc () {
+            return this.doc;
+        };
+
+
+        @Override
+        public int start () {
+            return this.start;
+        };
+
+
+        @Override
+        public int end () {
+            return this.end;
+        };
+
+
+        @Override
+        public Collection<byte[]> getPayload () {
+            List<byte[]> payloads = new ArrayList<>(1);
+            payloads.add(this.payload);
+            return payloads;
+        };
+
+
+        @Override
+        public boolean isPayloadAvailable () {
+            return this.payload != null;
+        };
+
+
+        @Override
+        public long cost () {
+            return 1;
+        };
+    };
+};
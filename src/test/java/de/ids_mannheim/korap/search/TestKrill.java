@@ -6,8 +6,13 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Test;
 import org.junit.Ignore;
@@ -21,8 +26,10 @@ import de.ids_mannheim.korap.Krill;
 import de.ids_mannheim.korap.KrillCollection;
 import de.ids_mannheim.korap.KrillIndex;
 import de.ids_mannheim.korap.KrillMeta;
+import de.ids_mannheim.korap.cache.LeafCountCache;
 import de.ids_mannheim.korap.collection.CollectionBuilder;
 import de.ids_mannheim.korap.index.FieldDocument;
+import de.ids_mannheim.korap.index.SearchCursor;
 import de.ids_mannheim.korap.query.QueryBuilder;
 import de.ids_mannheim.korap.response.Result;
 import de.ids_mannheim.korap.response.Match;
@@ -566,6 +573,261 @@ public class TestKrill {
     };
 
 
+    @Test
+    public void searchParallelLeaves () throws IOException {
+        // Construct indices with one segment per document
+        KrillIndex ki = new KrillIndex();
+        KrillIndex kip = new KrillIndex();
+        for (String i : new String[] { "00001", "00002", "00003", "00004",
+                "00005", "00006", "02439" }) {
+            ki.addDoc(getClass().getResourceAsStream("/wiki/" + i + ".json.gz"),
+                    true);
+            ki.commit();
+            kip.addDoc(getClass().getResourceAsStream("/wiki/" + i + ".json.gz"),
+                    true);
+            kip.commit();
+        };
+        assertEquals(7, kip.reader().leaves().size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        kip.setSearchExecutor(executor);
+
+        Krill ks;
+        Result kr, krp;
+
+        for (short itemsPerResource : new short[] { 0, 1, 2 }) {
+            for (int startIndex : new int[] { 0, 5, 40, 85, 100 }) {
+
+                // Run twice to include cached leaves
+                for (int run = 0; run < 2; run++) {
+                    ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+                    ks.getMeta().setCutOff(false).setStartIndex(startIndex)
+                            .setItemsPerResource(itemsPerResource);
+                    kr = ks.apply(ki);
+
+                    ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+                    ks.getMeta().setCutOff(false).setStartIndex(startIndex)
+                            .setItemsPerResource(itemsPerResource);
+                    krp = ks.apply(kip);
+
+                    assertEquals(kr.getTotalResults(), krp.getTotalResults());
+                    assertEquals(kr.getTotalResources(),
+                            krp.getTotalResources());
+                    assertEquals(kr.getMatches().size(),
+                            krp.getMatches().size());
+
+                    for (int m = 0; m < kr.getMatches().size(); m++) {
+                        assertEquals(kr.getMatch(m).getID(),
+                                krp.getMatch(m).getID());
+                        assertEquals(kr.getMatch(m).getSnippetBrackets(),
+                                krp.getMatch(m).getSnippetBrackets());
+                    };
+                };
+            };
+        };
+
+        ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+        ks.getMeta().setCutOff(false);
+        kr = ks.apply(kip);
+        assertEquals(86, kr.getTotalResults());
+        assertEquals(7, kr.getTotalResources());
+        assertEquals("WPD_AAA.00001", kr.getMatch(0).getDocID());
+
+        // Every leaf is a new resource
+        ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+        ks.getMeta().setCutOff(false).setItemsPerResource(1);
+        kr = ks.apply(ki);
+        assertEquals(7, kr.getTotalResults());
+        assertEquals(7, kr.getTotalResources());
+        assertEquals("WPD_AAA.00002", kr.getMatch(1).getDocID());
+
+        executor.shutdown();
+    };
+
+
+    @Test
+    public void searchWithCursor () throws IOException {
+        // Construct index with one segment per document
+        KrillIndex ki = new KrillIndex();
+        for (String i : new String[] { "00001", "00002", "00003", "00004",
+                "00005", "00006", "02439" }) {
+            ki.addDoc(getClass().getResourceAsStream("/wiki/" + i + ".json.gz"),
+                    true);
+            ki.commit();
+        };
+        assertEquals(7, ki.reader().leaves().size());
+
+        Krill ks;
+        Result kr, krc;
+
+        for (boolean cutOff : new boolean[] { true, false }) {
+            for (short itemsPerResource : new short[] { 0, 1, 2 }) {
+                String cursor = "";
+                int startIndex = 0;
+                do {
+                    ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+                    ks.getMeta().setCutOff(cutOff).setCount(10)
+                            .setStartIndex(startIndex)
+                            .setItemsPerResource(itemsPerResource);
+                    kr = ks.apply(ki);
+
+                    // Continue with the cursor
+                    ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+                    ks.getMeta().setCutOff(cutOff).setCount(10)
+                            .setCursor(cursor)
+                            .setItemsPerResource(itemsPerResource);
+                    krc = ks.apply(ki);
+                    assertFalse(krc.hasWarnings());
+
+                    assertEquals(startIndex, krc.getStartIndex());
+                    assertEquals(kr.getTotalResults(), krc.getTotalResults());
+                    assertEquals(kr.getTotalResources(),
+                            krc.getTotalResources());
+                    assertEquals(kr.getMatches().size(),
+                            krc.getMatches().size());
+
+                    for (int m = 0; m < kr.getMatches().size(); m++) {
+                        assertEquals(kr.getMatch(m).getID(),
+                                krc.getMatch(m).getID());
+                        assertEquals(kr.getMatch(m).getSnippetBrackets(),
+                                krc.getMatch(m).getSnippetBrackets());
+                    };
+
+                    cursor = krc.getCursor();
+                    startIndex += 10;
+                } while (cursor != null);
+
+                if (itemsPerResource == 0)
+                    assertEquals(90, startIndex);
+            };
+        };
+
+        ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+        ks.getMeta().setCount(10).setCursor("");
+        kr = ks.apply(ki);
+        String cursor = kr.getCursor();
+        assertEquals(10, kr.getMatches().size());
+        assertEquals(cursor,
+                new ObjectMapper().readTree(kr.toJsonString())
+                        .at("/meta/cursor").asText());
+
+        // Cursors not aligned with the spans are ignored
+        SearchCursor sc = SearchCursor.decode(cursor);
+        String tampered = new SearchCursor(sc.fingerprint(), sc.queryHash(),
+                sc.collHash(), sc.itemsPerResource(), sc.leaf(),
+                sc.localDocID(), sc.docSpans() + 1000, sc.matchCount(),
+                sc.matchDocCount()).encode();
+
+        ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+        ks.getMeta().setCount(10).setStartIndex(10).setCursor(tampered);
+        krc = ks.apply(ki);
+        assertEquals(1, krc.getWarnings().size());
+        assertEquals(684, krc.getWarning(0).getCode());
+        assertEquals(10, krc.getStartIndex());
+
+        ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+        ks.getMeta().setCount(10).setStartIndex(10);
+        kr = ks.apply(ki);
+        assertEquals(kr.getTotalResults(), krc.getTotalResults());
+        assertEquals(10, krc.getMatches().size());
+        for (int m = 0; m < kr.getMatches().size(); m++)
+            assertEquals(kr.getMatch(m).getID(), krc.getMatch(m).getID());
+
+        // Cursors are invalidated by index changes
+        ki.addDoc(getClass().getResourceAsStream("/wiki/00012-fakemeta.json.gz"), true);
+        ki.commit();
+
+        ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+        ks.getMeta().setCount(10).setCursor(cursor);
+        kr = ks.apply(ki);
+        assertEquals(684, kr.getWarning(0).getCode());
+        assertEquals(0, kr.getStartIndex());
+        assertEquals("WPD_AAA.00001", kr.getMatch(0).getDocID());
+
+        // Malformed cursors are ignored
+        ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+        ks.getMeta().setCount(10).setCursor("abc");
+        kr = ks.apply(ki);
+        assertEquals(684, kr.getWarning(0).getCode());
+        assertEquals(10, kr.getMatches().size());
+    };
+
+
+    @Test
+    public void searchCountOnly () throws IOException {
+        // Construct indices with one segment per document
+        Path indexDir = Files.createTempDirectory("krill-count-index");
+        File cacheDir = Files.createTempDirectory("krill-count-cache")
+                .toFile();
+        KrillIndex ki = new KrillIndex(indexDir);
+        KrillIndex kip = new KrillIndex();
+        for (String i : new String[] { "00001", "00002", "00003", "00004",
+                "00005", "00006", "02439" }) {
+            ki.addDoc(getClass().getResourceAsStream("/wiki/" + i + ".json.gz"),
+                    true);
+            ki.commit();
+            kip.addDoc(getClass().getResourceAsStream("/wiki/" + i + ".json.gz"),
+                    true);
+            kip.commit();
+        };
+        ki.setCountCache(new LeafCountCache(cacheDir, 100));
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        kip.setSearchExecutor(executor);
+
+        Krill ks;
+        Result kr, krc;
+
+        for (short itemsPerResource : new short[] { 0, 1, 2 }) {
+            for (KrillIndex index : new KrillIndex[] { ki, kip }) {
+                ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+                ks.getMeta().setCutOff(false)
+                        .setItemsPerResource(itemsPerResource);
+                kr = ks.apply(ki);
+
+                ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+                ks.getMeta().setCutOff(true)
+                        .setItemsPerResource(itemsPerResource);
+                krc = index.count(ks);
+
+                // Counting ignores the request's cut-off and paging
+                // without changing them
+                assertTrue(ks.getMeta().doCutOff());
+                assertEquals(25, ks.getMeta().getCount());
+                assertNull(ks.getIndex());
+                assertEquals(kr.getTotalResults(), krc.getTotalResults());
+                assertEquals(kr.getTotalResources(), krc.getTotalResources());
+                assertEquals(0, krc.getMatches().size());
+            };
+        };
+
+        ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+        kr = kip.count(ks);
+        assertEquals(86, kr.getTotalResults());
+        assertEquals(7, kr.getTotalResources());
+        assertEquals("Some results were cached", kr.getMessage(0).getMessage());
+        executor.shutdown();
+
+        // Counts are persisted per leaf
+        ki.close();
+        ki = new KrillIndex(indexDir);
+        ki.setCountCache(new LeafCountCache(cacheDir, 100));
+        ks = new Krill(new QueryBuilder("tokens").seg("s:der"));
+        kr = ki.count(ks);
+        assertEquals(86, kr.getTotalResults());
+        assertEquals(7, kr.getTotalResources());
+        assertEquals("Some results were cached", kr.getMessage(0).getMessage());
+        assertEquals("86",
+                kr.getMessage(0).toJsonNode().at("/1").asText());
+
+        // Counts of other queries are not cached
+        ks = new Krill(new QueryBuilder("tokens").seg("s:die"));
+        kr = ki.count(ks);
+        assertNull(kr.getMessage(0));
+        ki.close();
+    };
+
+
     @Test
     public void searchJSONitemsPerResourceServer () throws IOException {
         /*
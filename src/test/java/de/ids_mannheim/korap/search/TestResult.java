@@ -128,6 +128,51 @@ public class TestResult {
     };
 
 
+    @Test
+    public void checkJSONResultStreamed () throws Exception {
+        KrillIndex ki = new KrillIndex();
+        FieldDocument fd = new FieldDocument();
+        fd.addString("ID", "doc-1");
+        fd.addString("UID", "1");
+        fd.addTV("tokens", "\u00e4b\u00e4b",
+                "[(0-1)s:\u00e4|i:\u00e4|_0#0-1|-:t$<i>4]" + "[(1-2)s:b|i:b|_1#1-2]"
+                        + "[(2-3)s:\u00e4|i:c|_2#2-3]" + "[(3-4)s:b|i:\u00e4|_3#3-4]");
+        ki.addDoc(fd);
+        fd = new FieldDocument();
+        fd.addString("ID", "doc-2");
+        fd.addString("UID", "2");
+        fd.addTV("tokens", "\u00e4b\"", "[(0-1)s:\u00e4|i:\u00e4|_0#0-1|-:t$<i>3]"
+                + "[(1-2)s:b|i:b|_1#1-2]" + "[(2-3)s:\"|i:\"|_2#2-3]");
+        ki.addDoc(fd);
+        ki.commit();
+
+        String json = getJsonString(getClass()
+                .getResource("/queries/bsp-result-check.jsonld").getFile());
+        json = json.replace("\"key\":\"a\"", "\"key\":\"\u00e4\"");
+
+        // Serialize two identical results
+        String expected = new Krill(json).apply(ki).toJsonString();
+        Result kr = new Krill(json).apply(ki);
+        assertEquals(5, kr.getMatches().size());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        kr.toJson(out);
+
+        // The benchmark differs
+        String bench = "\"benchmark\":\"[^\"]+\"";
+        assertEquals(expected.replaceAll(bench, ""),
+                out.toString("UTF-8").replaceAll(bench, ""));
+
+        // Result without matches
+        kr = new Result();
+        kr.addError(123, "Error");
+        expected = kr.toJsonString();
+        out = new ByteArrayOutputStream();
+        kr.toJson(out);
+        assertEquals(expected, out.toString("UTF-8"));
+    };
+
+
     @Test
     public void checkJSONResultForJSONInput () throws Exception {
         KrillIndex ki = new KrillIndex();
@@ -1,6 +1,7 @@
 package de.ids_mannheim.korap.server;
 
 import java.io.*;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -8,6 +9,9 @@ import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.client.ClientBuilder;
 import jakarta.ws.rs.client.WebTarget;
 import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.ConnectionCallback;
+import jakarta.ws.rs.core.StreamingOutput;
 
 import static de.ids_mannheim.korap.TestSimple.*;
 
@@ -20,6 +24,7 @@ import org.junit.Test;
 
 import java.io.FileInputStream;
 
+import de.ids_mannheim.korap.KrillIndex;
 import de.ids_mannheim.korap.server.Node;
 import de.ids_mannheim.korap.response.Result;
 import de.ids_mannheim.korap.response.Response;
@@ -102,6 +107,95 @@ public class TestResource {
         JsonNode res = mapper.readTree(responseMsg);
         assertEquals("milena", res.at("/meta/node").asText());
         assertEquals(680, res.at("/messages/0/0").asInt());
+        assertTrue(res.at("/vcCache/maxWeight").asLong() > 0);
+        assertTrue(res.at("/vcCache/hits").isNumber());
+    };
+
+
+    // This tests the streamed search response
+    @Test
+    public void testSearch () throws IOException {
+        String json = getJsonString(getClass()
+                .getResource("/queries/bsp-result-check.jsonld").getFile());
+
+        String resp = target.path("/search").request("application/json")
+                .post(Entity.json(json), String.class);
+        JsonNode res = mapper.readTree(resp);
+        assertEquals("spanOr([tokens:s:a, tokens:s:b])",
+                res.at("/meta/serialQuery").asText());
+        assertTrue(res.at("/matches").isArray());
+        assertTrue(res.at("/matches").size() <= 5);
+    };
+
+
+    @Test
+    public void testSearchCancelledOnDisconnect () throws IOException {
+        // The index is shared by all tests
+        KrillIndex ki = Node.getIndex();
+        ki.delDocs("corpusID", "WPD");
+        for (String i : new String[] { "00001", "00002", "00003", "00004",
+                "00005", "00006", "02439" }) {
+            ki.addDoc(getClass().getResourceAsStream("/wiki/" + i + ".json.gz"),
+                    true);
+        };
+        ki.commit();
+
+        String json = getJsonString(
+                getClass().getResource("/queries/metaquery3.jsonld").getFile());
+
+        try {
+            // Connected client
+            JsonNode res = _searchResource(json, false);
+            assertEquals(66, res.at("/meta/totalResults").asInt());
+            assertEquals(5, res.at("/matches").size());
+            assertTrue(res.at("/meta/timeExceeded").isMissingNode());
+
+            // Disconnected client
+            res = _searchResource(json, true);
+            assertTrue(res.at("/meta/timeExceeded").asBoolean());
+            assertEquals(682, res.at("/warnings/0/0").asInt());
+            assertEquals(0, res.at("/matches").size());
+        }
+        finally {
+            ki.delDocs("corpusID", "WPD");
+            ki.commit();
+        };
+    };
+
+
+    // Search through the resource with a client that may disconnect
+    private JsonNode _searchResource (String json, boolean disconnect)
+            throws IOException {
+        final Object[] entity = new Object[1];
+        AsyncResponse response = (AsyncResponse) Proxy.newProxyInstance(
+                AsyncResponse.class.getClassLoader(),
+                new Class<?>[] { AsyncResponse.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "register":
+                            if (disconnect
+                                    && args[0] instanceof ConnectionCallback)
+                                ((ConnectionCallback) args[0])
+                                        .onDisconnect((AsyncResponse) proxy);
+                            return null;
+                        case "resume":
+                            entity[0] = args[0];
+                            return true;
+                        case "isSuspended":
+                            return entity[0] == null;
+                        case "isDone":
+                            return entity[0] != null;
+                        default:
+                            return false;
+                    }
+                });
+
+        new Resource().search(json, response, null);
+        assertTrue(entity[0] instanceof StreamingOutput);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingOutput) entity[0]).write(out);
+        return mapper.readTree(out.toString("UTF-8"));
     };
 
 